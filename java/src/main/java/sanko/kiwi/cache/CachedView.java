@@ -0,0 +1,20 @@
+package sanko.kiwi.cache;
+
+import lombok.Getter;
+
+@Getter
+public class CachedView {
+
+	private String etag;
+	private long lastModified;
+	private String contentType;
+	private byte[] body;
+
+	public CachedView(String etag, long lastModified, String contentType, byte[] body) {
+		this.etag = etag;
+		this.lastModified = lastModified;
+		this.contentType = contentType;
+		this.body = body;
+	}
+
+}
@@ -0,0 +1,85 @@
+package sanko.kiwi.cache;
+
+import java.util.*; //Map, LinkedHashMap, Iterator
+import java.util.function.ToLongFunction;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LruCache<K, V> {
+
+	private final long capacity;
+	private final ToLongFunction<V> weigher;
+	private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long weight = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	public LruCache(long capacity) {
+		this(capacity, value -> 1);
+	}
+
+	//capacity is in whatever unit the weigher returns
+	public LruCache(long capacity, ToLongFunction<V> weigher) {
+		this.capacity = capacity;
+		this.weigher = weigher;
+	}
+
+	public synchronized V get(K key) {
+		V value = entries.get(key);
+		if (value == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return value;
+	}
+
+	public synchronized void put(K key, V value) {
+		long size = weigher.applyAsLong(value);
+		if (size > capacity) return;
+
+		V old = entries.put(key, value);
+		if (old != null) {
+			weight -= weigher.applyAsLong(old);
+		}
+		weight += size;
+
+		Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();
+		while (weight > capacity && iterator.hasNext()) {
+			Map.Entry<K, V> eldest = iterator.next();
+			weight -= weigher.applyAsLong(eldest.getValue());
+			iterator.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	public synchronized V remove(K key) {
+		V old = entries.remove(key);
+		if (old != null) {
+			weight -= weigher.applyAsLong(old);
+		}
+		return old;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+}
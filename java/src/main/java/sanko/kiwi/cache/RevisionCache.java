@@ -0,0 +1,47 @@
+package sanko.kiwi.cache;
+
+import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Value;
+
+import sanko.kiwi.domain.history.Revision;
+
+//rebuilt revisions by page id and event, the jobs rewrite how a history is stored but never the revision it rebuilds, so entries only leave by weight
+@Component
+public class RevisionCache {
+
+	private final LruCache<String, Revision> revisions;
+
+	public RevisionCache(@Value("${kiwi.cache.revision:8000000}") long capacity) {
+		this.revisions = new LruCache<>(capacity, this::weigh);
+	}
+
+	private String key(Long pageId, Integer event) {
+		return pageId + "/" + event;
+	}
+
+	public Revision get(Long pageId, Integer event) {
+		if (pageId == null) {
+			return null;
+		}
+		return revisions.get(key(pageId, event));
+	}
+
+	public void put(Long pageId, Integer event, Revision revision) {
+		if (pageId != null) {
+			revisions.put(key(pageId, event), revision);
+		}
+	}
+
+	private long weigh(Revision revision) {
+		long weight = revision.getTitle().length() + revision.getContent().length();
+		if (revision.getHtml() != null) {
+			weight += revision.getHtml().length();
+		}
+		return weight;
+	}
+
+	public LruCache<String, Revision> getRevisions() {
+		return revisions;
+	}
+
+}
@@ -0,0 +1,65 @@
+package sanko.kiwi.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.support.*; //TransactionSynchronization, TransactionSynchronizationManager
+
+//rendered view.html responses by title, each holding the etag of the revision it was rendered from
+//edits evict their titles after commit and the render service evicts a page once its html is stored, which keeps entries current
+@Component
+public class ViewCache {
+
+	private final LruCache<String, CachedView> views;
+
+	//bumped on every invalidation, a response rendered before one is not stored
+	private final AtomicLong epoch = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	public ViewCache(@Value("${kiwi.cache.view:16000000}") long capacity) {
+		this.views = new LruCache<>(capacity, view -> view.getBody().length);
+	}
+
+	public CachedView get(String title) {
+		return views.get(title);
+	}
+
+	public long epoch() {
+		return epoch.get();
+	}
+
+	public synchronized void put(String title, CachedView view, long epoch) {
+		if (this.epoch.get() == epoch) {
+			views.put(title, view);
+		}
+	}
+
+	public synchronized void evict(String title) {
+		epoch.incrementAndGet();
+		invalidations.incrementAndGet();
+		views.remove(title);
+	}
+
+	//readers may cache the old revision until the edit commits, so evict again after it does
+	public void evictAfterCommit(String title) {
+		evict(title);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					evict(title);
+				}
+			});
+		}
+	}
+
+	public LruCache<String, CachedView> getViews() {
+		return views;
+	}
+
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+}
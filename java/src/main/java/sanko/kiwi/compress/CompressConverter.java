@@ -0,0 +1,27 @@
+package sanko.kiwi.compress;
+
+import jakarta.persistence.*; //AttributeConverter, Converter
+import org.springframework.beans.factory.ObjectProvider;
+
+//hibernate makes converters through spring, so each context's converter uses that context's compressor
+//a context without one, like a jpa test slice, stores values plain
+@Converter
+public class CompressConverter implements AttributeConverter<String, byte[]> {
+
+	private final Compressor compressor;
+
+	public CompressConverter(ObjectProvider<Compressor> compressor) {
+		this.compressor = compressor.getIfAvailable(() -> new Compressor(false, 0));
+	}
+
+	@Override
+	public byte[] convertToDatabaseColumn(String attribute) {
+		return compressor.compress(attribute);
+	}
+
+	@Override
+	public String convertToEntityAttribute(byte[] column) {
+		return compressor.decompress(column);
+	}
+
+}
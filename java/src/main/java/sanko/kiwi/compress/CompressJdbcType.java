@@ -0,0 +1,46 @@
+package sanko.kiwi.compress;
+
+import java.sql.*; //PreparedStatement, CallableStatement, SQLException
+import java.nio.charset.StandardCharsets;
+
+import org.hibernate.type.descriptor.*; //ValueBinder, WrapperOptions
+import org.hibernate.type.descriptor.java.JavaType;
+import org.hibernate.type.descriptor.jdbc.*; //JdbcType, JdbcTypeIndicators, BasicBinder, VarbinaryJdbcType
+
+//binds plain values as text, so rows stay text for like and outside tools, and only compressed values become blobs
+//reading needs nothing of its own, the sqlite driver hands text back as its utf-8 bytes
+public class CompressJdbcType extends VarbinaryJdbcType {
+
+	@Override
+	public JdbcType resolveIndicatedType(JdbcTypeIndicators indicators, JavaType<?> domainJtd) {
+		return this;
+	}
+
+	@Override
+	public <X> ValueBinder<X> getBinder(JavaType<X> javaType) {
+		return new BasicBinder<>(javaType, this) {
+
+			@Override
+			protected void doBind(PreparedStatement st, X value, int index, WrapperOptions options) throws SQLException {
+				byte[] bytes = javaType.unwrap(value, byte[].class, options);
+				if (Compressor.isPlain(bytes)) {
+					st.setString(index, new String(bytes, StandardCharsets.UTF_8));
+				} else {
+					st.setBytes(index, bytes);
+				}
+			}
+
+			@Override
+			protected void doBind(CallableStatement st, X value, String name, WrapperOptions options) throws SQLException {
+				byte[] bytes = javaType.unwrap(value, byte[].class, options);
+				if (Compressor.isPlain(bytes)) {
+					st.setString(name, new String(bytes, StandardCharsets.UTF_8));
+				} else {
+					st.setBytes(name, bytes);
+				}
+			}
+
+		};
+	}
+
+}
@@ -0,0 +1,212 @@
+package sanko.kiwi.compress;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.*; //Deflater, Inflater, DataFormatException
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.stereotype.Service;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.*; //Autowired, Value
+import org.springframework.context.event.*; //EventListener, ContextRefreshedEvent
+
+import sanko.kiwi.domain.dictionary.*; //Dictionary, DictionaryRepository
+
+//compressed values are a zero byte, the dictionary version, the utf-8 length and raw deflate, anything else is plain utf-8
+@Service
+public class Compressor {
+
+	private final boolean enabled;
+
+	//shorter values are stored plain, deflate would not win much on them
+	private final int minimum;
+
+	private final ObjectProvider<DictionaryRepository> dictionaryRepository;
+	private final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+	private volatile int version = 0;
+
+	private final AtomicLong raw = new AtomicLong();
+	private final AtomicLong stored = new AtomicLong();
+	private final AtomicLong inflated = new AtomicLong();
+	private final AtomicLong inflateNanos = new AtomicLong();
+
+	@Autowired
+	public Compressor(
+		ObjectProvider<DictionaryRepository> dictionaryRepository,
+		@Value("${kiwi.compress.enabled:false}") boolean enabled,
+		@Value("${kiwi.compress.minimum:64}") int minimum
+	) {
+		this.dictionaryRepository = dictionaryRepository;
+		this.enabled = enabled;
+		this.minimum = minimum;
+	}
+
+	public Compressor(boolean enabled, int minimum) {
+		this(null, enabled, minimum);
+	}
+
+	//not on construction, the converter asks for the compressor while the repositories are still being made
+	@EventListener(ContextRefreshedEvent.class)
+	public void load() {
+		if (dictionaryRepository != null) {
+			DictionaryRepository repository = dictionaryRepository.getIfAvailable();
+			if (repository != null) {
+				repository.findAll().forEach(dictionary -> add(dictionary.getVersion(), dictionary.getBytes()));
+			}
+		}
+	}
+
+	//values not framed by compress, stored as their utf-8
+	public static boolean isPlain(byte[] bytes) {
+		return bytes.length == 0 || bytes[0] != 0;
+	}
+
+	//new values are compressed with the newest dictionary added
+	public void add(Integer version, byte[] dictionary) {
+		dictionaries.put(version, dictionary);
+		if (version > this.version) {
+			this.version = version;
+		}
+	}
+
+	public byte[] compress(String value) {
+		if (value == null) {
+			return null;
+		}
+
+		byte[] plain = value.getBytes(StandardCharsets.UTF_8);
+		//a plain value starting with a zero byte would read as compressed, so it is always framed
+		boolean framed = plain.length > 0 && plain[0] == 0;
+		if (!framed && (!enabled || plain.length < minimum)) {
+			return plain;
+		}
+
+		int version = this.version;
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+		try {
+			if (version > 0) {
+				deflater.setDictionary(dictionaries.get(version));
+			}
+			deflater.setInput(plain);
+			deflater.finish();
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream(plain.length / 2 + 16);
+			out.write(0);
+			writeVarint(out, version);
+			writeVarint(out, plain.length);
+			byte[] buffer = new byte[4096];
+			while (!deflater.finished()) {
+				int length = deflater.deflate(buffer);
+				out.write(buffer, 0, length);
+			}
+
+			byte[] compressed = out.toByteArray();
+			if (!framed && compressed.length >= plain.length) {
+				return plain;
+			}
+			raw.addAndGet(plain.length);
+			stored.addAndGet(compressed.length);
+			return compressed;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	public String decompress(byte[] bytes) {
+		if (bytes == null) {
+			return null;
+		}
+		if (isPlain(bytes)) {
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		long start = System.nanoTime();
+		int[] position = {1};
+		int version = readVarint(bytes, position);
+		int length = readVarint(bytes, position);
+
+		Inflater inflater = new Inflater(true);
+		try {
+			if (version > 0) {
+				//a value read before the dictionaries are loaded, by another listener at start, loads them
+				if (!dictionaries.containsKey(version)) {
+					load();
+				}
+				byte[] dictionary = dictionaries.get(version);
+				if (dictionary == null) {
+					throw new IllegalStateException("dictionary " + version + " is not loaded");
+				}
+				inflater.setDictionary(dictionary);
+			}
+			inflater.setInput(bytes, position[0], bytes.length - position[0]);
+			byte[] plain = new byte[length];
+			int offset = 0;
+			while (offset < length) {
+				int inflatedLength = inflater.inflate(plain, offset, length - offset);
+				if (inflatedLength == 0 && (inflater.finished() || inflater.needsInput())) {
+					break;
+				}
+				offset += inflatedLength;
+			}
+			if (offset != length) {
+				throw new IllegalStateException("compressed value is truncated");
+			}
+
+			inflated.incrementAndGet();
+			inflateNanos.addAndGet(System.nanoTime() - start);
+			return new String(plain, StandardCharsets.UTF_8);
+		} catch (DataFormatException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private void writeVarint(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7f) != 0) {
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private int readVarint(byte[] bytes, int[] position) {
+		int value = 0;
+		int shift = 0;
+		while (true) {
+			byte b = bytes[position[0]++];
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+			shift += 7;
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public long getRaw() {
+		return raw.get();
+	}
+
+	public long getStored() {
+		return stored.get();
+	}
+
+	public long getInflated() {
+		return inflated.get();
+	}
+
+	public long getInflateNanos() {
+		return inflateNanos.get();
+	}
+
+}
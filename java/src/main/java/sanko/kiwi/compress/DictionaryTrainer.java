@@ -0,0 +1,68 @@
+package sanko.kiwi.compress;
+
+import java.util.*; //List, Map, HashMap, Set, HashSet, ArrayList, Comparator
+import java.nio.charset.StandardCharsets;
+import java.io.ByteArrayOutputStream;
+
+//builds a preset dictionary from lines and words that recur across samples
+public class DictionaryTrainer {
+
+	//deflate only looks back this far, a longer dictionary is never used
+	public static final int MAX_SIZE = 32768;
+
+	private final int size;
+
+	public DictionaryTrainer(int size) {
+		this.size = Math.min(size, MAX_SIZE);
+	}
+
+	public byte[] train(List<String> samples) {
+		Map<String, Integer> counts = new HashMap<>();
+		for (String sample : samples) {
+			//each sample counts a fragment once, so one long page does not fill the dictionary
+			Set<String> fragments = new HashSet<>();
+			for (String line : sample.split("\n")) {
+				if (line.length() >= 4 && line.length() <= 80) {
+					fragments.add(line + "\n");
+				}
+				for (String word : line.split("[\\s]+")) {
+					if (word.length() >= 3 && word.length() <= 40) {
+						fragments.add(word + " ");
+					}
+				}
+			}
+			for (String fragment : fragments) {
+				counts.merge(fragment, 1, Integer::sum);
+			}
+		}
+
+		List<Map.Entry<String, Integer>> ranked = new ArrayList<>();
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			if (entry.getValue() > 1) {
+				ranked.add(entry);
+			}
+		}
+		ranked.sort(Comparator.comparingLong((Map.Entry<String, Integer> entry) -> (long) entry.getValue() * entry.getKey().length())
+			.reversed()
+			.thenComparing(Map.Entry::getKey));
+
+		List<byte[]> chosen = new ArrayList<>();
+		int total = 0;
+		for (Map.Entry<String, Integer> entry : ranked) {
+			byte[] bytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+			if (total + bytes.length > size) {
+				continue;
+			}
+			chosen.add(bytes);
+			total += bytes.length;
+		}
+
+		//deflate reaches the end of the dictionary with the shortest distances, so the best fragments go last
+		ByteArrayOutputStream out = new ByteArrayOutputStream(total);
+		for (int i = chosen.size() - 1; i >= 0; i--) {
+			out.write(chosen.get(i), 0, chosen.get(i).length);
+		}
+		return out.toByteArray();
+	}
+
+}
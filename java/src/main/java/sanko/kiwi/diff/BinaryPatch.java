@@ -0,0 +1,201 @@
+package sanko.kiwi.diff;
+
+import java.util.*; //List, LinkedList
+import java.io.ByteArrayOutputStream;
+
+import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch;
+import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch.*; //Diff, Patch, Operation
+
+//patches as varints and raw utf-8: hunk count, then per hunk start1, length1, start2, length2, diff count,
+//then per diff an operation byte, the byte length and the bytes
+//diffs are cut between utf-16 units and may split a surrogate pair, so each unit is written on its own, a surrogate as three bytes
+//text without surrogates comes out as plain utf-8, and four byte sequences written before are still read
+public class BinaryPatch {
+
+	private static final int EQUAL = 0;
+	private static final int INSERT = 1;
+	private static final int DELETE = 2;
+
+	public static byte[] encode(List<Patch> patches) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeVarint(out, patches.size());
+		for (Patch patch : patches) {
+			writeVarint(out, patch.start1);
+			writeVarint(out, patch.length1);
+			writeVarint(out, patch.start2);
+			writeVarint(out, patch.length2);
+			writeVarint(out, patch.diffs.size());
+			for (Diff diff : patch.diffs) {
+				out.write(operation(diff.operation));
+				writeText(out, diff.text);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	public static LinkedList<Patch> decode(byte[] bytes) {
+		Reader reader = new Reader(bytes);
+		LinkedList<Patch> patches = new LinkedList<>();
+		int count = reader.varint();
+		for (int i = 0; i < count; i++) {
+			Patch patch = new Patch();
+			patch.start1 = reader.varint();
+			patch.length1 = reader.varint();
+			patch.start2 = reader.varint();
+			patch.length2 = reader.varint();
+			int diffs = reader.varint();
+			for (int j = 0; j < diffs; j++) {
+				Operation operation = operation(reader.operation());
+				patch.diffs.add(new Diff(operation, reader.text()));
+			}
+			patches.add(patch);
+		}
+		return patches;
+	}
+
+	//applies straight off the bytes while the text matches the patch exactly, otherwise falls back to fuzzy patching
+	public static String apply(String text, byte[] bytes) {
+		Reader reader = new Reader(bytes);
+		StringBuilder out = new StringBuilder(text.length());
+		int position = 0;
+
+		int count = reader.varint();
+		for (int i = 0; i < count; i++) {
+			int start = reader.varint();
+			reader.varint();
+			reader.varint();
+			reader.varint();
+
+			//hunk starts are in the text with the hunks before already applied
+			int skip = start - out.length();
+			if (skip < 0 || position + skip > text.length()) {
+				return fuzzy(text, bytes);
+			}
+			out.append(text, position, position + skip);
+			position += skip;
+
+			int diffs = reader.varint();
+			for (int j = 0; j < diffs; j++) {
+				int operation = reader.operation();
+				String diff = reader.text();
+				if (operation == INSERT) {
+					out.append(diff);
+					continue;
+				}
+				if (!text.startsWith(diff, position)) {
+					return fuzzy(text, bytes);
+				}
+				if (operation == EQUAL) {
+					out.append(diff);
+				}
+				position += diff.length();
+			}
+		}
+
+		out.append(text, position, text.length());
+		return out.toString();
+	}
+
+	private static String fuzzy(String text, byte[] bytes) {
+		DiffMatchPatch dmp = new DiffMatchPatch();
+		Object[] patched = dmp.patchApply(decode(bytes), text);
+		return (String) patched[0];
+	}
+
+	private static int operation(Operation operation) {
+		switch (operation) {
+			case INSERT: return INSERT;
+			case DELETE: return DELETE;
+			default: return EQUAL;
+		}
+	}
+
+	private static Operation operation(int operation) {
+		switch (operation) {
+			case INSERT: return Operation.INSERT;
+			case DELETE: return Operation.DELETE;
+			default: return Operation.EQUAL;
+		}
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7f) != 0) {
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static void writeText(ByteArrayOutputStream out, String text) {
+		int length = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			length += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+		}
+		writeVarint(out, length);
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				out.write(c);
+			} else if (c < 0x800) {
+				out.write(0xc0 | c >> 6);
+				out.write(0x80 | c & 0x3f);
+			} else {
+				out.write(0xe0 | c >> 12);
+				out.write(0x80 | c >> 6 & 0x3f);
+				out.write(0x80 | c & 0x3f);
+			}
+		}
+	}
+
+	private static class Reader {
+
+		private final byte[] bytes;
+		private int position = 0;
+
+		private Reader(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		private int varint() {
+			int value = 0;
+			int shift = 0;
+			while (true) {
+				byte b = bytes[position++];
+				value |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+				shift += 7;
+			}
+		}
+
+		private int operation() {
+			return bytes[position++];
+		}
+
+		private String text() {
+			int end = varint() + position;
+			StringBuilder text = new StringBuilder(end - position);
+			while (position < end) {
+				int b = bytes[position++] & 0xff;
+				if (b < 0x80) {
+					text.append((char) b);
+				} else if (b < 0xe0) {
+					text.append((char) ((b & 0x1f) << 6 | next()));
+				} else if (b < 0xf0) {
+					text.append((char) ((b & 0x0f) << 12 | next() << 6 | next()));
+				} else {
+					text.appendCodePoint((b & 0x07) << 18 | next() << 12 | next() << 6 | next());
+				}
+			}
+			return text.toString();
+		}
+
+		private int next() {
+			return bytes[position++] & 0x3f;
+		}
+
+	}
+
+}
@@ -0,0 +1,27 @@
+package sanko.kiwi.diff;
+
+import java.util.LinkedList;
+
+import lombok.Getter;
+import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch.*; //Diff, Patch
+
+@Getter
+public class Delta {
+
+	private LinkedList<Diff> diffs;
+	private LinkedList<Patch> patches;
+	private String patch;
+	private boolean lines;
+	private boolean timeout;
+	private long nanos;
+
+	public Delta(LinkedList<Diff> diffs, LinkedList<Patch> patches, String patch, boolean lines, boolean timeout, long nanos) {
+		this.diffs = diffs;
+		this.patches = patches;
+		this.patch = patch;
+		this.lines = lines;
+		this.timeout = timeout;
+		this.nanos = nanos;
+	}
+
+}
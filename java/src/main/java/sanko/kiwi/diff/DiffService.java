@@ -0,0 +1,288 @@
+package sanko.kiwi.diff;
+
+import java.util.*; //List, ArrayList, Map, HashMap, LinkedList, Comparator
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Service;
+import org.springframework.beans.factory.annotation.*; //Autowired, Value
+import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch;
+import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch.*; //Diff, Patch, Operation
+import org.springframework.web.util.HtmlUtils;
+
+@Service
+public class DiffService {
+
+	//texts longer than this together are diffed line by line, 0 never does
+	private final int lineThreshold;
+
+	//milliseconds a diff may take before it settles for a coarse result, 0 waits for the exact one
+	private final long timeout;
+
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong nanos = new AtomicLong();
+	private final AtomicLong lines = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong merges = new AtomicLong();
+	private final AtomicLong conflicts = new AtomicLong();
+
+	@Autowired
+	public DiffService(
+		@Value("${kiwi.diff.line-threshold:20000}") int lineThreshold,
+		@Value("${kiwi.diff.timeout:1000}") long timeout
+	) {
+		this.lineThreshold = lineThreshold;
+		this.timeout = timeout;
+	}
+
+	public Delta diff(String text1, String text2) {
+		Delta delta = delta(text1, text2, true);
+		count.incrementAndGet();
+		nanos.addAndGet(delta.getNanos());
+		if (delta.isLines()) {
+			lines.incrementAndGet();
+		}
+		if (delta.isTimeout()) {
+			timeouts.incrementAndGet();
+		}
+		return delta;
+	}
+
+	//the diff without the history stats, merge reads only the diffs so no patch is made for it
+	private Delta delta(String text1, String text2, boolean patch) {
+		long start = System.nanoTime();
+
+		DiffMatchPatch dmp = new DiffMatchPatch();
+		dmp.diffTimeout = timeout / 1000f;
+
+		boolean lineMode = lineThreshold > 0 && text1.length() + text2.length() > lineThreshold;
+		LinkedList<Diff> diffs = null;
+		if (lineMode) {
+			diffs = diffLines(dmp, text1, text2);
+		}
+		if (diffs == null) {
+			lineMode = false;
+			diffs = dmp.diffMain(text1, text2, false);
+		}
+
+		//past the deadline dmp hands back a correct but coarse diff
+		boolean late = timeout > 0 && System.nanoTime() - start >= timeout * 1000000;
+		if (!lineMode && !late) {
+			dmp.diffCleanupSemantic(diffs);
+		}
+		if (!patch) {
+			return new Delta(diffs, null, null, lineMode, late, System.nanoTime() - start);
+		}
+		LinkedList<Patch> patches = dmp.patchMake(diffs);
+		String patchText = dmp.patchToText(patches);
+		return new Delta(diffs, patches, patchText, lineMode, late, System.nanoTime() - start);
+	}
+
+	//three way merge, the changes from base to theirs and from base to current laid over base, null when they touch
+	//hunks are not patched in by fuzzy matching, which would let an edit land on text the other side already changed
+	public String merge(String base, String theirs, String current) {
+		if (current.equals(base)) {
+			merges.incrementAndGet();
+			return theirs;
+		}
+
+		List<Edit> edits = new ArrayList<>(edits(delta(base, current, false).getDiffs()));
+		for (Edit edit : edits(delta(base, theirs, false).getDiffs())) {
+			boolean same = false;
+			for (Edit other : edits) {
+				//an edit made on both sides is taken once, anything else at or against the same text is a conflict
+				if (edit.start == other.start && edit.end == other.end && edit.text.equals(other.text)) {
+					same = true;
+				} else if (edit.start <= other.end && other.start <= edit.end) {
+					conflicts.incrementAndGet();
+					return null;
+				}
+			}
+			if (!same) {
+				edits.add(edit);
+			}
+		}
+
+		edits.sort(Comparator.comparingInt(edit -> edit.start));
+		StringBuilder merged = new StringBuilder();
+		int position = 0;
+		for (Edit edit : edits) {
+			merged.append(base, position, edit.start).append(edit.text);
+			position = edit.end;
+		}
+		merged.append(base, position, base.length());
+		merges.incrementAndGet();
+		return merged.toString();
+	}
+
+	//a run of base text from start to end replaced by text
+	private static class Edit {
+
+		private final int start;
+		private final int end;
+		private final String text;
+
+		private Edit(int start, int end, String text) {
+			this.start = start;
+			this.end = end;
+			this.text = text;
+		}
+
+	}
+
+	private List<Edit> edits(List<Diff> diffs) {
+		List<Edit> edits = new ArrayList<>();
+		int position = 0;
+		int start = -1;
+		StringBuilder text = new StringBuilder();
+		for (Diff diff : diffs) {
+			if (diff.operation == Operation.EQUAL) {
+				if (start >= 0) {
+					edits.add(new Edit(start, position, text.toString()));
+					start = -1;
+					text.setLength(0);
+				}
+				position += diff.text.length();
+				continue;
+			}
+			if (start < 0) {
+				start = position;
+			}
+			if (diff.operation == Operation.DELETE) {
+				position += diff.text.length();
+			} else {
+				text.append(diff.text);
+			}
+		}
+		if (start >= 0) {
+			edits.add(new Edit(start, position, text.toString()));
+		}
+		return edits;
+	}
+
+	public List<Patch> parse(String patchText) {
+		return new DiffMatchPatch().patchFromText(patchText);
+	}
+
+	public String text(List<Patch> patches) {
+		return new DiffMatchPatch().patchToText(patches);
+	}
+
+	//turns patches from text2 to text1 into patches from text1 to text2, in place
+	public List<Patch> invert(List<Patch> patches) {
+		for (Patch patch : patches) {
+			int start = patch.start1;
+			patch.start1 = patch.start2;
+			patch.start2 = start;
+			int length = patch.length1;
+			patch.length1 = patch.length2;
+			patch.length2 = length;
+
+			LinkedList<Diff> diffs = new LinkedList<>();
+			for (Diff diff : patch.diffs) {
+				Diff last = diffs.peekLast();
+				if (diff.operation == Operation.DELETE) {
+					diffs.add(new Diff(Operation.INSERT, diff.text));
+				} else if (diff.operation == Operation.INSERT && last != null && last.operation == Operation.INSERT) {
+					//deletions read before insertions
+					diffs.add(diffs.size() - 1, new Diff(Operation.DELETE, diff.text));
+				} else if (diff.operation == Operation.INSERT) {
+					diffs.add(new Diff(Operation.DELETE, diff.text));
+				} else {
+					diffs.add(diff);
+				}
+			}
+			patch.diffs = diffs;
+		}
+		return patches;
+	}
+
+	//patch hunks as html, a line per diff with deletions in del and insertions in ins
+	public String html(List<Patch> patches) {
+		StringBuilder html = new StringBuilder();
+		for (Patch patch : patches) {
+			for (Diff diff : patch.diffs) {
+				String text = HtmlUtils.htmlEscape(diff.text).replaceAll("\r*\n", "\n ");
+				switch (diff.operation) {
+					case INSERT -> html.append("<ins>+").append(text).append("</ins>");
+					case DELETE -> html.append("<del>-").append(text).append("</del>");
+					default -> html.append(' ').append(text);
+				}
+				html.append('\n');
+			}
+		}
+		return html.toString();
+	}
+
+	//each distinct line becomes one char, so the diff works on lines instead of chars
+	private LinkedList<Diff> diffLines(DiffMatchPatch dmp, String text1, String text2) {
+		List<String> lineArray = new ArrayList<>();
+		Map<String, Integer> lineHash = new HashMap<>();
+		lineArray.add("");
+
+		String chars1 = encodeLines(text1, lineArray, lineHash);
+		String chars2 = encodeLines(text2, lineArray, lineHash);
+		if (chars1 == null || chars2 == null) {
+			return null;
+		}
+
+		LinkedList<Diff> diffs = dmp.diffMain(chars1, chars2, false);
+		for (Diff diff : diffs) {
+			StringBuilder text = new StringBuilder();
+			for (int i = 0; i < diff.text.length(); i++) {
+				text.append(lineArray.get(diff.text.charAt(i)));
+			}
+			diff.text = text.toString();
+		}
+		return diffs;
+	}
+
+	private String encodeLines(String text, List<String> lineArray, Map<String, Integer> lineHash) {
+		StringBuilder chars = new StringBuilder();
+		int start = 0;
+		while (start < text.length()) {
+			int end = text.indexOf('\n', start);
+			if (end == -1) {
+				end = text.length() - 1;
+			}
+			String line = text.substring(start, end + 1);
+			start = end + 1;
+
+			Integer index = lineHash.get(line);
+			if (index == null) {
+				if (lineArray.size() == Character.MAX_VALUE) {
+					return null;
+				}
+				index = lineArray.size();
+				lineArray.add(line);
+				lineHash.put(line, index);
+			}
+			chars.append((char) index.intValue());
+		}
+		return chars.toString();
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getNanos() {
+		return nanos.get();
+	}
+
+	public long getLines() {
+		return lines.get();
+	}
+
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	public long getMerges() {
+		return merges.get();
+	}
+
+	public long getConflicts() {
+		return conflicts.get();
+	}
+
+}
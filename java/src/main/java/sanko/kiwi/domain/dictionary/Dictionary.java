@@ -0,0 +1,31 @@
+package sanko.kiwi.domain.dictionary;
+
+import java.time.LocalDateTime;
+import jakarta.persistence.*; //Entity, Table, Id, Column
+
+import lombok.*; //Getter, NoArgsConstructor
+
+//preset deflate dictionaries, compressed values name the version they were compressed with so old versions are never deleted
+@Getter
+@NoArgsConstructor
+@Entity
+@Table(name = "dictionarys")
+public class Dictionary {
+
+	@Id
+	@Column(name = "version")
+	private Integer version;
+
+	@Column(name = "bytes", columnDefinition = "BLOB", nullable = false)
+	private byte[] bytes;
+
+	@Column(name = "write")
+	private LocalDateTime write;
+
+	public Dictionary(Integer version, byte[] bytes) {
+		this.version = version;
+		this.bytes = bytes;
+		this.write = LocalDateTime.now();
+	}
+
+}
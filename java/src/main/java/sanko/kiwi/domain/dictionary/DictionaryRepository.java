@@ -0,0 +1,9 @@
+package sanko.kiwi.domain.dictionary;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface DictionaryRepository extends JpaRepository<Dictionary, Integer> {
+
+	Dictionary findFirstByOrderByVersionDesc();
+
+}
@@ -2,15 +2,19 @@ package sanko.kiwi.domain.history;
 
 import java.time.LocalDateTime;
 import java.util.*; //List, LinkedList
-import jakarta.persistence.*; //Entity, Table, Id, Column, GeneratedValue, GenerationType, JoinColumn, ManyToOne
+import jakarta.persistence.*; //Entity, Table, Id, Column, GeneratedValue, GenerationType, JoinColumn, ManyToOne, Transient, Convert
 
 import lombok.*; //Builder, Getter, NoArgsConstructor
 import org.springframework.data.annotation.CreatedDate;
+import org.hibernate.annotations.JdbcType;
 import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch;
-import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch.*; //Diff, Patch
+import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch.Patch;
 
 import sanko.kiwi.domain.page.Page;
+import sanko.kiwi.diff.*; //Delta, BinaryPatch
+import sanko.kiwi.compress.*; //CompressConverter, CompressJdbcType
 
+//the unique index on (page_id, event) is made by HistoryEventIndex, hibernate cannot add one to an existing sqlite table
 @Getter
 @NoArgsConstructor
 @Entity
@@ -35,6 +39,8 @@ public class History {
 	@Column(name = "title")
 	private String title;
 
+	@Convert(converter = CompressConverter.class)
+	@JdbcType(CompressJdbcType.class)
 	@Column(name = "content")
 	private String content;
 
@@ -42,22 +48,121 @@ public class History {
 	@Column(name = "write")
 	private LocalDateTime write;
 
+	//full title and content of this event, kept every few events so rebuilding needs not start at event 1
+	@Column(name = "snapshot_title")
+	private String snapshotTitle;
+
+	@Convert(converter = CompressConverter.class)
+	@JdbcType(CompressJdbcType.class)
+	@Column(name = "snapshot_content")
+	private String snapshotContent;
+
+	//reverse rows patch this event back to the one before it, and the newest row keeps a snapshot
+	@Column(name = "reverse", columnDefinition = "BOOLEAN DEFAULT 0")
+	private Boolean reverse;
+
+	//length of both patches and time spent diffing them, recorded on every save
+	@Column(name = "patch_size")
+	private Integer patchSize;
+
+	@Column(name = "diff_micros")
+	private Long diffMicros;
+
+	//diffs as shown on /diff, rendered once when the patches are written
+	@Column(name = "title_diff")
+	private String titleDiff;
+
+	@Column(name = "content_diff")
+	private String contentDiff;
+
+	//patches are kept as text in title and content, or as BinaryPatch bytes in title_binary and content_binary
+	public static final int TEXT = 0;
+	public static final int BINARY = 1;
+
+	@Column(name = "format", columnDefinition = "INTEGER DEFAULT 0")
+	private Integer format;
+
+	@Column(name = "title_binary", columnDefinition = "BLOB")
+	private byte[] titleBinary;
+
+	@Column(name = "content_binary", columnDefinition = "BLOB")
+	private byte[] contentBinary;
+
+	//set when a diff ran past its deadline, such a row needs a snapshot to rebuild from
+	@Transient
+	private boolean timeout;
+
+	//patches are diffed by the history service and stored with store
 	@Builder
-	public History(Page page, Integer event, String summary, String title, String content) {
+	public History(Page page, Integer event, String summary, boolean binary) {
 		this.page = page;
+		this.format = binary ? BINARY : TEXT;
 		this.event = event;
 		this.summary = summary;
-		this.title = getPatch(page.getTitle(), title);
-		this.content = getPatch(page.getContent(), content);
 		this.write = LocalDateTime.now();
 	}
 
-	private String getPatch(String text1, String text2) {
-		DiffMatchPatch dmp = new DiffMatchPatch();
-		LinkedList<Diff> diff = dmp.diffMain(text1, text2, false);
-		dmp.diffCleanupSemantic(diff);
-		LinkedList<Patch> patch = dmp.patchMake(diff);
-		return dmp.patchToText(patch);
+	//reverse deltas patch this event back to the one before it
+	public void store(Delta titleDelta, Delta contentDelta, boolean reverse) {
+		this.reverse = reverse;
+		if (isBinary()) {
+			this.title = null;
+			this.content = null;
+			this.titleBinary = BinaryPatch.encode(titleDelta.getPatches());
+			this.contentBinary = BinaryPatch.encode(contentDelta.getPatches());
+			this.patchSize = titleBinary.length + contentBinary.length;
+		} else {
+			this.title = titleDelta.getPatch();
+			this.content = contentDelta.getPatch();
+			this.patchSize = title.length() + content.length();
+		}
+		this.diffMicros = (titleDelta.getNanos() + contentDelta.getNanos()) / 1000;
+		this.timeout = titleDelta.isTimeout() || contentDelta.isTimeout();
+	}
+
+	public void renderDiff(String titleDiff, String contentDiff) {
+		this.titleDiff = titleDiff;
+		this.contentDiff = contentDiff;
+	}
+
+	public boolean isDiffRendered() {
+		return titleDiff != null && contentDiff != null;
+	}
+
+	public void snapshot(String title, String content) {
+		this.snapshotTitle = title;
+		this.snapshotContent = content;
+	}
+
+	public void clearSnapshot() {
+		this.snapshotTitle = null;
+		this.snapshotContent = null;
+	}
+
+	public boolean isSnapshot() {
+		return snapshotTitle != null;
+	}
+
+	public boolean isReverse() {
+		return reverse != null && reverse;
+	}
+
+	public boolean isBinary() {
+		return format != null && format == BINARY;
+	}
+
+	public String applyTitle(String title) {
+		if (isBinary()) {
+			return BinaryPatch.apply(title, titleBinary);
+		}
+		return applyPatch(title, this.title);
+	}
+
+	public String applyContent(String content) {
+		if (isBinary()) {
+			return BinaryPatch.apply(content, contentBinary);
+		}
+		return applyPatch(content, this.content);
 	}
 
 	private String applyPatch(String text, String patchText) {
@@ -0,0 +1,11 @@
+package sanko.kiwi.domain.history;
+
+import java.time.LocalDateTime;
+
+public interface HistoryEntry {
+
+	Integer getEvent();
+	String getSummary();
+	LocalDateTime getWrite();
+
+}
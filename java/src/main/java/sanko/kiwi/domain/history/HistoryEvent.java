@@ -0,0 +1,7 @@
+package sanko.kiwi.domain.history;
+
+public interface HistoryEvent {
+
+	Integer getEvent();
+
+}
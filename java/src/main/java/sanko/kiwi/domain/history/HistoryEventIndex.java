@@ -0,0 +1,51 @@
+package sanko.kiwi.domain.history;
+
+import org.springframework.stereotype.Component;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.context.event.*; //EventListener, ContextRefreshedEvent
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+//unique index on (page_id, event), so history paging counts on the events of a page running 1, 2, 3 ... without duplicates or gaps
+//databases from before the index may hold duplicate events, they are renumbered in event and id order once, before the index is made
+//a database that has the index skips all of it, so a start costs one lookup in sqlite_master
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class HistoryEventIndex {
+
+	private static final String NAME = "historys_page_event";
+
+	private static final String[] MIGRATION = {
+		"drop table if exists temp.historys_renumber",
+		"create temp table historys_renumber as"
+			+ " select id, page_id, number from (select id, page_id, event, row_number() over (partition by page_id order by event, id) as number from historys)"
+			+ " where number is not event",
+		//through negative events, so no row takes a number another still holds
+		"update historys set event = -(select number from historys_renumber r where r.id = historys.id) where id in (select id from historys_renumber)",
+		"update historys set event = -event where event < 0",
+		"update pages set revision = (select max(event) from historys h where h.page_id = pages.id) where id in (select page_id from historys_renumber)",
+		"drop table historys_renumber",
+		"create unique index " + NAME + " on historys (page_id, event)"
+	};
+
+	private final JdbcTemplate jdbcTemplate;
+	private final TransactionTemplate transactionTemplate;
+
+	//one transaction keeps the temp table on one connection and leaves the events as they were if any statement fails
+	@EventListener(ContextRefreshedEvent.class)
+	public synchronized void create() {
+		Integer indexes = jdbcTemplate.queryForObject("select count(*) from sqlite_master where type = 'index' and name = '" + NAME + "'", Integer.class);
+		if (indexes > 0) {
+			return;
+		}
+		transactionTemplate.executeWithoutResult(status -> {
+			for (String statement : MIGRATION) {
+				jdbcTemplate.execute(statement);
+			}
+		});
+		log.info("history events renumbered and indexed");
+	}
+
+}
@@ -1,6 +1,11 @@
 package sanko.kiwi.domain.history;
 
-import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+
+import org.springframework.data.jpa.repository.*; //JpaRepository, Modifying, Query
+import org.springframework.data.repository.query.Param;
 
 import sanko.kiwi.domain.page.Page;
 
@@ -8,5 +13,23 @@ public interface HistoryRepository extends JpaRepository<History, Long> {
 
 	History findFirstByPageOrderByEventDesc(Page page);
 	History findOneByPageAndEvent(Page page, Integer event);
+	History findFirstByPageAndEventLessThanEqualAndSnapshotTitleNotNullOrderByEventDesc(Page page, Integer event);
+	History findFirstByPageAndEventGreaterThanEqualAndSnapshotTitleNotNullOrderByEventAsc(Page page, Integer event);
+	List<History> findByPageAndEventBetweenOrderByEventAsc(Page page, Integer from, Integer to);
+	List<History> findByPageAndEventBetweenOrderByEventDesc(Page page, Integer from, Integer to);
+	List<History> findByPageIdOrderByEventAsc(Long pageId);
+
+	//keyset on (page_id, event), newest first, without the patches
+	HistoryEvent findFirstEventByPageIdOrderByEventDesc(Long pageId);
+	List<HistoryEntry> findEntryByPageIdAndEventLessThanEqualOrderByEventDesc(Long pageId, Integer event, Pageable pageable);
+
+	@Modifying
+	@Query("update History h set h.snapshotTitle = null, h.snapshotContent = null where h.page = :page and h.event = :event")
+	int clearSnapshot(@Param("page") Page page, @Param("event") Integer event);
+
+	//writes content back through its converter even though it has not changed
+	@Modifying
+	@Query("update History h set h.content = :content, h.snapshotContent = :snapshotContent where h.id = :id")
+	int writeContent(@Param("id") Long id, @Param("content") String content, @Param("snapshotContent") String snapshotContent);
 
 }
@@ -0,0 +1,22 @@
+package sanko.kiwi.domain.history;
+
+import lombok.Getter;
+
+@Getter
+public class Revision {
+
+	private String title;
+	private String content;
+	private String html;
+
+	public Revision(String title, String content) {
+		this(title, content, null);
+	}
+
+	public Revision(String title, String content, String html) {
+		this.title = title;
+		this.content = content;
+		this.html = html;
+	}
+
+}
@@ -2,16 +2,14 @@ package sanko.kiwi.domain.page;
 
 import java.util.List;
 import java.time.LocalDateTime;
-import jakarta.persistence.*; //Entity, Table, Id, Column, GeneratedValue, GenerationType, OneToMany, OrderBy
+import jakarta.persistence.*; //Entity, Table, Id, Column, Convert, GeneratedValue, GenerationType, OneToMany, OrderBy, Version
 
 import lombok.*; //Builder, Getter, NoArgsConstructor
 import org.springframework.data.annotation.LastModifiedDate;
-import org.commonmark.node.Node;
-import org.commonmark.parser.Parser;
-import org.commonmark.renderer.html.HtmlRenderer;
-import org.jsoup.Jsoup;
+import org.hibernate.annotations.JdbcType;
 
 import sanko.kiwi.domain.history.History;
+import sanko.kiwi.compress.*; //CompressConverter, CompressJdbcType
 
 @Getter
 @NoArgsConstructor
@@ -27,6 +25,8 @@ public class Page {
 	@Column(name = "title", length = 50, unique = true, nullable = false)
 	private String title;
 
+	@Convert(converter = CompressConverter.class)
+	@JdbcType(CompressJdbcType.class)
 	@Column(name = "content")
 	private String content;
 
@@ -36,6 +36,32 @@ public class Page {
 	@Column(name = "text")
 	private String text;
 
+	//character pairs of the title and text in scripts written without spaces, indexed by fts5 next to them
+	//worked out by the caller from the text it rendered
+	@Column(name = "grams")
+	private String grams;
+
+	//bumped on every content change, html and text belong to render generation
+	@Column(name = "generation", columnDefinition = "INTEGER DEFAULT 0")
+	private Long generation;
+
+	@Column(name = "render_generation", columnDefinition = "INTEGER DEFAULT 0")
+	private Long renderGeneration;
+
+	//event of the newest history, counted here so a save needs not look it up
+	@Column(name = "revision")
+	private Integer revision;
+
+	//whether its historys are stored reverse, so a save needs not read the newest one to know
+	@Column(name = "history_reverse")
+	private Boolean historyReverse;
+
+	//checked by every update of the row, so a page read before another commit cannot overwrite it
+	@Version
+	@Column(name = "version", columnDefinition = "INTEGER DEFAULT 0")
+	private Long version;
+
+	//a lease other processes see before an edit commits, cleared by the edit's own page update
 	@Column(name = "lock")
 	private LocalDateTime lock;
 
@@ -54,29 +80,62 @@ public class Page {
 	public Page(String title, String content) {
 		this.title = title;
 		this.content = content;
-		String contentLinked = content.replaceAll("\\[\\[([^()\\[\\]\\n\\r*_`/\\\\]*)\\]\\]", "[$1](/wiki/$1)");
-		Parser parser = Parser.builder().build();
-		Node node = parser.parse(contentLinked);
-		HtmlRenderer renderer = HtmlRenderer.builder().build();
-		this.html = renderer.render(node);
-		this.text = Jsoup.parse(this.html).text();
+		this.generation = 0L;
+		this.revision = 0;
 	}
 
-	public void update(String title, String content) {
+	//leaves html and text at the previous render until one for this generation is stored
+	public void change(String title, String content) {
 		this.title = title;
 		this.content = content;
-		String contentLinked = content.replaceAll("\\[\\[([^()\\[\\]\\n\\r*_`/\\\\]*)\\]\\]", "[$1](/wiki/$1)");
-		Parser parser = Parser.builder().build();
-		Node node = parser.parse(contentLinked);
-		HtmlRenderer renderer = HtmlRenderer.builder().build();
-		this.html = renderer.render(node);
-		this.text = Jsoup.parse(this.html).text();
+		this.generation = getGeneration() + 1;
 		this.refresh = LocalDateTime.now();
 	}
 
-	public void lock(LocalDateTime lock, Integer lockId) {
-		this.lock = lock;
-		this.lockId = lockId;
+	//html and text rendered by the caller from the content of this generation
+	public void render(String html, String text) {
+		this.html = html;
+		this.text = text;
+		this.renderGeneration = getGeneration();
+	}
+
+	public void index(String grams) {
+		this.grams = grams;
+	}
+
+	public Long getGeneration() {
+		return generation == null ? 0L : generation;
+	}
+
+	public boolean isRendered() {
+		return getGeneration().equals(renderGeneration);
+	}
+
+	//null for pages made before the counter, until their first save counts their historys
+	public boolean isRevisionCounted() {
+		return revision != null;
+	}
+
+	public void countRevision(Integer revision) {
+		this.revision = revision;
+	}
+
+	public Integer revise() {
+		revision = revision + 1;
+		return revision;
+	}
+
+	//null for pages made before the column, until their first save reads it from their newest history
+	public boolean isStorageKnown() {
+		return historyReverse != null;
+	}
+
+	public boolean isHistoryReverse() {
+		return historyReverse != null && historyReverse;
+	}
+
+	public void store(boolean reverse) {
+		this.historyReverse = reverse;
 	}
 
 	public void unlock() {
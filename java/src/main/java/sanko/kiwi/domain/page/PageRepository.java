@@ -1,14 +1,84 @@
 package sanko.kiwi.domain.page;
 
-import java.util.List;
+import java.util.*; //List, Collection
 import java.time.LocalDateTime;
 
-import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.*; //JpaRepository, Modifying, Query
+import org.springframework.data.repository.query.Param;
 
 public interface PageRepository extends JpaRepository<Page, Long> {
 
+	//one past the snippet length shown, so callers can tell the text goes on
+	int SNIPPET = 101;
+
+	//where the window of text shown starts, lead characters before the first match in the text
+	String LOCATE = "locate(lower(:text), lower(p.text))";
+	String START = "case when " + LOCATE + " > :lead then " + LOCATE + " - :lead else 1 end";
+
 	Page findOneByTitle(String title);
-	Page findOneByTitleAndLockAndLockId(String title, LocalDateTime lock, Integer lockId);
-	List<Page> findByTitleContainingOrTextContaining(String title, String content);
+
+	PageId findIdByTitle(String title);
+	PageTitle findTitleById(Long id);
+	PageStamp findStampByTitle(String title);
+	List<PageTitle> findTitleBy(Pageable pageable);
+	List<PageId> findIdBy(Pageable pageable);
+	List<PageText> findTextByIdIn(Collection<Long> ids);
+
+	//in id order, so one page of matches is read without going through the rest
+	@Query("select p.title as title, substring(p.text, " + START + ", " + SNIPPET + ") as snippet, " + START + " as start from Page p where p.title like concat('%', :search, '%') escape '\\' or p.text like concat('%', :search, '%') escape '\\' order by p.id")
+	List<PageWindow> search(@Param("search") String search, @Param("text") String text, @Param("lead") int lead, Pageable pageable);
+
+	//counting stops at limit, past that the number of pages shown is not worth a full scan
+	@Query(value = "select count(*) from (select 1 from pages p where p.title like '%' || :search || '%' escape '\\' or p.text like '%' || :search || '%' escape '\\' limit :limit)", nativeQuery = true)
+	long countSearch(@Param("search") String search, @Param("limit") int limit);
+
+	//matches in the title count weight times as much as in the text
+	//snippet() cuts the text around the best matching tokens and marks them, with ellipsis where it cut
+	@Query(value = "select p.title as title, snippet(pages_fts, 1, char(2), char(3), :ellipsis, 16) as snippet from pages_fts f join pages p on p.id = f.rowid where pages_fts match :match order by bm25(pages_fts, :weight, 1.0, 1.0)", nativeQuery = true)
+	List<PageSnippet> searchFullText(@Param("match") String match, @Param("weight") double weight, @Param("ellipsis") String ellipsis, Pageable pageable);
+
+	//snippet() marks only tokens of the text column, so matches of pairs are marked by the caller
+	@Query(value = "select f.rowid from pages_fts f where pages_fts match :match order by bm25(pages_fts, :weight, 1.0, 1.0)", nativeQuery = true)
+	List<Long> findIdByFullText(@Param("match") String match, @Param("weight") double weight, Pageable pageable);
+
+	@Query(value = "select count(*) from (select 1 from pages_fts where pages_fts match :match limit :limit)", nativeQuery = true)
+	long countFullText(@Param("match") String match, @Param("limit") int limit);
+
+	//pages whose stored html and text are behind their content
+	@Query("select p.id as id from Page p where p.generation <> p.renderGeneration")
+	List<PageId> findUnrendered();
+
+	@Modifying
+	@Query("update Page p set p.html = :html, p.text = :text, p.grams = :grams, p.renderGeneration = p.generation where p.id = :id and p.generation = :generation")
+	int render(@Param("id") Long id, @Param("generation") Long generation, @Param("html") String html, @Param("text") String text, @Param("grams") String grams);
+
+	//takes the next event only while no other save has taken it
+	@Modifying
+	@Query("update Page p set p.revision = p.revision + 1 where p.id = :id and p.revision = :revision")
+	int revise(@Param("id") Long id, @Param("revision") Integer revision);
+
+	@Modifying
+	@Query("update Page p set p.revision = :revision where p.id = :id and p.revision is null")
+	int countRevision(@Param("id") Long id, @Param("revision") Integer revision);
+
+	@Modifying
+	@Query("update Page p set p.historyReverse = :reverse where p.id = :id")
+	int store(@Param("id") Long id, @Param("reverse") boolean reverse);
+
+	//takes the lease only while no other one is held or the one held has run out, so two takers cannot both get it
+	@Modifying
+	@Query("update Page p set p.lock = :lock, p.lockId = :lockId where p.title = :title and (p.lock is null or p.lock < :now)")
+	int lock(@Param("title") String title, @Param("lock") LocalDateTime lock, @Param("lockId") Integer lockId, @Param("now") LocalDateTime now);
+
+	//clears the lease only while it is still the one taken
+	@Modifying
+	@Query("update Page p set p.lock = null, p.lockId = null where p.title = :title and p.lockId = :lockId")
+	int unlock(@Param("title") String title, @Param("lockId") Integer lockId);
+
+	//writes content back through its converter even though it has not changed
+	@Modifying
+	@Query("update Page p set p.content = :content where p.id = :id")
+	int writeContent(@Param("id") Long id, @Param("content") String content);
 
 }
@@ -0,0 +1,8 @@
+package sanko.kiwi.domain.page;
+
+public interface PageSnippet {
+
+	String getTitle();
+	String getSnippet();
+
+}
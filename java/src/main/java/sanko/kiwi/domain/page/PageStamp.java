@@ -0,0 +1,12 @@
+package sanko.kiwi.domain.page;
+
+import java.time.LocalDateTime;
+
+public interface PageStamp {
+
+	Long getId();
+	Long getGeneration();
+	Long getRenderGeneration();
+	LocalDateTime getRefresh();
+
+}
@@ -0,0 +1,9 @@
+package sanko.kiwi.domain.page;
+
+public interface PageText {
+
+	Long getId();
+	String getTitle();
+	String getText();
+
+}
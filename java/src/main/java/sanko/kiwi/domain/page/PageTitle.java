@@ -0,0 +1,7 @@
+package sanko.kiwi.domain.page;
+
+public interface PageTitle {
+
+	String getTitle();
+
+}
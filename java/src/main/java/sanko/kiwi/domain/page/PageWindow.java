@@ -0,0 +1,8 @@
+package sanko.kiwi.domain.page;
+
+//a snippet cut from the text at start, counting from 1
+public interface PageWindow extends PageSnippet {
+
+	Integer getStart();
+
+}
@@ -2,7 +2,7 @@ package sanko.kiwi.dto;
 
 import lombok.Getter;
 
-import sanko.kiwi.domain.page.Page;
+import sanko.kiwi.domain.history.Revision;
 
 @Getter
 public class PageBack {
@@ -13,9 +13,9 @@ public class PageBack {
 
 	private String redirect;
 
-	public PageBack(Page page, Integer event) {
-		this.title = page.getTitle();
-		this.html = page.getHtml();
+	public PageBack(Revision revision, Integer event) {
+		this.title = revision.getTitle();
+		this.html = revision.getHtml();
 		this.event = event;
 	}
 
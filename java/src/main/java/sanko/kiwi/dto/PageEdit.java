@@ -12,20 +12,31 @@ public class PageEdit {
 	private String summary;
 	private String content;
 	private String html;
+	private Integer revision;
+
+	//set when the page was saved by someone else since the edit started
+	private boolean conflict;
 
 	private String redirect;
 
-	public PageEdit(Page page, String newTitle, String summary) {
+	public PageEdit(Page page, String newTitle, String summary, Integer revision, boolean conflict) {
 		this.title = page.getTitle();
 		this.newTitle = newTitle;
 		this.summary = summary;
 		this.content = page.getContent();
 		this.html = page.getHtml();
+		this.revision = revision;
+		this.conflict = conflict;
 		this.redirect = null;
 	}
 
-	public PageEdit(Page page) {
-		this(page, page.getTitle(), "");
+	public PageEdit(Page page, String newTitle, String summary, Integer revision) {
+		this(page, newTitle, summary, revision, false);
+	}
+
+	public PageEdit(Page page, String html) {
+		this(page, page.getTitle(), "", page.getRevision());
+		this.html = html;
 	}
 
 	public PageEdit(String redirect) {
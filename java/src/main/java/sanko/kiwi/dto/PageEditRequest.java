@@ -9,11 +9,15 @@ public class PageEditRequest {
 	private String content;
 	private String summary;
 
+	//revision the edit started from, null from forms made before it was sent
+	private Integer revision;
+
 	@Builder
-	public PageEditRequest(String title, String content, String summary) {
+	public PageEditRequest(String title, String content, String summary, Integer revision) {
 		this.title = title;
 		this.content = content;
 		this.summary = summary;
+		this.revision = revision;
 	}
 
 }
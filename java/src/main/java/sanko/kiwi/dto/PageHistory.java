@@ -4,7 +4,7 @@ import java.time.LocalDateTime;
 
 import lombok.Getter;
 
-import sanko.kiwi.domain.history.History;
+import sanko.kiwi.domain.history.HistoryEntry;
 
 @Getter
 public class PageHistory {
@@ -13,7 +13,7 @@ public class PageHistory {
 	private LocalDateTime write;
 	private Integer event;
 
-	public PageHistory(History history) {
+	public PageHistory(HistoryEntry history) {
 		this.summary = history.getSummary();
 		this.write = history.getWrite();
 		this.event = history.getEvent();
@@ -5,8 +5,7 @@ import java.util.stream.Collectors;
 
 import lombok.Getter;
 
-import sanko.kiwi.domain.page.Page;
-import sanko.kiwi.domain.history.History;
+import sanko.kiwi.domain.history.HistoryEntry;
 
 @Getter
 public class PageHistoryView {
@@ -20,8 +19,8 @@ public class PageHistoryView {
 
 	private String redirect;
 
-	public PageHistoryView(Page page, int current, int last, List<History> historys) {
-		this.title = page.getTitle();
+	public PageHistoryView(String title, int current, int last, List<HistoryEntry> historys) {
+		this.title = title;
 		this.current = current;
 		this.last = last;
 		this.historys = historys.stream()
@@ -5,7 +5,7 @@ import java.util.stream.Collectors;
 
 import lombok.Getter;
 
-import sanko.kiwi.domain.page.Page;
+import sanko.kiwi.domain.page.PageSnippet;
 
 @Getter
 public class PageSearch {
@@ -17,7 +17,7 @@ public class PageSearch {
 
 	private List<PageSimple> pages;
 
-	public PageSearch(String search, int current, int last, List<Page> pages) {
+	public PageSearch(String search, int current, int last, List<PageSnippet> pages) {
 		this.search = search;
 		this.current = current;
 		this.last = last;
@@ -1,19 +1,46 @@
 package sanko.kiwi.dto;
 
-import lombok.Getter;
+import java.util.*; //List, ArrayList
 
-import sanko.kiwi.domain.page.Page;
+import lombok.Getter;
 
+import sanko.kiwi.domain.page.PageSnippet;
+import sanko.kiwi.search.Highlighter;
 
 @Getter
 public class PageSimple {
 
 	private String title;
-	private String text;
 
-	public PageSimple(Page page) {
+	//the snippet split at its marks, so the template escapes the text and highlights the matches
+	private List<SnippetPart> parts;
+
+	public PageSimple(PageSnippet page) {
 		this.title = page.getTitle();
-		this.text = page.getContent();
+		this.parts = split(page.getSnippet());
+	}
+
+	private static List<SnippetPart> split(String snippet) {
+		List<SnippetPart> parts = new ArrayList<>();
+		if (snippet == null) {
+			return parts;
+		}
+
+		StringBuilder part = new StringBuilder();
+		for (char c : snippet.toCharArray()) {
+			if (c == Highlighter.MARK || c == Highlighter.UNMARK) {
+				if (part.length() > 0) {
+					parts.add(new SnippetPart(part.toString(), c == Highlighter.UNMARK));
+					part.setLength(0);
+				}
+			} else {
+				part.append(c);
+			}
+		}
+		if (part.length() > 0) {
+			parts.add(new SnippetPart(part.toString(), false));
+		}
+		return parts;
 	}
 
 }
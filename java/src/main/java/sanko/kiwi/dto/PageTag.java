@@ -0,0 +1,27 @@
+package sanko.kiwi.dto;
+
+import java.time.ZoneId;
+
+import lombok.Getter;
+
+import sanko.kiwi.domain.page.PageStamp;
+
+@Getter
+public class PageTag {
+
+	private String etag;
+	private long lastModified;
+	private boolean rendered;
+
+	public PageTag(PageStamp stamp) {
+		this.etag = String.format("\"%d-%d-%d\"", stamp.getId(), stamp.getGeneration(), stamp.getRenderGeneration());
+		this.rendered = stamp.getGeneration().equals(stamp.getRenderGeneration());
+		//html still changes when a pending render lands, so only a rendered page has a modified time
+		if (stamp.getRefresh() == null || !rendered) {
+			this.lastModified = -1;
+		} else {
+			this.lastModified = stamp.getRefresh().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		}
+	}
+
+}
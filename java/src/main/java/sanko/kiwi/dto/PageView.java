@@ -11,10 +11,10 @@ public class PageView {
 	private String content;
 	private String html;
 
-	public PageView(Page page) {
+	public PageView(Page page, String html) {
 		this.title = page.getTitle();
 		this.content = page.getContent();
-		this.html = page.getHtml();
+		this.html = html;
 	}
 
 }
@@ -0,0 +1,16 @@
+package sanko.kiwi.dto;
+
+import lombok.Getter;
+
+@Getter
+public class SnippetPart {
+
+	private String text;
+	private boolean match;
+
+	public SnippetPart(String text, boolean match) {
+		this.text = text;
+		this.match = match;
+	}
+
+}
@@ -0,0 +1,99 @@
+package sanko.kiwi.job;
+
+import java.util.List;
+import java.util.ArrayList;
+
+import org.springframework.stereotype.Component;
+import org.springframework.boot.*; //ApplicationRunner, ApplicationArguments
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import lombok.extern.slf4j.Slf4j;
+
+import sanko.kiwi.domain.page.*; //Page, PageRepository
+import sanko.kiwi.domain.history.*; //History, HistoryRepository
+import sanko.kiwi.domain.dictionary.*; //Dictionary, DictionaryRepository
+import sanko.kiwi.compress.*; //Compressor, DictionaryTrainer
+
+//trains a new compression dictionary from the wiki and recompresses every row with it, run with kiwi.job.dictionary=true
+@Slf4j
+@ConditionalOnProperty(name = "kiwi.job.dictionary", havingValue = "true")
+@Component
+public class DictionaryJob implements ApplicationRunner {
+
+	private final PageBatch pageBatch;
+	private final PageRepository pageRepository;
+	private final HistoryRepository historyRepository;
+	private final DictionaryRepository dictionaryRepository;
+	private final Compressor compressor;
+	private final TransactionTemplate transactionTemplate;
+
+	@Value("${kiwi.compress.samples:1000}")
+	private int samples;
+
+	@Value("${kiwi.compress.dictionary-size:32768}")
+	private int dictionarySize;
+
+	public DictionaryJob(PageBatch pageBatch, PageRepository pageRepository, HistoryRepository historyRepository, DictionaryRepository dictionaryRepository, Compressor compressor, PlatformTransactionManager transactionManager) {
+		this.pageBatch = pageBatch;
+		this.pageRepository = pageRepository;
+		this.historyRepository = historyRepository;
+		this.dictionaryRepository = dictionaryRepository;
+		this.compressor = compressor;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		Dictionary dictionary = transactionTemplate.execute(status -> train());
+		log.info("dictionary job trained version {} with {} bytes", dictionary.getVersion(), dictionary.getBytes().length);
+
+		if (!compressor.isEnabled()) {
+			log.info("compression is off, rows are left as they are");
+			return;
+		}
+
+		long raw = compressor.getRaw();
+		long stored = compressor.getStored();
+		pageBatch.run("dictionary", this::recompress);
+		raw = compressor.getRaw() - raw;
+		stored = compressor.getStored() - stored;
+		log.info("dictionary job compressed {} bytes into {} bytes", raw, stored);
+	}
+
+	public Dictionary train() {
+		List<String> corpus = new ArrayList<>();
+		for (Page page : pageRepository.findAll(PageRequest.of(0, samples, Sort.by(Sort.Direction.DESC, "id")))) {
+			corpus.add(page.getContent());
+		}
+		for (History history : historyRepository.findAll(PageRequest.of(0, samples, Sort.by(Sort.Direction.DESC, "id")))) {
+			if (history.getContent() != null) {
+				corpus.add(history.getContent());
+			}
+		}
+
+		Dictionary latest = dictionaryRepository.findFirstByOrderByVersionDesc();
+		int version = latest == null ? 1 : latest.getVersion() + 1;
+		byte[] bytes = new DictionaryTrainer(dictionarySize).train(corpus);
+		Dictionary dictionary = dictionaryRepository.save(new Dictionary(version, bytes));
+		compressor.add(version, bytes);
+		return dictionary;
+	}
+
+	public int recompress(Long pageId) {
+		Page page = pageRepository.findById(pageId).orElse(null);
+		if (page == null) {
+			return 0;
+		}
+
+		int count = pageRepository.writeContent(page.getId(), page.getContent());
+		for (History history : historyRepository.findByPageIdOrderByEventAsc(pageId)) {
+			count += historyRepository.writeContent(history.getId(), history.getContent(), history.getSnapshotContent());
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,49 @@
+package sanko.kiwi.job;
+
+import java.util.List;
+
+import org.springframework.stereotype.Component;
+import org.springframework.boot.*; //ApplicationRunner, ApplicationArguments
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import lombok.extern.slf4j.Slf4j;
+
+import sanko.kiwi.domain.history.*; //History, HistoryRepository
+import sanko.kiwi.service.HistoryService;
+
+//renders stored diffs for historys written before diffs were stored, run once with kiwi.job.diff=true
+@Slf4j
+@ConditionalOnProperty(name = "kiwi.job.diff", havingValue = "true")
+@Component
+public class DiffJob implements ApplicationRunner {
+
+	private final PageBatch pageBatch;
+	private final HistoryRepository historyRepository;
+	private final HistoryService historyService;
+
+	public DiffJob(PageBatch pageBatch, HistoryRepository historyRepository, HistoryService historyService) {
+		this.pageBatch = pageBatch;
+		this.historyRepository = historyRepository;
+		this.historyService = historyService;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		int count = pageBatch.run("diff", this::backfill);
+		log.info("diff job rendered {} diffs", count);
+	}
+
+	public int backfill(Long pageId) {
+		int count = 0;
+
+		List<History> historys = historyRepository.findByPageIdOrderByEventAsc(pageId);
+		for (History history : historys) {
+			if (!history.isDiffRendered()) {
+				historyService.renderDiff(history);
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+}
@@ -0,0 +1,85 @@
+package sanko.kiwi.job;
+
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import org.springframework.stereotype.Component;
+import org.springframework.data.domain.*; //PageRequest, Sort
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import lombok.extern.slf4j.Slf4j;
+
+import sanko.kiwi.domain.page.*; //PageRepository, PageId, PageTitle
+import sanko.kiwi.lock.LockManager;
+
+//walks every page in id order for the jobs, each page in its own transaction so a long run holds no lock for long
+//the server keeps serving edits meanwhile, so each page is worked on holding the stripe its edits take in WikiService.commit
+@Slf4j
+@Component
+public class PageBatch {
+
+	private static final int BATCH = 100;
+
+	//tries at a page's stripes, each waiting kiwi.lock.wait, before the page is left for the next run
+	private static final int ATTEMPTS = 3;
+
+	private final PageRepository pageRepository;
+	private final LockManager lockManager;
+	private final TransactionTemplate transactionTemplate;
+
+	public PageBatch(PageRepository pageRepository, LockManager lockManager, PlatformTransactionManager transactionManager) {
+		this.pageRepository = pageRepository;
+		this.lockManager = lockManager;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	//returns the sum of what work returned for each page
+	public int run(String job, ToIntFunction<Long> work) {
+		int count = 0;
+		int pages = 0;
+		for (int index = 0; ; index++) {
+			List<PageId> ids = pageRepository.findIdBy(PageRequest.of(index, BATCH, Sort.by("id")));
+			if (ids.isEmpty()) {
+				break;
+			}
+			for (PageId id : ids) {
+				count += locked(id.getId(), work);
+			}
+			pages += ids.size();
+			log.info("{} job went through {} pages", job, pages);
+		}
+		return count;
+	}
+
+	//a page whose stripe stays busy through every attempt is skipped and logged, the same timeout an edit turns into an error
+	//a page renamed before its stripe was taken is read again under its new title, a deleted one is skipped
+	private int locked(Long id, ToIntFunction<Long> work) {
+		for (int attempt = 1; ; attempt++) {
+			PageTitle page = pageRepository.findTitleById(id);
+			if (page == null) {
+				return 0;
+			}
+
+			int[] stripes = lockManager.stripes(page.getTitle());
+			if (!lockManager.acquire(stripes)) {
+				if (attempt < ATTEMPTS) {
+					continue;
+				}
+				log.warn("page {} skipped, its lock stayed busy through {} attempts", id, ATTEMPTS);
+				return 0;
+			}
+			try {
+				PageTitle current = pageRepository.findTitleById(id);
+				if (current == null) {
+					return 0;
+				}
+				if (current.getTitle().equals(page.getTitle())) {
+					return transactionTemplate.execute(status -> work.applyAsInt(id));
+				}
+			} finally {
+				lockManager.release(stripes);
+			}
+		}
+	}
+
+}
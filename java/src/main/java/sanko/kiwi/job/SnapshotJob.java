@@ -0,0 +1,51 @@
+package sanko.kiwi.job;
+
+import java.util.List;
+
+import org.springframework.stereotype.Component;
+import org.springframework.boot.*; //ApplicationRunner, ApplicationArguments
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import lombok.extern.slf4j.Slf4j;
+
+import sanko.kiwi.domain.history.*; //History, HistoryRepository, Revision
+import sanko.kiwi.service.HistoryService;
+
+//backfills snapshots for historys written before snapshots existed, run once with kiwi.job.snapshot=true
+@Slf4j
+@ConditionalOnProperty(name = "kiwi.job.snapshot", havingValue = "true")
+@Component
+public class SnapshotJob implements ApplicationRunner {
+
+	private final PageBatch pageBatch;
+	private final HistoryRepository historyRepository;
+	private final HistoryService historyService;
+
+	public SnapshotJob(PageBatch pageBatch, HistoryRepository historyRepository, HistoryService historyService) {
+		this.pageBatch = pageBatch;
+		this.historyRepository = historyRepository;
+		this.historyService = historyService;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		int count = pageBatch.run("snapshot", this::backfill);
+		log.info("snapshot job added {} snapshots", count);
+	}
+
+	public int backfill(Long pageId) {
+		int count = 0;
+
+		List<History> historys = historyRepository.findByPageIdOrderByEventAsc(pageId);
+		List<Revision> revisions = historyService.replay(historys);
+		for (int i = 0; i < historys.size(); i++) {
+			History history = historys.get(i);
+			if (!history.isSnapshot() && historyService.isSnapshot(history.getEvent())) {
+				history.snapshot(revisions.get(i).getTitle(), revisions.get(i).getContent());
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+}
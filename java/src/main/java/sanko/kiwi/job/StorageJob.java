@@ -0,0 +1,50 @@
+package sanko.kiwi.job;
+
+import java.util.List;
+
+import org.springframework.stereotype.Component;
+import org.springframework.boot.*; //ApplicationRunner, ApplicationArguments
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import lombok.extern.slf4j.Slf4j;
+
+import sanko.kiwi.domain.page.PageRepository;
+import sanko.kiwi.domain.history.*; //History, HistoryRepository
+import sanko.kiwi.service.HistoryService;
+
+//converts historys to the storage set by kiwi.history.reverse, run once with kiwi.job.storage=true
+@Slf4j
+@ConditionalOnProperty(name = "kiwi.job.storage", havingValue = "true")
+@Component
+public class StorageJob implements ApplicationRunner {
+
+	private final PageBatch pageBatch;
+	private final PageRepository pageRepository;
+	private final HistoryRepository historyRepository;
+	private final HistoryService historyService;
+
+	public StorageJob(PageBatch pageBatch, PageRepository pageRepository, HistoryRepository historyRepository, HistoryService historyService) {
+		this.pageBatch = pageBatch;
+		this.pageRepository = pageRepository;
+		this.historyRepository = historyRepository;
+		this.historyService = historyService;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		int count = pageBatch.run("storage", pageId -> convert(pageId) ? 1 : 0);
+		log.info("storage job converted {} pages to {} storage", count, historyService.isReverse() ? "reverse" : "forward");
+	}
+
+	public boolean convert(Long pageId) {
+		List<History> historys = historyRepository.findByPageIdOrderByEventAsc(pageId);
+		boolean reverse = historyService.isReverse();
+		if (historys.isEmpty() || historys.get(historys.size() - 1).isReverse() == reverse) {
+			return false;
+		}
+
+		historyService.convert(historys, reverse);
+		pageRepository.store(pageId, reverse);
+		return true;
+	}
+
+}
@@ -0,0 +1,119 @@
+package sanko.kiwi.lock;
+
+import java.util.Arrays;
+import java.text.Normalizer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Value;
+
+//edits of one title wait for each other here instead of on the database write lock
+@Component
+public class LockManager {
+
+	private final ReentrantLock[] stripes;
+
+	//milliseconds an edit waits for its stripes before it gives up
+	private final long wait;
+
+	private final AtomicLong acquisitions = new AtomicLong();
+	private final AtomicLong contentions = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong waitNanos = new AtomicLong();
+
+	public LockManager(
+		@Value("${kiwi.lock.stripes:64}") int stripes,
+		@Value("${kiwi.lock.wait:5000}") long wait
+	) {
+		this.stripes = new ReentrantLock[stripes];
+		for (int i = 0; i < stripes; i++) {
+			this.stripes[i] = new ReentrantLock();
+		}
+		this.wait = wait;
+	}
+
+	//distinct stripes of the titles in ascending order, so every caller takes them in the same order
+	public int[] stripes(String... titles) {
+		return Arrays.stream(titles)
+			.mapToInt(this::stripe)
+			.distinct()
+			.sorted()
+			.toArray();
+	}
+
+	private int stripe(String title) {
+		int hash = Normalizer.normalize(title.strip(), Normalizer.Form.NFC).hashCode();
+		hash ^= hash >>> 16;
+		return Math.floorMod(hash, stripes.length);
+	}
+
+	//false once the wait runs out, with none of the stripes held
+	public boolean acquire(int[] indexes) {
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(wait);
+		boolean contended = false;
+		for (int i = 0; i < indexes.length; i++) {
+			ReentrantLock lock = stripes[indexes[i]];
+			boolean locked = lock.tryLock();
+			if (!locked) {
+				contended = true;
+				try {
+					locked = lock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (!locked) {
+				release(Arrays.copyOf(indexes, i));
+				timeouts.incrementAndGet();
+				waitNanos.addAndGet(System.nanoTime() - start);
+				return false;
+			}
+		}
+
+		acquisitions.incrementAndGet();
+		if (contended) {
+			contentions.incrementAndGet();
+			waitNanos.addAndGet(System.nanoTime() - start);
+		}
+		return true;
+	}
+
+	public void release(int[] indexes) {
+		for (int i = indexes.length - 1; i >= 0; i--) {
+			stripes[indexes[i]].unlock();
+		}
+	}
+
+	public int getStripes() {
+		return stripes.length;
+	}
+
+	public long getAcquisitions() {
+		return acquisitions.get();
+	}
+
+	public long getContentions() {
+		return contentions.get();
+	}
+
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	public long getWaitNanos() {
+		return waitNanos.get();
+	}
+
+	//edits waiting on a stripe right now, a snapshot
+	public int getWaiting() {
+		int waiting = 0;
+		for (ReentrantLock lock : stripes) {
+			waiting += lock.getQueueLength();
+		}
+		return waiting;
+	}
+
+}
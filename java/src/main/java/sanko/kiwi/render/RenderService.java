@@ -0,0 +1,176 @@
+package sanko.kiwi.render;
+
+import java.util.*; //List, ArrayList
+import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicLong;
+import java.nio.charset.StandardCharsets;
+import java.security.*; //MessageDigest, NoSuchAlgorithmException
+
+import org.springframework.stereotype.Service;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.*; //Autowired, Value
+import org.commonmark.Extension;
+import org.commonmark.node.*; //Node, SourceSpan, AbstractVisitor, LinkReferenceDefinition
+import org.commonmark.parser.*; //Parser, IncludeSourceSpans
+import org.commonmark.renderer.html.HtmlRenderer;
+
+import sanko.kiwi.cache.LruCache;
+
+@Service
+public class RenderService {
+
+	private static final Pattern LINK = Pattern.compile("\\[\\[([^()\\[\\]\\n\\r*_`/\\\\]*)\\]\\]");
+
+	//parser and renderer are thread safe, so every render shares them
+	private final Parser parser;
+	private final HtmlRenderer renderer;
+
+	//rendered top level blocks by content hash with their raw text, null when rendering whole documents
+	private final LruCache<String, Rendered> blocks;
+
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong nanos = new AtomicLong();
+
+	@Autowired
+	public RenderService(
+		ObjectProvider<Extension> extensions,
+		@Value("${kiwi.render.incremental:false}") boolean incremental,
+		@Value("${kiwi.render.block-cache:4000000}") long blockCache
+	) {
+		this(extensions.orderedStream().toList(), incremental, blockCache);
+	}
+
+	public RenderService(List<Extension> extensions) {
+		this(extensions, false, 0);
+	}
+
+	public RenderService(List<Extension> extensions, boolean incremental, long blockCache) {
+		this.parser = Parser.builder()
+			.extensions(extensions)
+			.includeSourceSpans(incremental ? IncludeSourceSpans.BLOCKS : IncludeSourceSpans.NONE)
+			.build();
+		this.renderer = HtmlRenderer.builder()
+			.extensions(extensions)
+			.build();
+		this.blocks = incremental ? new LruCache<>(blockCache, this::weigh) : null;
+	}
+
+	public Rendered render(String content) {
+		long start = System.nanoTime();
+
+		String linked = LINK.matcher(content).replaceAll("[$1](/wiki/$1)");
+		Node document = parser.parse(linked);
+		Rendered rendered;
+		if (blocks == null) {
+			rendered = renderNode(document);
+		} else {
+			rendered = renderBlocks(document, linked);
+		}
+
+		count.incrementAndGet();
+		nanos.addAndGet(System.nanoTime() - start);
+		return rendered;
+	}
+
+	private Rendered renderNode(Node node) {
+		String html = renderer.render(node);
+		String text = TextVisitor.text(node);
+		return new Rendered(html, text);
+	}
+
+	private Rendered renderBlock(Node block) {
+		return new Rendered(renderer.render(block), TextVisitor.raw(block));
+	}
+
+	//trimmed once put together, so the text is the same as a render of the whole document
+	private Rendered renderBlocks(Node document, String source) {
+		int[] lines = lineStarts(source);
+		String references = references(document);
+
+		StringBuilder html = new StringBuilder();
+		StringBuilder text = new StringBuilder();
+		for (Node block = document.getFirstChild(); block != null; block = block.getNext()) {
+			Rendered fragment;
+			List<SourceSpan> spans = block.getSourceSpans();
+			if (spans.isEmpty()) {
+				fragment = renderBlock(block);
+			} else {
+				int from = lines[spans.get(0).getLineIndex()];
+				int last = spans.get(spans.size() - 1).getLineIndex();
+				int to = last + 1 < lines.length ? lines[last + 1] : source.length();
+				String key = digest(references, source.substring(from, to));
+
+				fragment = blocks.get(key);
+				if (fragment == null) {
+					fragment = renderBlock(block);
+					blocks.put(key, fragment);
+				}
+			}
+
+			html.append(fragment.getHtml());
+			text.append(fragment.getText());
+		}
+
+		return new Rendered(html.toString(), text.toString().trim());
+	}
+
+	//same line endings as commonmark: \n, \r\n and \r
+	private int[] lineStarts(String source) {
+		List<Integer> starts = new ArrayList<>();
+		starts.add(0);
+		int length = source.length();
+		for (int i = 0; i < length; i++) {
+			char c = source.charAt(i);
+			if (c == '\r' && i + 1 < length && source.charAt(i + 1) == '\n') {
+				i++;
+			}
+			if (c == '\r' || c == '\n') {
+				starts.add(i + 1);
+			}
+		}
+		return starts.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	//link reference definitions change how other blocks render, so they are part of every block key
+	private String references(Node document) {
+		StringBuilder references = new StringBuilder();
+		document.accept(new AbstractVisitor() {
+			@Override
+			public void visit(LinkReferenceDefinition definition) {
+				references.append(definition.getLabel()).append('\u0000')
+					.append(definition.getDestination()).append('\u0000')
+					.append(definition.getTitle()).append('\u0000');
+			}
+		});
+		return references.toString();
+	}
+
+	private String digest(String references, String block) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(references.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(block.getBytes(StandardCharsets.UTF_8));
+			return Base64.getEncoder().encodeToString(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private long weigh(Rendered rendered) {
+		return rendered.getHtml().length() + rendered.getText().length();
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getNanos() {
+		return nanos.get();
+	}
+
+	public LruCache<String, Rendered> getBlocks() {
+		return blocks;
+	}
+
+}
@@ -0,0 +1,16 @@
+package sanko.kiwi.render;
+
+import lombok.Getter;
+
+@Getter
+public class Rendered {
+
+	private String html;
+	private String text;
+
+	public Rendered(String html, String text) {
+		this.html = html;
+		this.text = text;
+	}
+
+}
@@ -0,0 +1,154 @@
+package sanko.kiwi.render;
+
+import org.commonmark.node.*; //AbstractVisitor, Node, Text, Code, ...
+import org.jsoup.Jsoup;
+
+//plain text of a markdown tree, spaced the way jsoup's text() spaces the rendered html
+public class TextVisitor extends AbstractVisitor {
+
+	private final StringBuilder text = new StringBuilder();
+	private int pre = 0;
+
+	public static String text(Node node) {
+		return raw(node).trim();
+	}
+
+	//untrimmed, every block ends in a space, so the raw text of top level blocks put together is the raw text of their document
+	public static String raw(Node node) {
+		TextVisitor visitor = new TextVisitor();
+		node.accept(visitor);
+		return visitor.text.toString();
+	}
+
+	private void space() {
+		int length = text.length();
+		if (length > 0 && text.charAt(length - 1) != ' ') {
+			text.append(' ');
+		}
+	}
+
+	private void append(String literal) {
+		if (pre > 0) {
+			text.append(literal);
+			return;
+		}
+
+		boolean white = text.length() == 0 || text.charAt(text.length() - 1) == ' ';
+		int length = literal.length();
+		for (int i = 0; i < length; i++) {
+			char c = literal.charAt(i);
+			if (c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == '\u00a0') {
+				if (white) continue;
+				text.append(' ');
+				white = true;
+			} else if (c != '\u200b' && c != '\u00ad') {
+				text.append(c);
+				white = false;
+			}
+		}
+	}
+
+	private void block(Node node) {
+		space();
+		visitChildren(node);
+		space();
+	}
+
+	private void code(String literal) {
+		space();
+		pre++;
+		append(literal);
+		pre--;
+		space();
+	}
+
+	@Override
+	public void visit(Text node) {
+		append(node.getLiteral());
+	}
+
+	@Override
+	public void visit(Code node) {
+		append(node.getLiteral());
+	}
+
+	@Override
+	public void visit(SoftLineBreak node) {
+		append("\n");
+	}
+
+	@Override
+	public void visit(HardLineBreak node) {
+		space();
+	}
+
+	@Override
+	public void visit(Image node) {
+		//alt text is an attribute in html, not text
+	}
+
+	@Override
+	public void visit(HtmlInline node) {
+		if (node.getLiteral().matches("(?i)<br\\s*/?>")) {
+			space();
+		}
+	}
+
+	@Override
+	public void visit(HtmlBlock node) {
+		space();
+		append(Jsoup.parse(node.getLiteral()).text());
+		space();
+	}
+
+	@Override
+	public void visit(FencedCodeBlock node) {
+		code(node.getLiteral());
+	}
+
+	@Override
+	public void visit(IndentedCodeBlock node) {
+		code(node.getLiteral());
+	}
+
+	@Override
+	public void visit(Paragraph node) {
+		block(node);
+	}
+
+	@Override
+	public void visit(Heading node) {
+		block(node);
+	}
+
+	@Override
+	public void visit(BlockQuote node) {
+		block(node);
+	}
+
+	@Override
+	public void visit(BulletList node) {
+		block(node);
+	}
+
+	@Override
+	public void visit(OrderedList node) {
+		block(node);
+	}
+
+	@Override
+	public void visit(ListItem node) {
+		block(node);
+	}
+
+	@Override
+	public void visit(ThematicBreak node) {
+		space();
+	}
+
+	@Override
+	public void visit(CustomBlock node) {
+		block(node);
+	}
+
+}
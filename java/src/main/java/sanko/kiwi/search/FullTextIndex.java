@@ -0,0 +1,119 @@
+package sanko.kiwi.search;
+
+import java.util.List;
+import java.util.ArrayList;
+
+import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.*; //JdbcTemplate, RowCallbackHandler
+import org.springframework.dao.DataAccessException;
+import org.springframework.context.event.*; //EventListener, ContextRefreshedEvent
+import lombok.extern.slf4j.Slf4j;
+
+//fts5 table over the title, text and character pairs of pages, kept in step with pages by triggers
+//made once the schema is up, outside any transaction, and a sqlite built without fts5 leaves search on like
+//unicode61 keeps a hangul, han or kana run whole, so those are searched in the grams column the tokenizer fills
+@Slf4j
+@Component
+public class FullTextIndex {
+
+	private static final String[] SCHEMA = {
+		"create virtual table if not exists pages_fts using fts5(title, text, grams, content='pages', content_rowid='id')",
+		"create trigger if not exists pages_fts_insert after insert on pages begin"
+			+ " insert into pages_fts(rowid, title, text, grams) values (new.id, new.title, new.text, new.grams);"
+			+ " end",
+		"create trigger if not exists pages_fts_delete after delete on pages begin"
+			+ " insert into pages_fts(pages_fts, rowid, title, text, grams) values ('delete', old.id, old.title, old.text, old.grams);"
+			+ " end",
+		"create trigger if not exists pages_fts_update after update of title, text, grams on pages"
+			+ " when old.title is not new.title or old.text is not new.text or old.grams is not new.grams begin"
+			+ " insert into pages_fts(pages_fts, rowid, title, text, grams) values ('delete', old.id, old.title, old.text, old.grams);"
+			+ " insert into pages_fts(rowid, title, text, grams) values (new.id, new.title, new.text, new.grams);"
+			+ " end"
+	};
+
+	private static final int BATCH = 1000;
+
+	private final JdbcTemplate jdbcTemplate;
+	private final boolean enabled;
+
+	private volatile boolean available;
+
+	public FullTextIndex(JdbcTemplate jdbcTemplate, @Value("${kiwi.search.fts:true}") boolean enabled) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.enabled = enabled;
+	}
+
+	public boolean isAvailable() {
+		return available;
+	}
+
+	@EventListener(ContextRefreshedEvent.class)
+	public synchronized void create() {
+		if (enabled && !available) {
+			available = build();
+		}
+	}
+
+	private boolean build() {
+		try {
+			Integer tables = jdbcTemplate.queryForObject("select count(*) from sqlite_master where name = 'pages_fts'", Integer.class);
+			if (tables == 0) {
+				fill();
+			}
+			for (String statement : SCHEMA) {
+				jdbcTemplate.execute(statement);
+			}
+			//pages written before the triggers existed
+			if (tables == 0) {
+				jdbcTemplate.execute("insert into pages_fts(pages_fts) values ('rebuild')");
+				log.info("full text index built");
+			}
+			return true;
+		} catch (DataAccessException e) {
+			log.warn("full text index is not available, search falls back to like", e);
+			return false;
+		}
+	}
+
+	//grams of pages written before the index, the triggers are not made yet so the rebuild after indexes them
+	private void fill() {
+		List<Object[]> grams = new ArrayList<>();
+		jdbcTemplate.query("select id, title, text from pages where grams is null and text is not null", (RowCallbackHandler) row -> {
+			grams.add(new Object[] {Tokenizer.grams(row.getString("title"), row.getString("text")), row.getLong("id")});
+			if (grams.size() == BATCH) {
+				jdbcTemplate.batchUpdate("update pages set grams = ? where id = ?", grams);
+				grams.clear();
+			}
+		});
+		jdbcTemplate.batchUpdate("update pages set grams = ? where id = ?", grams);
+	}
+
+	//every word as a quoted prefix, so operators typed in the search box are searched for, null when there is no word
+	//a word with hangul, han or kana becomes the phrase of its pairs in the grams column, so a word inside a run is found
+	public static String match(String search) {
+		List<String> terms = new ArrayList<>();
+		for (String word : search.split("[\\s\\p{Punct}]+")) {
+			if (word.isEmpty()) {
+				continue;
+			}
+			if (!Tokenizer.hasPaired(word)) {
+				terms.add("\"" + word + "\"*");
+				continue;
+			}
+			List<String> pairs = new ArrayList<>();
+			for (String token : Tokenizer.tokens(word)) {
+				if (Tokenizer.hasPaired(token)) {
+					pairs.add(token);
+				} else {
+					terms.add("\"" + token + "\"*");
+				}
+			}
+			//a lone character is kept whole only in a run of one, elsewhere it starts a pair
+			boolean single = pairs.size() == 1 && pairs.get(0).codePointCount(0, pairs.get(0).length()) == 1;
+			terms.add("grams : \"" + String.join(" ", pairs) + "\"" + (single ? "*" : ""));
+		}
+		return terms.isEmpty() ? null : String.join(" ", terms);
+	}
+
+}
@@ -0,0 +1,118 @@
+package sanko.kiwi.search;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Arrays;
+
+//cuts page text to a window around its best match, with the matched parts between MARK and UNMARK
+public final class Highlighter {
+
+	//control characters page text does not hold, the search page shows what is between them highlighted
+	public static final char MARK = '\u0002';
+	public static final char UNMARK = '\u0003';
+	public static final String ELLIPSIS = "…";
+
+	//characters kept before the first match of a window
+	public static final int LEAD = 30;
+
+	private Highlighter() {
+
+	}
+
+	//the window of size characters holding the most tokens of the query, a window from the start when none is found
+	public static String around(String text, String query, int size) {
+		if (text == null) {
+			return null;
+		}
+
+		Set<String> terms = new HashSet<>();
+		for (List<String[]> clauses : InvertedIndex.parse(query)) {
+			for (String[] clause : clauses) {
+				terms.addAll(Arrays.asList(clause));
+			}
+		}
+		List<int[]> matches = new ArrayList<>();
+		Tokenizer.scan(text, (start, end) -> {
+			if (terms.contains(Tokenizer.normalize(text.substring(start, end)))) {
+				matches.add(new int[] {start, end});
+			}
+		});
+
+		int from = 0;
+		int best = 0;
+		int j = 0;
+		for (int i = 0; i < matches.size(); i++) {
+			int start = Math.max(0, matches.get(i)[0] - LEAD);
+			while (j < matches.size() && matches.get(j)[1] <= start + size) {
+				j++;
+			}
+			if (j - i > best) {
+				best = j - i;
+				from = start;
+			}
+		}
+		return window(text, from, Math.min(text.length(), from + size), matches);
+	}
+
+	//a window cut by the database, starting at start of the text and one character longer than shown when the text goes on
+	//search is marked wherever it occurs, ignoring case like like does
+	public static String mark(String window, int start, String search, int size) {
+		if (window == null) {
+			return null;
+		}
+
+		List<int[]> matches = new ArrayList<>();
+		for (int i = 0; i + search.length() <= window.length(); i++) {
+			if (window.regionMatches(true, i, search, 0, search.length())) {
+				matches.add(new int[] {i, i + search.length()});
+				i += search.length() - 1;
+			}
+		}
+		String snippet = window(window, 0, Math.min(window.length(), size), matches);
+		return start > 1 ? ELLIPSIS + snippet : snippet;
+	}
+
+	//matches are in order, overlapping ones like the pairs of one korean word make one mark
+	//spaces next to an ellipsis are dropped
+	private static String window(String text, int from, int to, List<int[]> matches) {
+		while (from > 0 && from < to && Character.isWhitespace(text.charAt(from))) {
+			from++;
+		}
+		while (to < text.length() && to > from && Character.isWhitespace(text.charAt(to - 1))) {
+			to--;
+		}
+		if (from > 0 && Character.isLowSurrogate(text.charAt(from))) {
+			from--;
+		}
+		if (to < text.length() && Character.isHighSurrogate(text.charAt(to - 1))) {
+			to--;
+		}
+
+		StringBuilder snippet = new StringBuilder();
+		if (from > 0) {
+			snippet.append(ELLIPSIS);
+		}
+		int at = from;
+		int i = 0;
+		while (i < matches.size()) {
+			int start = Math.max(matches.get(i)[0], at);
+			int end = matches.get(i)[1];
+			while (++i < matches.size() && matches.get(i)[0] <= end) {
+				end = Math.max(end, matches.get(i)[1]);
+			}
+			end = Math.min(end, to);
+			if (start < end) {
+				snippet.append(text, at, start).append(MARK).append(text, start, end).append(UNMARK);
+				at = end;
+			}
+		}
+		snippet.append(text, at, to);
+		if (to < text.length()) {
+			snippet.append(ELLIPSIS);
+		}
+		return snippet.toString();
+	}
+
+}
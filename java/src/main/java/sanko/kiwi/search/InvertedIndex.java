@@ -0,0 +1,697 @@
+package sanko.kiwi.search;
+
+import java.util.List;
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.regex.*; //Pattern, Matcher
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.*; //JdbcTemplate, RowCallbackHandler
+import org.springframework.dao.DataAccessException;
+import org.springframework.context.event.*; //EventListener, ContextRefreshedEvent
+import org.springframework.transaction.support.*; //TransactionSynchronization, TransactionSynchronizationManager
+import lombok.extern.slf4j.Slf4j;
+
+//words of every page's title and text held in memory, so search needs neither fts5 nor a round trip to the database
+//built from pages once the context is up and kept in step by each committed edit
+@Slf4j
+@Component
+public class InvertedIndex {
+
+	//text positions start past any title, titles are at most 50 characters and so 50 tokens, so a phrase never runs from one into the other
+	static final int TEXT = 64;
+
+	private static final Pattern CLAUSE = Pattern.compile("\"([^\"]*)\"?|(\\S+)");
+
+	private final JdbcTemplate jdbcTemplate;
+	private final boolean enabled;
+	private final double titleWeight;
+
+	//searches share the read lock, an update swaps in new lists under the write lock
+	//terms are kept in order, so a word is looked up as a prefix the way fts5 matches "word"*
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final NavigableMap<String, Term> terms = new TreeMap<>();
+	private final Map<Integer, Document> documents = new HashMap<>();
+
+	private volatile boolean available;
+	private volatile long buildNanos;
+
+	private final AtomicLong updates = new AtomicLong();
+	private final AtomicLong searches = new AtomicLong();
+	private final AtomicLong searchNanos = new AtomicLong();
+
+	public InvertedIndex(
+		JdbcTemplate jdbcTemplate,
+		@Value("${kiwi.search.memory:false}") boolean enabled,
+		@Value("${kiwi.search.title-weight:10.0}") double titleWeight
+	) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.enabled = enabled;
+		this.titleWeight = titleWeight;
+	}
+
+	private static class Term {
+
+		private final String word;
+		private int[] list = new int[0];
+
+		private Term(String word) {
+			this.word = word;
+		}
+
+	}
+
+	//the title is kept for text rendered after its edit, the text itself is read back only for the results shown
+	private static class Document {
+
+		private final String title;
+
+		//terms the document is listed under, to take it out of them when it changes
+		private final Term[] terms;
+
+		private Document(String title, Term[] terms) {
+			this.title = title;
+			this.terms = terms;
+		}
+
+	}
+
+	public boolean isAvailable() {
+		return available;
+	}
+
+	@EventListener(ContextRefreshedEvent.class)
+	public void create() {
+		if (enabled && !available) {
+			available = build();
+		}
+	}
+
+	//pages come in id order, so every list is appended to and never spliced
+	private boolean build() {
+		lock.writeLock().lock();
+		try {
+			long start = System.nanoTime();
+			terms.clear();
+			documents.clear();
+			Map<String, Appender> appenders = new HashMap<>();
+			jdbcTemplate.query("select id, title, text from pages order by id", (RowCallbackHandler) row -> {
+				int doc = (int) row.getLong("id");
+				String title = row.getString("title");
+				String text = row.getString("text");
+				Map<String, int[]> positions = positions(title, text);
+				Term[] listed = new Term[positions.size()];
+				int i = 0;
+				for (Map.Entry<String, int[]> entry : positions.entrySet()) {
+					Appender appender = appenders.computeIfAbsent(entry.getKey(), Appender::new);
+					appender.append(doc, entry.getValue());
+					listed[i++] = appender.term;
+				}
+				documents.put(doc, new Document(title, listed));
+			});
+			for (Appender appender : appenders.values()) {
+				appender.term.list = Arrays.copyOf(appender.list, appender.size);
+				terms.put(appender.term.word, appender.term);
+			}
+			buildNanos = System.nanoTime() - start;
+			log.info("inverted index built over {} pages and {} terms in {} ms", documents.size(), terms.size(), buildNanos / 1000000);
+			return true;
+		} catch (DataAccessException e) {
+			log.warn("inverted index could not be built, search goes to the database", e);
+			return false;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private static class Appender {
+
+		private final Term term;
+		private int[] list = new int[8];
+		private int size;
+		private int last;
+
+		private Appender(String word) {
+			this.term = new Term(word);
+		}
+
+		private void append(int doc, int[] positions) {
+			if (size + 2 + positions.length > list.length) {
+				list = Arrays.copyOf(list, Math.max(list.length * 2, size + 2 + positions.length));
+			}
+			list[size++] = doc - last;
+			list[size++] = positions.length;
+			int position = 0;
+			for (int p : positions) {
+				list[size++] = p - position;
+				position = p;
+			}
+			last = doc;
+		}
+
+	}
+
+	//an edit shows up in search once it commits, a rolled back one never does
+	public void updateAfterCommit(Long id, String title, String text) {
+		if (!enabled) {
+			return;
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					update(id, title, text);
+				}
+			});
+		} else {
+			update(id, title, text);
+		}
+	}
+
+	//a null title keeps the one indexed, for text rendered after its edit
+	//a null text keeps the one indexed, for an edit whose text is rendered later, so either may land first
+	public void update(Long id, String title, String text) {
+		int doc = id.intValue();
+		lock.writeLock().lock();
+		try {
+			Map<String, int[]> kept = text == null ? textPositions(doc) : null;
+			Document document = remove(doc);
+			if (title == null) {
+				if (document == null) {
+					return;
+				}
+				title = document.title;
+			}
+			Map<String, int[]> positions = positions(title, text);
+			if (kept != null) {
+				kept.forEach((term, list) -> positions.merge(term, list, InvertedIndex::concat));
+			}
+			add(doc, title, positions);
+			updates.incrementAndGet();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private Document remove(int doc) {
+		Document document = documents.remove(doc);
+		if (document != null) {
+			for (Term term : document.terms) {
+				term.list = PostingList.remove(term.list, doc);
+				if (term.list == null) {
+					terms.remove(term.word);
+				}
+			}
+		}
+		return document;
+	}
+
+	//positions past TEXT of every term the document is listed under
+	private Map<String, int[]> textPositions(int doc) {
+		Map<String, int[]> positions = new HashMap<>();
+		Document document = documents.get(doc);
+		if (document == null) {
+			return positions;
+		}
+		for (Term term : document.terms) {
+			PostingList.Cursor cursor = PostingList.cursor(term.list);
+			if (cursor.advance(doc) && cursor.doc() == doc) {
+				int[] all = cursor.positions();
+				int from = cursor.countBelow(TEXT);
+				if (from < all.length) {
+					positions.put(term.word, Arrays.copyOfRange(all, from, all.length));
+				}
+			}
+		}
+		return positions;
+	}
+
+	//title positions come first and are all below TEXT, so the result stays in order
+	private static int[] concat(int[] first, int[] second) {
+		int[] list = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, list, first.length, second.length);
+		return list;
+	}
+
+	private void add(int doc, String title, Map<String, int[]> positions) {
+		Term[] listed = new Term[positions.size()];
+		int i = 0;
+		for (Map.Entry<String, int[]> entry : positions.entrySet()) {
+			Term term = terms.computeIfAbsent(entry.getKey(), Term::new);
+			term.list = PostingList.put(term.list, doc, entry.getValue());
+			listed[i++] = term;
+		}
+		documents.put(doc, new Document(title, listed));
+	}
+
+	//positions of every term, the title's from 0 and the text's from TEXT
+	private static Map<String, int[]> positions(String title, String text) {
+		Map<String, int[]> positions = new HashMap<>();
+		add(positions, title, 0, TEXT);
+		add(positions, text, TEXT, Integer.MAX_VALUE);
+		positions.replaceAll((term, list) -> Arrays.copyOfRange(list, 1, list[0] + 1));
+		return positions;
+	}
+
+	//the first slot of each list counts the positions in it
+	private static void add(Map<String, int[]> positions, String string, int from, int to) {
+		if (string == null) {
+			return;
+		}
+		int position = from;
+		for (String token : Tokenizer.tokens(string)) {
+			if (position == to) {
+				return;
+			}
+			int[] list = positions.get(token);
+			if (list == null) {
+				list = new int[4];
+			} else if (list[0] + 1 == list.length) {
+				list = Arrays.copyOf(list, list.length * 2);
+			}
+			list[++list[0]] = position++;
+			positions.put(token, list);
+		}
+	}
+
+	//words are and-ed, OR separates alternatives and quotes or joined words like kiwi-wiki make a phrase, as do the pairs of one korean word
+	//a word on its own is matched as a prefix, the words of a phrase are matched whole
+	//a list of alternatives, each a list of clauses of one or more words, empty when there is no word
+	static List<List<String[]>> parse(String query) {
+		List<List<String[]>> alternatives = new ArrayList<>();
+		List<String[]> clauses = new ArrayList<>();
+		Matcher matcher = CLAUSE.matcher(query);
+		while (matcher.find()) {
+			if ("OR".equals(matcher.group(2))) {
+				if (!clauses.isEmpty()) {
+					alternatives.add(clauses);
+					clauses = new ArrayList<>();
+				}
+				continue;
+			}
+			String clause = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+			List<String> words = Tokenizer.tokens(clause);
+			if (!words.isEmpty()) {
+				clauses.add(words.toArray(new String[0]));
+			}
+		}
+		if (!clauses.isEmpty()) {
+			alternatives.add(clauses);
+		}
+		return alternatives;
+	}
+
+	//ids of one page of the matches ranked by tf-idf with title matches counting titleWeight times, null when the query has no word
+	//ranking needs every match scored, but only the best offset + limit of them are kept on the way
+	public List<Long> search(String query, int offset, int limit) {
+		List<List<String[]>> alternatives = parse(query);
+		if (alternatives.isEmpty()) {
+			return null;
+		}
+
+		long start = System.nanoTime();
+		lock.readLock().lock();
+		try {
+			Walker walker = walker(alternatives);
+			Comparator<Hit> order = Comparator.comparingDouble((Hit hit) -> -hit.score).thenComparingInt(hit -> hit.doc);
+			PriorityQueue<Hit> best = new PriorityQueue<>(order.reversed());
+			for (int doc = walker.next(0); doc >= 0; doc = walker.next(doc + 1)) {
+				best.add(new Hit(doc, walker.score()));
+				if (best.size() > offset + limit) {
+					best.poll();
+				}
+			}
+			Hit[] ranked = best.toArray(new Hit[0]);
+			Arrays.sort(ranked, order);
+
+			List<Long> ids = new ArrayList<>();
+			for (int i = offset; i < ranked.length; i++) {
+				ids.add((long) ranked[i].doc);
+			}
+			return ids;
+		} finally {
+			lock.readLock().unlock();
+			searches.incrementAndGet();
+			searchNanos.addAndGet(System.nanoTime() - start);
+		}
+	}
+
+	//matches up to limit, null when the query has no word
+	//documents are matched one at a time and the walk stops at limit, so a common word costs no more than a rare one
+	public Integer count(String query, int limit) {
+		List<List<String[]>> alternatives = parse(query);
+		if (alternatives.isEmpty()) {
+			return null;
+		}
+
+		lock.readLock().lock();
+		try {
+			Walker walker = walker(alternatives);
+			int count = 0;
+			for (int doc = walker.next(0); doc >= 0 && count < limit; doc = walker.next(doc + 1)) {
+				count++;
+			}
+			return count;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private static class Hit {
+
+		private final int doc;
+		private final double score;
+
+		private Hit(int doc, double score) {
+			this.doc = doc;
+			this.score = score;
+		}
+
+	}
+
+	//finds matching documents in ascending order, each call asking for a target no lower than the one before
+	//search and count both walk these, so a query means the same to either
+	private interface Walker {
+
+		//the first matching document at or past target, -1 when there is none
+		int next(int target);
+
+		//score of the document last returned
+		double score();
+
+	}
+
+	private static final Walker NONE = new Walker() {
+
+		@Override
+		public int next(int target) {
+			return -1;
+		}
+
+		@Override
+		public double score() {
+			return 0;
+		}
+
+	};
+
+	private Walker walker(List<List<String[]>> alternatives) {
+		List<Walker> ors = new ArrayList<>();
+		for (List<String[]> clauses : alternatives) {
+			List<Walker> ands = new ArrayList<>();
+			for (String[] clause : clauses) {
+				ands.add(clause.length == 1 ? termWalker(clause[0]) : phraseWalker(clause));
+			}
+			ors.add(new And(ands));
+		}
+		return new Or(ors);
+	}
+
+	//terms starting with word, a lone hangul, han or kana character then finds the pairs it starts as well as a run of one
+	private Collection<Term> prefixed(String word) {
+		return terms.subMap(word, true, word + Character.MAX_VALUE, false).values();
+	}
+
+	//each term the word starts scores on its own, a document holding several adds them up
+	private Walker termWalker(String word) {
+		List<Walker> walkers = new ArrayList<>();
+		for (Term term : prefixed(word)) {
+			walkers.add(new Single(PostingList.cursor(term.list), idf(term.list)));
+		}
+		return new Or(walkers);
+	}
+
+	private Walker phraseWalker(String[] words) {
+		PostingList.Cursor[] cursors = new PostingList.Cursor[words.length];
+		double idf = 0;
+		for (int i = 0; i < words.length; i++) {
+			Term term = terms.get(words[i]);
+			if (term == null) {
+				return NONE;
+			}
+			cursors[i] = PostingList.cursor(term.list);
+			idf += idf(term.list);
+		}
+		return new Phrase(cursors, idf);
+	}
+
+	private class Single implements Walker {
+
+		private final PostingList.Cursor cursor;
+		private final double idf;
+
+		private Single(PostingList.Cursor cursor, double idf) {
+			this.cursor = cursor;
+			this.idf = idf;
+		}
+
+		@Override
+		public int next(int target) {
+			return cursor.advance(target) ? cursor.doc() : -1;
+		}
+
+		@Override
+		public double score() {
+			return weight(idf, cursor.countBelow(TEXT), cursor.count());
+		}
+
+	}
+
+	private static class And implements Walker {
+
+		private final List<Walker> walkers;
+		private double score;
+
+		private And(List<Walker> walkers) {
+			this.walkers = walkers;
+		}
+
+		@Override
+		public int next(int target) {
+			int doc = target;
+			boolean aligned = false;
+			while (!aligned) {
+				aligned = true;
+				score = 0;
+				for (Walker walker : walkers) {
+					int found = walker.next(doc);
+					if (found < 0) {
+						return -1;
+					}
+					if (found > doc) {
+						doc = found;
+						aligned = false;
+					}
+					score += walker.score();
+				}
+			}
+			return doc;
+		}
+
+		@Override
+		public double score() {
+			return score;
+		}
+
+	}
+
+	//a k-way merge on a heap by current document, so a short prefix over many terms costs a log of them per step
+	private static class Or implements Walker {
+
+		private final PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparingInt((Head head) -> head.doc));
+		private double score;
+
+		//a walker with the document it last returned and its score there, -1 before it is first asked
+		private static class Head {
+
+			private final Walker walker;
+			private int doc = -1;
+			private double score;
+
+			private Head(Walker walker) {
+				this.walker = walker;
+			}
+
+		}
+
+		private Or(List<Walker> walkers) {
+			for (Walker walker : walkers) {
+				heads.add(new Head(walker));
+			}
+		}
+
+		@Override
+		public int next(int target) {
+			while (!heads.isEmpty() && heads.peek().doc < target) {
+				Head head = heads.poll();
+				head.doc = head.walker.next(target);
+				if (head.doc >= 0) {
+					head.score = head.walker.score();
+					heads.add(head);
+				}
+			}
+			if (heads.isEmpty()) {
+				return -1;
+			}
+
+			int doc = heads.peek().doc;
+			score = 0;
+			List<Head> matched = new ArrayList<>();
+			while (!heads.isEmpty() && heads.peek().doc == doc) {
+				Head head = heads.poll();
+				score += head.score;
+				matched.add(head);
+			}
+			heads.addAll(matched);
+			return doc;
+		}
+
+		@Override
+		public double score() {
+			return score;
+		}
+
+	}
+
+	//documents holding every word, walked together, then checked for the words at consecutive positions
+	private class Phrase implements Walker {
+
+		private final PostingList.Cursor[] cursors;
+		private final double idf;
+
+		//occurrences in the document last returned, and how many of them are in the title
+		private int count;
+		private int title;
+
+		private Phrase(PostingList.Cursor[] cursors, double idf) {
+			this.cursors = cursors;
+			this.idf = idf;
+		}
+
+		@Override
+		public int next(int target) {
+			int doc = target;
+			while (true) {
+				boolean aligned = false;
+				while (!aligned) {
+					aligned = true;
+					for (PostingList.Cursor cursor : cursors) {
+						if (!cursor.advance(doc)) {
+							return -1;
+						}
+						if (cursor.doc() > doc) {
+							doc = cursor.doc();
+							aligned = false;
+						}
+					}
+				}
+
+				int[][] positions = new int[cursors.length][];
+				for (int i = 0; i < cursors.length; i++) {
+					positions[i] = cursors[i].positions();
+				}
+				title = 0;
+				count = 0;
+				for (int position : positions[0]) {
+					if (follows(positions, position)) {
+						count++;
+						if (position < TEXT) {
+							title++;
+						}
+					}
+				}
+				if (count > 0) {
+					return doc;
+				}
+				doc++;
+			}
+		}
+
+		@Override
+		public double score() {
+			return weight(idf, title, count);
+		}
+
+	}
+
+	private double idf(int[] list) {
+		return Math.log(1 + (double) documents.size() / PostingList.documents(list));
+	}
+
+	private double weight(double idf, int title, int count) {
+		return idf * (title * titleWeight + count - title);
+	}
+
+	private static boolean follows(int[][] positions, int position) {
+		for (int i = 1; i < positions.length; i++) {
+			if (Arrays.binarySearch(positions[i], position + i) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getDocuments() {
+		lock.readLock().lock();
+		try {
+			return documents.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int getTerms() {
+		lock.readLock().lock();
+		try {
+			return terms.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	//an estimate of the heap held, at 16 bytes an object header, 4 a reference, 32 a hash map entry and 40 a tree map entry
+	public long getBytes() {
+		lock.readLock().lock();
+		try {
+			long bytes = 0;
+			for (Term term : terms.values()) {
+				//entry, term, word and its bytes, list
+				bytes += 40 + 24 + 24 + 16 + term.word.length() + 16 + 4L * term.list.length;
+			}
+			for (Document document : documents.values()) {
+				//entry, boxed id, document, title and its bytes, term references
+				bytes += 32 + 16 + 16 + 40 + document.title.length() + 16 + 4L * document.terms.length;
+			}
+			return bytes;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public long getBuildNanos() {
+		return buildNanos;
+	}
+
+	public long getUpdates() {
+		return updates.get();
+	}
+
+	public long getSearches() {
+		return searches.get();
+	}
+
+	public long getSearchNanos() {
+		return searchNanos.get();
+	}
+
+}
@@ -0,0 +1,151 @@
+package sanko.kiwi.search;
+
+import java.util.Arrays;
+
+//documents holding one term, as a plain int[] of entries in ascending document order
+//an entry is the document's distance from the one before it, its number of positions, then each position's distance from the one before
+//lists are never changed in place, put and remove return a new one so readers can keep the old
+public final class PostingList {
+
+	private PostingList() {
+
+	}
+
+	public static int[] put(int[] list, int doc, int[] positions) {
+		int offset = 0;
+		int previous = 0;
+		int current = 0;
+		while (offset < list.length) {
+			current = previous + list[offset];
+			if (current >= doc) {
+				break;
+			}
+			previous = current;
+			offset += 2 + list[offset + 1];
+		}
+
+		boolean replace = offset < list.length && current == doc;
+		int end = replace ? offset + 2 + list[offset + 1] : offset;
+		int[] result = new int[list.length - (end - offset) + 2 + positions.length];
+		System.arraycopy(list, 0, result, 0, offset);
+		int at = offset;
+		result[at++] = doc - previous;
+		result[at++] = positions.length;
+		int position = 0;
+		for (int p : positions) {
+			result[at++] = p - position;
+			position = p;
+		}
+		System.arraycopy(list, end, result, at, list.length - end);
+		//the entry that now follows counts from the inserted document
+		if (!replace && at < result.length) {
+			result[at] = current - doc;
+		}
+		return result;
+	}
+
+	//null once no document is left
+	public static int[] remove(int[] list, int doc) {
+		int offset = 0;
+		int previous = 0;
+		while (offset < list.length) {
+			int current = previous + list[offset];
+			if (current > doc) {
+				return list;
+			}
+			int end = offset + 2 + list[offset + 1];
+			if (current == doc) {
+				if (offset == 0 && end == list.length) {
+					return null;
+				}
+				int[] result = new int[list.length - (end - offset)];
+				System.arraycopy(list, 0, result, 0, offset);
+				System.arraycopy(list, end, result, offset, list.length - end);
+				if (offset < result.length) {
+					result[offset] += current - previous;
+				}
+				return result;
+			}
+			previous = current;
+			offset = end;
+		}
+		return list;
+	}
+
+	public static int documents(int[] list) {
+		int documents = 0;
+		for (int offset = 0; offset < list.length; offset += 2 + list[offset + 1]) {
+			documents++;
+		}
+		return documents;
+	}
+
+	public static Cursor cursor(int[] list) {
+		return new Cursor(list);
+	}
+
+	//walks the entries in order, positions are decoded only when asked for
+	public static class Cursor {
+
+		private final int[] list;
+		private int next;
+		private int offset;
+		private int doc;
+		private int count;
+
+		private Cursor(int[] list) {
+			this.list = list;
+		}
+
+		public boolean next() {
+			if (next >= list.length) {
+				return false;
+			}
+			doc += list[next];
+			count = list[next + 1];
+			offset = next + 2;
+			next = offset + count;
+			return true;
+		}
+
+		//moves to the first document at or past target, false when the list runs out first
+		public boolean advance(int target) {
+			while (offset == 0 || doc < target) {
+				if (!next()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public int doc() {
+			return doc;
+		}
+
+		public int count() {
+			return count;
+		}
+
+		//positions below limit, without decoding the rest
+		public int countBelow(int limit) {
+			int position = 0;
+			for (int i = 0; i < count; i++) {
+				position += list[offset + i];
+				if (position >= limit) {
+					return i;
+				}
+			}
+			return count;
+		}
+
+		public int[] positions() {
+			int[] positions = Arrays.copyOfRange(list, offset, offset + count);
+			for (int i = 1; i < count; i++) {
+				positions[i] += positions[i - 1];
+			}
+			return positions;
+		}
+
+	}
+
+}
@@ -0,0 +1,19 @@
+package sanko.kiwi.search;
+
+import lombok.Getter;
+
+import sanko.kiwi.domain.page.PageSnippet;
+
+//a search result holding only the window of text shown for it
+@Getter
+public class Snippet implements PageSnippet {
+
+	private String title;
+	private String snippet;
+
+	public Snippet(String title, String snippet) {
+		this.title = title;
+		this.snippet = snippet;
+	}
+
+}
@@ -0,0 +1,100 @@
+package sanko.kiwi.search;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.StringJoiner;
+import java.text.Normalizer;
+
+//splits text the same way for indexing and for queries
+//letters and digits of alphabetic scripts make words, hangul, han and kana runs make overlapping pairs of characters,
+//since korean words carry their particles and compounds are written without spaces, so 위키는 is listed under 위키 and 키는
+public final class Tokenizer {
+
+	private Tokenizer() {
+
+	}
+
+	public static List<String> tokens(String string) {
+		String normalized = normalize(string);
+		List<String> tokens = new ArrayList<>();
+		scan(normalized, (start, end) -> tokens.add(normalized.substring(start, end)));
+		return tokens;
+	}
+
+	//the pairs of the hangul, han and kana runs of strings, space separated, so unicode61 in fts5 indexes each pair as a word
+	public static String grams(String... strings) {
+		StringJoiner grams = new StringJoiner(" ");
+		for (String string : strings) {
+			if (string != null) {
+				for (String token : tokens(string)) {
+					if (hasPaired(token)) {
+						grams.add(token);
+					}
+				}
+			}
+		}
+		return grams.toString();
+	}
+
+	//nfkc folds full width latin and half width kana, and composes hangul jamo into syllables
+	public static String normalize(String string) {
+		return Normalizer.normalize(string, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+	}
+
+	public interface Span {
+
+		void accept(int start, int end);
+
+	}
+
+	//start and end of every token of string as written, normalizing each one gives the tokens
+	public static void scan(String string, Span span) {
+		int length = string.length();
+		int i = 0;
+		while (i < length) {
+			int c = string.codePointAt(i);
+			if (isPaired(c)) {
+				i = pairs(string, i, span);
+			} else if (Character.isLetterOrDigit(c)) {
+				int start = i;
+				while (i < length && Character.isLetterOrDigit(c = string.codePointAt(i)) && !isPaired(c)) {
+					i += Character.charCount(c);
+				}
+				span.accept(start, i);
+			} else {
+				i += Character.charCount(c);
+			}
+		}
+	}
+
+	//a run of a single character is kept on its own
+	private static int pairs(String string, int start, Span span) {
+		int previous = start;
+		int i = start + Character.charCount(string.codePointAt(start));
+		while (i < string.length() && isPaired(string.codePointAt(i))) {
+			int next = i + Character.charCount(string.codePointAt(i));
+			span.accept(previous, next);
+			previous = i;
+			i = next;
+		}
+		if (previous == start) {
+			span.accept(start, i);
+		}
+		return i;
+	}
+
+	//whether string has a run of a script written without spaces, which is tokenized in pairs
+	public static boolean hasPaired(String string) {
+		return string.codePoints().anyMatch(Tokenizer::isPaired);
+	}
+
+	private static boolean isPaired(int c) {
+		Character.UnicodeScript script = Character.UnicodeScript.of(c);
+		return script == Character.UnicodeScript.HANGUL
+			|| script == Character.UnicodeScript.HAN
+			|| script == Character.UnicodeScript.HIRAGANA
+			|| script == Character.UnicodeScript.KATAKANA;
+	}
+
+}
@@ -1,35 +1,173 @@
 package sanko.kiwi.service;
 
 import java.time.LocalDateTime;
+import java.util.*; //List, ArrayList, Collections
 
 import org.springframework.stereotype.Service;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.transaction.annotation.*; //Transactional, Propagation
+import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch.Patch;
 
-import sanko.kiwi.domain.page.Page;
-import sanko.kiwi.domain.history.*; //History, HistoryRepository
+import sanko.kiwi.domain.page.*; //Page, PageRepository
+import sanko.kiwi.domain.history.*; //History, HistoryRepository, HistoryEntry, HistoryEvent, Revision
+import sanko.kiwi.cache.RevisionCache;
+import sanko.kiwi.diff.*; //DiffService, Delta, BinaryPatch
 
 @RequiredArgsConstructor
 @Service
 public class HistoryService {
 
+	private final PageRepository pageRepository;
 	private final HistoryRepository historyRepository;
+	private final RevisionCache revisionCache;
+	private final DiffService diffService;
+
+	@Value("${kiwi.history.snapshot-interval:50}")
+	private int snapshotInterval;
+
+	@Value("${kiwi.history.reverse:false}")
+	private boolean reverse;
+
+	@Value("${kiwi.history.binary:false}")
+	private boolean binary;
 
 	@Transactional
 	public void save(Page page, String title, String summary, String content) {
-		History last = historyRepository.findFirstByPageOrderByEventDesc(page);
-		Integer event = 1;
-		if (last != null) {
-			event = last.getEvent() + 1;
+		//pages from before the counters read theirs from the newest history once, a page without any has none to read
+		History last = null;
+		if (!page.isRevisionCounted() || (!page.isStorageKnown() && page.getRevision() > 0)) {
+			last = historyRepository.findFirstByPageOrderByEventDesc(page);
+			if (!page.isRevisionCounted()) {
+				page.countRevision(last == null ? 0 : last.getEvent());
+				pageRepository.countRevision(page.getId(), page.getRevision());
+			}
+		}
+
+		//a concurrent save that took the event first leaves nothing to update
+		if (pageRepository.revise(page.getId(), page.getRevision()) == 0) {
+			throw new OptimisticLockingFailureException("page was saved concurrently");
+		}
+		Integer event = page.revise();
+
+		//pages keep the storage they have until the storage job converts them
+		//stored after the event update, so the page is written once with the rest of the edit
+		if (!page.isStorageKnown()) {
+			page.store(last == null ? this.reverse : last.isReverse());
+		}
+
+		//the head's snapshot is the page as it is, so a reverse patch is made from the page without reading the head
+		boolean reverse = page.isHistoryReverse();
+		Revision previous = null;
+		if (reverse) {
+			previous = new Revision(page.getTitle(), page.getContent());
+		}
+
+		History history = create(page, event, summary, title, content, reverse || isSnapshot(event), previous);
+		historyRepository.save(history);
+
+		//a reverse patch past its deadline is not trusted, so the old head keeps its snapshot
+		if (reverse && event > 1 && !isSnapshot(event - 1) && !history.isTimeout()) {
+			historyRepository.clearSnapshot(page, event - 1);
 		}
+	}
 
-		historyRepository.save(History.builder()
+	//with a previous revision the patches are stored reversed, without one they are made from the page
+	public History create(Page page, Integer event, String summary, String title, String content, boolean snapshot, Revision previous) {
+		History history = History.builder()
 			.page(page)
 			.event(event)
-			.title(title)
 			.summary(summary)
-			.content(content)
-			.build());
+			.binary(binary)
+			.build();
+		if (previous == null) {
+			store(history, new Revision(page.getTitle(), page.getContent()), new Revision(title, content), false);
+		} else {
+			store(history, previous, new Revision(title, content), true);
+		}
+		if (snapshot || (history.isTimeout() && !history.isReverse())) {
+			history.snapshot(title, content);
+		}
+		return history;
+	}
+
+	//the diffs shown on /diff are rendered once, along with the patches
+	public void store(History history, Revision previous, Revision current, boolean reverse) {
+		Delta titleDelta;
+		Delta contentDelta;
+		if (reverse) {
+			titleDelta = diffService.diff(current.getTitle(), previous.getTitle());
+			contentDelta = diffService.diff(current.getContent(), previous.getContent());
+		} else {
+			titleDelta = diffService.diff(previous.getTitle(), current.getTitle());
+			contentDelta = diffService.diff(previous.getContent(), current.getContent());
+		}
+		history.store(titleDelta, contentDelta, reverse);
+
+		//inverted in place, so only after the patches are stored
+		if (reverse) {
+			history.renderDiff(diffService.html(diffService.invert(titleDelta.getPatches())), diffService.html(diffService.invert(contentDelta.getPatches())));
+		} else {
+			history.renderDiff(diffService.html(titleDelta.getPatches()), diffService.html(contentDelta.getPatches()));
+		}
+	}
+
+	//rows written before diffs were stored render theirs from the patches
+	public String titleDiff(History history) {
+		if (history.getTitleDiff() == null) {
+			return diffService.html(diffService.parse(forwardTitle(history)));
+		}
+		return history.getTitleDiff();
+	}
+
+	public String contentDiff(History history) {
+		if (history.getContentDiff() == null) {
+			return diffService.html(diffService.parse(forwardContent(history)));
+		}
+		return history.getContentDiff();
+	}
+
+	public void renderDiff(History history) {
+		history.renderDiff(titleDiff(history), contentDiff(history));
+	}
+
+	//patches as they read from the event before, for showing diffs
+	public String forwardTitle(History history) {
+		return forward(history, history.getTitle(), history.getTitleBinary());
+	}
+
+	public String forwardContent(History history) {
+		return forward(history, history.getContent(), history.getContentBinary());
+	}
+
+	private String forward(History history, String patchText, byte[] patchBinary) {
+		List<Patch> patches;
+		if (history.isBinary()) {
+			patches = BinaryPatch.decode(patchBinary);
+		} else if (history.isReverse()) {
+			patches = diffService.parse(patchText);
+		} else {
+			return patchText;
+		}
+		if (history.isReverse()) {
+			patches = diffService.invert(patches);
+		}
+		return diffService.text(patches);
+	}
+
+	public boolean isSnapshot(Integer event) {
+		return snapshotInterval > 0 && event % snapshotInterval == 0;
+	}
+
+	public int latest(Long pageId) {
+		HistoryEvent latest = historyRepository.findFirstEventByPageIdOrderByEventDesc(pageId);
+		return latest == null ? 0 : latest.getEvent();
+	}
+
+	public List<HistoryEntry> list(Long pageId, Integer before, int size) {
+		return historyRepository.findEntryByPageIdAndEventLessThanEqualOrderByEventDesc(pageId, before, PageRequest.of(0, size));
 	}
 
 	@Transactional
@@ -37,4 +175,146 @@ public class HistoryService {
 		return historyRepository.findOneByPageAndEvent(page, event);
 	}
 
+	public boolean isReverse() {
+		return reverse;
+	}
+
+	//replays patches from the nearest snapshot at or before the event, or at or after it for reverse storage
+	//a cached revision of the event before, or after for reverse storage, is used when no snapshot is nearer
+	@Transactional
+	public Revision rebuild(Page page, Integer event) {
+		History target = historyRepository.findOneByPageAndEvent(page, event);
+		if (target == null) {
+			return null;
+		}
+
+		if (target.isReverse()) {
+			return rebuildReverse(page, target);
+		}
+
+		String title = "";
+		String content = "";
+		Integer from = 1;
+
+		History snapshot = historyRepository.findFirstByPageAndEventLessThanEqualAndSnapshotTitleNotNullOrderByEventDesc(page, event);
+		if (snapshot != null) {
+			title = snapshot.getSnapshotTitle();
+			content = snapshot.getSnapshotContent();
+			from = snapshot.getEvent() + 1;
+		}
+
+		if (from < event) {
+			Revision seed = revisionCache.get(page.getId(), event - 1);
+			if (seed != null) {
+				return new Revision(target.applyTitle(seed.getTitle()), target.applyContent(seed.getContent()));
+			}
+		}
+
+		List<History> historys = historyRepository.findByPageAndEventBetweenOrderByEventAsc(page, from, event);
+		for (History history : historys) {
+			title = history.applyTitle(title);
+			content = history.applyContent(content);
+		}
+
+		return new Revision(title, content);
+	}
+
+	private Revision rebuildReverse(Page page, History target) {
+		Integer event = target.getEvent();
+		if (target.isSnapshot()) {
+			return new Revision(target.getSnapshotTitle(), target.getSnapshotContent());
+		}
+
+		Revision seed = revisionCache.get(page.getId(), event + 1);
+		if (seed != null) {
+			History next = historyRepository.findOneByPageAndEvent(page, event + 1);
+			if (next != null) {
+				return new Revision(next.applyTitle(seed.getTitle()), next.applyContent(seed.getContent()));
+			}
+		}
+
+		History snapshot = historyRepository.findFirstByPageAndEventGreaterThanEqualAndSnapshotTitleNotNullOrderByEventAsc(page, event);
+		if (snapshot == null) {
+			return null;
+		}
+
+		String title = snapshot.getSnapshotTitle();
+		String content = snapshot.getSnapshotContent();
+
+		List<History> historys = historyRepository.findByPageAndEventBetweenOrderByEventDesc(page, event + 1, snapshot.getEvent());
+		for (History history : historys) {
+			title = history.applyTitle(title);
+			content = history.applyContent(content);
+		}
+
+		return new Revision(title, content);
+	}
+
+	//every revision of a page in event order, from historys in event order
+	public List<Revision> replay(List<History> historys) {
+		List<Revision> revisions = new ArrayList<>();
+		if (historys.isEmpty()) {
+			return revisions;
+		}
+
+		if (historys.get(historys.size() - 1).isReverse()) {
+			History head = historys.get(historys.size() - 1);
+			String title = head.getSnapshotTitle();
+			String content = head.getSnapshotContent();
+			for (int i = historys.size() - 1; i >= 0; i--) {
+				History history = historys.get(i);
+				if (history.isSnapshot()) {
+					title = history.getSnapshotTitle();
+					content = history.getSnapshotContent();
+				}
+				revisions.add(new Revision(title, content));
+				title = history.applyTitle(title);
+				content = history.applyContent(content);
+			}
+			Collections.reverse(revisions);
+		} else {
+			String title = "";
+			String content = "";
+			for (History history : historys) {
+				if (history.isSnapshot()) {
+					title = history.getSnapshotTitle();
+					content = history.getSnapshotContent();
+				} else {
+					title = history.applyTitle(title);
+					content = history.applyContent(content);
+				}
+				revisions.add(new Revision(title, content));
+			}
+		}
+
+		return revisions;
+	}
+
+	//rewrites the patches of a page, historys in event order, into the given storage
+	public void convert(List<History> historys, boolean reverse) {
+		List<Revision> revisions = replay(historys);
+		Revision previous = new Revision("", "");
+		for (int i = 0; i < historys.size(); i++) {
+			store(historys.get(i), previous, revisions.get(i), reverse);
+			previous = revisions.get(i);
+		}
+
+		//forward patches past their deadline snapshot their own event, reverse ones the event before
+		for (int i = 0; i < historys.size(); i++) {
+			History history = historys.get(i);
+			Revision revision = revisions.get(i);
+			boolean keep = isSnapshot(history.getEvent());
+			if (reverse) {
+				keep = keep || i == historys.size() - 1 || historys.get(i + 1).isTimeout();
+			} else {
+				keep = keep || history.isTimeout();
+			}
+			if (keep) {
+				history.snapshot(revision.getTitle(), revision.getContent());
+			} else {
+				history.clearSnapshot();
+			}
+		}
+	}
+
 }
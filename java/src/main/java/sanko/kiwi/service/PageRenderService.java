@@ -0,0 +1,143 @@
+package sanko.kiwi.service;
+
+import java.util.List;
+import java.util.concurrent.*; //ScheduledExecutorService, Executors, RejectedExecutionException, TimeUnit
+
+import org.springframework.stereotype.Service;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.*; //TransactionTemplate, TransactionSynchronization, TransactionSynchronizationManager
+import org.springframework.context.event.*; //EventListener, ContextRefreshedEvent
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import sanko.kiwi.domain.page.*; //Page, PageRepository, PageId
+import sanko.kiwi.render.*; //RenderService, Rendered
+import sanko.kiwi.search.*; //InvertedIndex, Tokenizer
+import sanko.kiwi.cache.ViewCache;
+
+@Slf4j
+@Service
+public class PageRenderService {
+
+	//tries of storing one render before it is left to the sweep at the next start
+	private static final int ATTEMPTS = 3;
+
+	private final PageRepository pageRepository;
+	private final RenderService renderService;
+	private final InvertedIndex invertedIndex;
+	private final ViewCache viewCache;
+	private final TransactionTemplate transactionTemplate;
+	private final ScheduledExecutorService executor;
+
+	//milliseconds before the second try of a store, doubled for every try after, so a busy database has time to clear
+	private final long retryDelay;
+
+	public PageRenderService(
+		PageRepository pageRepository,
+		RenderService renderService,
+		InvertedIndex invertedIndex,
+		ViewCache viewCache,
+		PlatformTransactionManager transactionManager,
+		@Value("${kiwi.render.threads:2}") int threads,
+		@Value("${kiwi.render.retry-delay:100}") long retryDelay
+	) {
+		this.pageRepository = pageRepository;
+		this.renderService = renderService;
+		this.invertedIndex = invertedIndex;
+		this.viewCache = viewCache;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.executor = Executors.newScheduledThreadPool(threads);
+		this.retryDelay = retryDelay;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	//renders once the edit is committed, so the write lock is not held while rendering
+	public void schedule(Page page) {
+		Long id = page.getId();
+		String title = page.getTitle();
+		Long generation = page.getGeneration();
+		String content = page.getContent();
+		Runnable submit = () -> submit(id, title, generation, content);
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					submit.run();
+				}
+			});
+		} else {
+			submit.run();
+		}
+	}
+
+	//a pool already shut down leaves the render to the thread that committed
+	private void submit(Long id, String title, Long generation, String content) {
+		try {
+			executor.execute(() -> render(id, title, generation, content));
+		} catch (RejectedExecutionException e) {
+			render(id, title, generation, content);
+		}
+	}
+
+	//pages whose render failed or never ran, after a stop between commit and render, are rendered again
+	@EventListener(ContextRefreshedEvent.class)
+	public void sweep() {
+		List<PageId> ids = pageRepository.findUnrendered();
+		if (ids.isEmpty()) {
+			return;
+		}
+
+		log.info("rendering {} pages left behind their content", ids.size());
+		for (PageId id : ids) {
+			executor.execute(() -> pageRepository.findById(id.getId())
+				.filter(page -> !page.isRendered())
+				.ifPresent(page -> render(page.getId(), page.getTitle(), page.getGeneration(), page.getContent())));
+		}
+	}
+
+	//failures are caught here, the pool would drop them without a trace
+	//a render that throws would throw again, so only the store is tried again
+	private void render(Long id, String title, Long generation, String content) {
+		Rendered rendered;
+		try {
+			rendered = renderService.render(content);
+		} catch (RuntimeException e) {
+			log.error("render of page {} generation {} failed, left to the next start", id, generation, e);
+			return;
+		}
+		store(id, title, generation, rendered, 1);
+	}
+
+	//a rename bumps the generation too, so the title of a stored render is still the page's title
+	//a failed try is scheduled again after a delay instead of straight away, a busy database fails them all in a moment otherwise
+	private void store(Long id, String title, Long generation, Rendered rendered, int attempt) {
+		try {
+			//stored only if no newer content was saved in the meantime
+			Integer stored = transactionTemplate.execute(status -> pageRepository.render(id, generation, rendered.getHtml(), rendered.getText(), Tokenizer.grams(title, rendered.getText())));
+			if (stored != null && stored > 0) {
+				invertedIndex.updateAfterCommit(id, null, rendered.getText());
+				//the cached view holds the html of the render before, readers caching it meanwhile are stopped by the epoch
+				viewCache.evict(title);
+			}
+		} catch (RuntimeException e) {
+			if (attempt >= ATTEMPTS) {
+				log.error("render of page {} generation {} could not be stored, left to the next start", id, generation, e);
+				return;
+			}
+			long delay = retryDelay << (attempt - 1);
+			log.warn("render of page {} generation {} could not be stored on attempt {}, tried again in {} ms", id, generation, attempt, delay, e);
+			try {
+				executor.schedule(() -> store(id, title, generation, rendered, attempt + 1), delay, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException rejected) {
+				log.error("render of page {} generation {} not tried again after shutdown, left to the next start", id, generation);
+			}
+		}
+	}
+
+}
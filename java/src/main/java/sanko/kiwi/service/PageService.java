@@ -1,52 +1,167 @@
 package sanko.kiwi.service;
 
 import java.time.LocalDateTime;
-import java.util.*; //List, Random
+import java.util.*; //List, ArrayList, Map, HashMap, Random
 
 import org.springframework.stereotype.Service;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.transaction.annotation.*; //Transactional, Propagation
 
-import sanko.kiwi.domain.page.*; //Page, PageRepository
+import sanko.kiwi.domain.page.*; //Page, PageRepository, PageId, PageTitle, PageSnippet, PageWindow, PageText, PageStamp
+import sanko.kiwi.cache.ViewCache;
+import sanko.kiwi.search.*; //FullTextIndex, InvertedIndex, Snippet, Highlighter, Tokenizer
+import sanko.kiwi.render.*; //RenderService, Rendered
 
 @RequiredArgsConstructor
 @Service
 public class PageService {
 
+	//results on one search page
+	public static final int SEARCH_SIZE = 10;
+
 	private final PageRepository pageRepository;
+	private final RenderService renderService;
+	private final PageRenderService pageRenderService;
+	private final ViewCache viewCache;
+	private final FullTextIndex fullTextIndex;
+	private final InvertedIndex invertedIndex;
+
+	@Value("${kiwi.render.async:false}")
+	private boolean asyncRender;
+
+	@Value("${kiwi.search.title-weight:10.0}")
+	private double titleWeight;
+
+	@Value("${kiwi.search.count-limit:1000}")
+	private int countLimit;
 
 	public Page create() {
 		return create("", "");
 	}
 
 	public Page create(String title, String content) {
-		return Page.builder()
+		Page page = Page.builder()
 			.title(title)
 			.content(content)
 			.build();
+		render(page);
+		return page;
+	}
+
+	private void render(Page page) {
+		Rendered rendered = renderService.render(page.getContent());
+		page.render(rendered.getHtml(), rendered.getText());
+	}
+
+	//previous render while a newer one is pending, or one made on the spot if there is none
+	public String viewHtml(Page page) {
+		if (page.getHtml() != null) {
+			return page.getHtml();
+		}
+		return renderService.render(page.getContent()).getHtml();
+	}
+
+	//one page of matches, the index in memory answers first, then fts5, then like
+	//each result holds only the window of its text shown, with the matches marked
+	public List<PageSnippet> search(String title, Integer page) {
+		int index = Math.max(page, 1) - 1;
+		if (invertedIndex.isAvailable()) {
+			List<Long> ids = invertedIndex.search(title, index * SEARCH_SIZE, SEARCH_SIZE);
+			if (ids != null) {
+				return highlight(ids, title);
+			}
+		}
+
+		PageRequest pageable = PageRequest.of(index, SEARCH_SIZE);
+		String match = FullTextIndex.match(title);
+		if (fullTextIndex.isAvailable() && match != null && Tokenizer.hasPaired(title)) {
+			return highlight(pageRepository.findIdByFullText(match, titleWeight, pageable), title);
+		}
+		if (fullTextIndex.isAvailable() && match != null) {
+			return pageRepository.searchFullText(match, titleWeight, Highlighter.ELLIPSIS, pageable);
+		}
+
+		List<PageSnippet> pages = new ArrayList<>();
+		for (PageWindow window : pageRepository.search(escape(title), title, Highlighter.LEAD, pageable)) {
+			pages.add(new Snippet(window.getTitle(), Highlighter.mark(window.getSnippet(), window.getStart(), title, PageRepository.SNIPPET - 1)));
+		}
+		return pages;
+	}
+
+	//the text of the shown pages only is read, in the order the index ranked them
+	private List<PageSnippet> highlight(List<Long> ids, String search) {
+		if (ids.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		Map<Long, PageText> texts = new HashMap<>();
+		for (PageText text : pageRepository.findTextByIdIn(ids)) {
+			texts.put(text.getId(), text);
+		}
+		List<PageSnippet> pages = new ArrayList<>();
+		for (Long id : ids) {
+			PageText text = texts.get(id);
+			if (text != null) {
+				pages.add(new Snippet(text.getTitle(), Highlighter.around(text.getText(), search, PageRepository.SNIPPET - 1)));
+			}
+		}
+		return pages;
 	}
 
-	public List<Page> search(String title, Integer page) {
-		return pageRepository.findByTitleContainingOrTextContaining(title, title);
+	//matches up to kiwi.search.count-limit, through the same path as search
+	public long count(String title) {
+		if (invertedIndex.isAvailable()) {
+			Integer found = invertedIndex.count(title, countLimit);
+			if (found != null) {
+				return found;
+			}
+		}
+
+		String match = FullTextIndex.match(title);
+		if (fullTextIndex.isAvailable() && match != null) {
+			return pageRepository.countFullText(match, countLimit);
+		}
+
+		return pageRepository.countSearch(escape(title), countLimit);
 	}
 
-	public Page getRandomPage() {
-		List<Page> pages = pageRepository.findAll();
+	private String escape(String title) {
+		return title.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+	}
 
-		int length = pages.size();
-		if (length == 0) {
+	public PageTitle getRandomPage() {
+		long count = pageRepository.count();
+		if (count == 0) {
 			return null;
 		}
 
 		Random random = new Random();
-		int index = random.nextInt(length);
-		return pages.get(index);
+		int index = random.nextInt((int) Math.min(count, Integer.MAX_VALUE));
+		List<PageTitle> titles = pageRepository.findTitleBy(PageRequest.of(index, 1));
+		if (titles.isEmpty()) {
+			return null;
+		}
+		return titles.get(0);
 	}
 
 	public Page find(String title) {
 		return pageRepository.findOneByTitle(title);
 	}
 
+	public PageId findId(String title) {
+		return pageRepository.findIdByTitle(title);
+	}
+
+	public boolean exists(String title) {
+		return pageRepository.findIdByTitle(title) != null;
+	}
+
+	public PageStamp stamp(String title) {
+		return pageRepository.findStampByTitle(title);
+	}
+
 	@Transactional
 	public void save(Page page) {
 		pageRepository.save(page);
@@ -54,36 +169,35 @@ public class PageService {
 
 	@Transactional
 	public void update(Page page, String title, String content) {
-		page.update(title, content);
+		viewCache.evictAfterCommit(page.getTitle());
+		viewCache.evictAfterCommit(title);
 		page.unlock();
-	}
-
-	@Transactional
-	public boolean checkLock(String title) {
-		Page page = pageRepository.findOneByTitle(title);
-		if (page == null) return false;
 
-		LocalDateTime lock = page.getLock();
-		if (lock == null) return false;
-		if (lock.isAfter(LocalDateTime.now())) return true;
-
-		unlock(page);
-		return false;
-	}
-
-	public boolean checkLock(String title, LocalDateTime lock, Integer lockId) {
-		Page page = pageRepository.findOneByTitleAndLockAndLockId(title, lock, lockId);
-		return page == null;
+		//a page without any content yet has no previous render to show, so it renders right away
+		if (asyncRender && page.getGeneration() > 0) {
+			page.change(title, content);
+			pageRenderService.schedule(page);
+			//the text here is still the render before, the render service alone indexes the new one
+			invertedIndex.updateAfterCommit(page.getId(), title, null);
+		} else {
+			page.change(title, content);
+			render(page);
+			page.index(Tokenizer.grams(title, page.getText()));
+			invertedIndex.updateAfterCommit(page.getId(), title, page.getText());
+		}
 	}
 
+	//a lease on the row other processes see before this edit commits, so it is taken in a transaction of its own
+	//false while another one holds a lease that has not run out, true for a page not made yet
 	@Transactional
-	public void lock(Page page, LocalDateTime lock, Integer lockId) {
-		page.lock(lock, lockId);
+	public boolean lock(String title, LocalDateTime lock, Integer lockId) {
+		return pageRepository.lock(title, lock, lockId, LocalDateTime.now()) > 0 || !exists(title);
 	}
 
+	//for an edit that did not commit, a committed one cleared the lease with its page update
 	@Transactional
-	public void unlock(Page page) {
-		page.unlock();
+	public void unlock(String title, Integer lockId) {
+		pageRepository.unlock(title, lockId);
 	}
 
 }
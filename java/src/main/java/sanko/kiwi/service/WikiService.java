@@ -1,30 +1,56 @@
 package sanko.kiwi.service;
 
-import java.util.*; //Random, List, Collections, LinkedList
+import java.util.List;
 import java.util.regex.*; //Pattern, Matcher
+import java.util.concurrent.ThreadLocalRandom;
 import java.time.LocalDateTime;
-import java.net.URLDecoder;
-import java.io.UnsupportedEncodingException;
 
 import org.springframework.stereotype.Service;
-import lombok.RequiredArgsConstructor;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.HttpStatus;
-import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch;
-import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch.*; //Diff, Patch
 
-import sanko.kiwi.domain.page.Page;
-import sanko.kiwi.domain.history.History;
-import sanko.kiwi.dto.*; //PageView, PageEditRequest, PageEdit, PageBack, PageRehash, PageDiff, PageSearch
+import sanko.kiwi.domain.page.*; //Page, PageId, PageTitle, PageSnippet, PageStamp
+import sanko.kiwi.domain.history.*; //History, HistoryEntry, Revision
+import sanko.kiwi.dto.*; //PageView, PageTag, PageEditRequest, PageEdit, PageBack, PageRehash, PageDiff, PageSearch
+import sanko.kiwi.cache.RevisionCache;
+import sanko.kiwi.diff.DiffService;
+import sanko.kiwi.lock.LockManager;
 import sanko.kiwi.Constants;
 
-@RequiredArgsConstructor
 @Service
 public class WikiService {
 
 	private final PageService pageService;
 	private final HistoryService historyService;
+	private final RevisionCache revisionCache;
+	private final DiffService diffService;
+	private final LockManager lockManager;
+	private final TransactionTemplate transactionTemplate;
+
+	//edits carry the revision they started from and are refused once the page has moved past it
+	@Value("${kiwi.edit.optimistic:false}")
+	private boolean optimistic;
+
+	//edits started from an older revision are merged onto the current one when every hunk applies
+	@Value("${kiwi.edit.merge:false}")
+	private boolean merge;
+
+	//another process may edit the same database, so edits also take the lease on the page row that process checks
+	@Value("${kiwi.lock.lease:false}")
+	private boolean lease;
+
+	public WikiService(PageService pageService, HistoryService historyService, RevisionCache revisionCache, DiffService diffService, LockManager lockManager, PlatformTransactionManager transactionManager) {
+		this.pageService = pageService;
+		this.historyService = historyService;
+		this.revisionCache = revisionCache;
+		this.diffService = diffService;
+		this.lockManager = lockManager;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
 
 	private boolean match(String string, String regex) {
 		return Pattern.compile(regex).matcher(string).find();
@@ -35,18 +61,16 @@ public class WikiService {
 			return new PageSearch("", 1, 1, null);
 		}
 
-		List<Page> pages = pageService.search(string, page);
-
-		int length = pages.size();
-		int last = (int) Math.ceil(((float) length) / 10);
-		int to = Math.min(page * 10, length);
-		List<Page> show = pages.subList((page - 1) * 10, to);
+		//only the shown page is read, and the count stops at its limit
+		long count = pageService.count(string);
+		int last = (int) Math.ceil(((float) count) / PageService.SEARCH_SIZE);
+		List<PageSnippet> pages = count == 0 ? List.of() : pageService.search(string, page);
 
 		return new PageSearch(string, page, last, pages);
 	}
 
 	public String getRandomPage() {
-		Page page = pageService.getRandomPage();
+		PageTitle page = pageService.getRandomPage();
 
 		if (page == null) {
 			return "kiwikiwi";
@@ -65,7 +89,17 @@ public class WikiService {
 			return null;
 		}
 
-		return new PageView(page);
+		return new PageView(page, pageService.viewHtml(page));
+	}
+
+	public PageTag tag(String title) {
+		PageStamp stamp = pageService.stamp(title);
+
+		if (stamp == null) {
+			return null;
+		}
+
+		return new PageTag(stamp);
 	}
 
 	public PageEdit viewEdit(String title) {
@@ -76,33 +110,40 @@ public class WikiService {
 				throw new ResponseStatusException(HttpStatus.NOT_FOUND);
 			}
 			page = pageService.create(title, "");
-			return new PageEdit(page);
+			return new PageEdit(page, page.getHtml());
 		}
 
-		return new PageEdit(page);
+		return new PageEdit(page, pageService.viewHtml(page));
 	}
 
 	public PageEdit edit(String title, PageEditRequest request) {
 		String newTitle = request.getTitle();
 		String content = request.getContent();
 		String summary = request.getSummary();
+		Integer revision = request.getRevision();
 
 		if (match(newTitle, Constants.TITLE_REGEX)) {
-			newTitle = newTitle.replaceAll(Constants.TITLE_REGEX, "");
 			Page page = pageService.create(title, content);
-			return new PageEdit(page, newTitle, summary);
+			return new PageEdit(page, newTitle.replaceAll(Constants.TITLE_REGEX, ""), summary, revision);
 		}
 
 		try {
-			Page updated = update(title, newTitle, content, summary);
+			Page updated = commit(title, newTitle, content, summary, revision);
 			return new PageEdit("/wiki/" + updated.getTitle());
 		} catch (TitleDuplicateException | PageLockException e) {
 			Page page = pageService.create(title, content);
-			return new PageEdit(page, newTitle, summary);
+			return new PageEdit(page, newTitle, summary, revision);
+		} catch (RevisionConflictException | OptimisticLockingFailureException e) {
+			//the second comes from a save that committed between this one's read and write
+			//the form goes back with the current revision, so saving again is a deliberate overwrite
+			Page current = pageService.find(title);
+			Page page = pageService.create(title, content);
+			return new PageEdit(page, newTitle, summary, current == null ? null : current.getRevision(), true);
 		}
 	}
 
-	private class TitleDuplicateException extends Exception {
+	//thrown inside the edit transaction, so it rolls back everything written before
+	private class TitleDuplicateException extends RuntimeException {
 
 		public TitleDuplicateException(String message) {
 			super(message);
@@ -110,7 +151,7 @@ public class WikiService {
 
 	}
 
-	private class PageLockException extends Exception {
+	private class PageLockException extends RuntimeException {
 
 		public PageLockException(String message) {
 			super(message);
@@ -118,13 +159,54 @@ public class WikiService {
 
 	}
 
-	private Page update(String title, String newTitle, String content, String summary) throws TitleDuplicateException, PageLockException {
+	private class RevisionConflictException extends RuntimeException {
+
+		public RevisionConflictException(String message) {
+			super(message);
+		}
+
+	}
+
+	//edits of the same titles queue on their stripes before the transaction starts, and go back to the form when the wait runs out
+	//the stripes only order edits of this process, with kiwi.lock.lease set the holder of the stripes also takes the lease for other processes
+	private Page commit(String title, String newTitle, String content, String summary, Integer revision) {
+		int[] stripes = lockManager.stripes(title, newTitle);
+		if (!lockManager.acquire(stripes)) {
+			throw new PageLockException("page is locked");
+		}
+		try {
+			if (!lease) {
+				return transactionTemplate.execute(status -> update(title, newTitle, content, summary, revision));
+			}
+			return commitLeased(title, newTitle, content, summary, revision);
+		} finally {
+			lockManager.release(stripes);
+		}
+	}
+
+	//the lease is committed before the edit starts, so another process sees it, and the edit's page update clears it
+	private Page commitLeased(String title, String newTitle, String content, String summary, Integer revision) {
+		LocalDateTime lock = LocalDateTime.now().plusSeconds(60);
+		Integer lockId = ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+		if (!pageService.lock(title, lock, lockId)) {
+			throw new PageLockException("page is locked");
+		}
+		try {
+			return transactionTemplate.execute(status -> update(title, newTitle, content, summary, revision));
+		} catch (RuntimeException e) {
+			pageService.unlock(title, lockId);
+			throw e;
+		}
+	}
+
+	//runs in one transaction: a page read, a title check on renames, then the event update, history insert and page update
+	//the write lock is held from the event update to commit, and the page update is conditional on its version
+	//optimistic edits fail early on an old revision they cannot merge
+	private Page update(String title, String newTitle, String content, String summary, Integer revision) {
 		Page page = pageService.find(title);
 
 		if (!title.equals(newTitle)) {
-			Page newPage = pageService.find(newTitle);
-
-			if (newPage != null) {
+			if (pageService.exists(newTitle)) {
 				throw new TitleDuplicateException("page with new title already exists");
 			}
 		}
@@ -139,17 +221,14 @@ public class WikiService {
 			pageService.update(page, title, content);
 			return page;
 		} else {
-			if (pageService.checkLock(title)) {
-				throw new PageLockException("page is locked");
-			}
-
-			LocalDateTime lock = LocalDateTime.now().plusSeconds(60);
-			Random random = new Random();
-			Integer lockId = random.nextInt(2147483647);
-			pageService.lock(page, lock, lockId);
-
-			if (pageService.checkLock(title, lock, lockId)) {
-				throw new PageLockException("page is locked");
+			if (revision != null && !revision.equals(page.getRevision())) {
+				String merged = merge ? merge(page, revision, content) : null;
+				if (merged != null) {
+					content = merged;
+				} else if (merge || optimistic) {
+					//an edit that could not be merged is refused even when optimistic locking is off, saving it would drop the other save
+					throw new RevisionConflictException("page was saved since the edit started");
+				}
 			}
 
 			if (summary.isEmpty()) {
@@ -161,8 +240,28 @@ public class WikiService {
 		}
 	}
 
+	//the edit's changes from its base revision replayed onto the current content, null when they do not apply cleanly
+	//an edit of a page that did not exist yet has nothing in common with what another edit created meanwhile
+	private String merge(Page page, Integer base, String content) {
+		String baseContent = "";
+		if (base == 0 && !page.getContent().isEmpty()) {
+			return null;
+		}
+		if (base > 0) {
+			Revision revision = revisionCache.get(page.getId(), base);
+			if (revision == null) {
+				revision = historyService.rebuild(page, base);
+			}
+			if (revision == null) {
+				return null;
+			}
+			baseContent = revision.getContent();
+		}
+		return diffService.merge(baseContent, content, page.getContent());
+	}
+
 	public PageHistoryView history(String title, Integer current) {
-		Page page = pageService.find(title);
+		PageId page = pageService.findId(title);
 
 		if (page == null) {
 			if (match(title, Constants.TITLE_REGEX)) {
@@ -171,15 +270,15 @@ public class WikiService {
 			return new PageHistoryView("/wiki/" + title);
 		}
 
-		int length = page.getHistorys().size();
-		int last = (int) Math.ceil(((float) length) / 10);
-		int to = Math.min(current * 10, length);
-		List<History> historys = page.getHistorys().subList((current - 1) * 10, to);
-		return new PageHistoryView(page, current, last, historys);
+		//events count up from 1, so the latest event stands in for the number of historys
+		int latest = historyService.latest(page.getId());
+		int last = (int) Math.ceil(((float) latest) / 10);
+		List<HistoryEntry> historys = historyService.list(page.getId(), latest - (current - 1) * 10, 10);
+		return new PageHistoryView(title, current, last, historys);
 	}
 
 	public PageBack back(String title, Integer event) {
-		Page back = make(title, event);
+		Revision back = make(title, event);
 
 		if (back == null) {
 			if (match(title, Constants.TITLE_REGEX)) {
@@ -192,7 +291,7 @@ public class WikiService {
 	}
 
 	public PageRehash rehash(String title, Integer event) {
-		Page back = make(title, event);
+		Revision back = make(title, event);
 
 		if (back == null) {
 			if (match(title, Constants.TITLE_REGEX)) {
@@ -202,47 +301,36 @@ public class WikiService {
 		}
 
 		try {
-			Page updated = update(title, back.getTitle(), back.getContent(), "rehash(" + String.valueOf(event) + ")");
+			commit(title, back.getTitle(), back.getContent(), "rehash(" + String.valueOf(event) + ")", null);
 			return new PageRehash("/wiki/" + back.getTitle());
-		} catch (TitleDuplicateException | PageLockException e) {
+		} catch (TitleDuplicateException | PageLockException | OptimisticLockingFailureException e) {
+			//the last one comes from a save racing this one for the page's next event
 			return new PageRehash("/back/" + title + "/" + String.valueOf(event));
 		}
 	}
 
-	private Page make(String title, Integer event) {
+	private Revision make(String title, Integer event) {
 		Page page = pageService.find(title);
 
 		if (page == null) {
 			return null;
 		}
 
-		History hist = historyService.find(page, event);
-
-		if (hist == null) {
-			return null;
+		Revision cached = revisionCache.get(page.getId(), event);
+		if (cached != null) {
+			return cached;
 		}
 
-		String backTitle = "";
-		String backContent = "";
+		Revision revision = historyService.rebuild(page, event);
 
-		List<History> historys = page.getHistorys();
-		Collections.reverse(historys);
-		for (History history : historys) {
-			if (history.getEvent() > event) {
-				break;
-			}
-			backTitle = applyPatch(backTitle, history.getTitle());
-			backContent = applyPatch(backContent, history.getContent());
+		if (revision == null) {
+			return null;
 		}
 
-		return pageService.create(backTitle, backContent);
-	}
-
-	private String applyPatch(String text, String patchText) {
-		DiffMatchPatch dmp = new DiffMatchPatch();
-		List<Patch> patch = dmp.patchFromText(patchText);
-		Object[] patched = dmp.patchApply(new LinkedList<>(patch), text);
-		return (String) patched[0];
+		Page back = pageService.create(revision.getTitle(), revision.getContent());
+		revision = new Revision(back.getTitle(), back.getContent(), back.getHtml());
+		revisionCache.put(page.getId(), event, revision);
+		return revision;
 	}
 
 	public PageDiff diff(String title, Integer event) {
@@ -261,28 +349,8 @@ public class WikiService {
 			return new PageDiff("/history/" + title);
 		}
 
-		String titleDiff = history.getTitle();
-		titleDiff = titleDiff.replaceAll("\\n\\+([^\\n]*)", "\n##ins##\\%2b$1##/ins##");
-		titleDiff = titleDiff.replaceAll("\\n\\-([^\\n]*)", "\n##del##\\-$1##/del##");
-		titleDiff = titleDiff.replaceAll("@@\\s\\-\\d+,{0,1}\\d*\\s\\+\\d+,{0,1}\\d*\\s@@\\n{0,1}", "");
-		try {
-			titleDiff = URLDecoder.decode(titleDiff, "UTF-8");
-		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
-		}
-		titleDiff = titleDiff.replaceAll("##(ins|/ins|del|/del)##", "<$1>");
-
-		String contentDiff = history.getContent();
-		contentDiff = contentDiff.replaceAll("\\n\\+([^\\n]*)", "\n##ins##%2b$1##/ins##");
-		contentDiff = contentDiff.replaceAll("\\n\\-([^\\n]*)", "\n##del##-$1##/del##");
-		contentDiff = contentDiff.replaceAll("@@\\s\\-\\d+,{0,1}\\d*\\s\\+\\d+,{0,1}\\d*\\s@@\\n{0,1}", "");
-		contentDiff = contentDiff.replaceAll("(%0D)*%0A", "%0A ");
-		try {
-			contentDiff = URLDecoder.decode(contentDiff, "UTF-8");
-		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
-		}
-		contentDiff = contentDiff.replaceAll("##(ins|/ins|del|/del)##", "<$1>");
+		String titleDiff = historyService.titleDiff(history);
+		String contentDiff = historyService.contentDiff(history);
 
 		return new PageDiff(title, history, titleDiff, contentDiff);
 	}
@@ -0,0 +1,99 @@
+package sanko.kiwi.web;
+
+import java.util.*; //Map, LinkedHashMap
+
+import org.springframework.web.bind.annotation.*; //RestController, GetMapping
+import lombok.RequiredArgsConstructor;
+
+import sanko.kiwi.cache.*; //LruCache, ViewCache, RevisionCache
+import sanko.kiwi.render.RenderService;
+import sanko.kiwi.diff.DiffService;
+import sanko.kiwi.compress.Compressor;
+import sanko.kiwi.lock.LockManager;
+import sanko.kiwi.search.InvertedIndex;
+
+@RequiredArgsConstructor
+@RestController
+public class StatsController {
+
+	private final RenderService renderService;
+	private final DiffService diffService;
+	private final Compressor compressor;
+	private final ViewCache viewCache;
+	private final RevisionCache revisionCache;
+	private final LockManager lockManager;
+	private final InvertedIndex invertedIndex;
+
+	@GetMapping("/stats")
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+
+		Map<String, Object> render = new LinkedHashMap<>();
+		render.put("count", renderService.getCount());
+		render.put("nanos", renderService.getNanos());
+		if (renderService.getBlocks() != null) {
+			render.put("blocks", cache(renderService.getBlocks()));
+		}
+		stats.put("render", render);
+
+		Map<String, Object> diff = new LinkedHashMap<>();
+		diff.put("count", diffService.getCount());
+		diff.put("nanos", diffService.getNanos());
+		diff.put("lines", diffService.getLines());
+		diff.put("timeouts", diffService.getTimeouts());
+		diff.put("merges", diffService.getMerges());
+		diff.put("conflicts", diffService.getConflicts());
+		stats.put("diff", diff);
+
+		Map<String, Object> compress = new LinkedHashMap<>();
+		compress.put("enabled", compressor.isEnabled());
+		compress.put("dictionary", compressor.getVersion());
+		compress.put("raw", compressor.getRaw());
+		compress.put("stored", compressor.getStored());
+		compress.put("inflated", compressor.getInflated());
+		compress.put("inflateNanos", compressor.getInflateNanos());
+		stats.put("compress", compress);
+
+		Map<String, Object> view = cache(viewCache.getViews());
+		view.put("invalidations", viewCache.getInvalidations());
+		stats.put("view", view);
+
+		stats.put("revision", cache(revisionCache.getRevisions()));
+
+		Map<String, Object> lock = new LinkedHashMap<>();
+		lock.put("stripes", lockManager.getStripes());
+		lock.put("acquisitions", lockManager.getAcquisitions());
+		lock.put("contentions", lockManager.getContentions());
+		lock.put("timeouts", lockManager.getTimeouts());
+		lock.put("waitNanos", lockManager.getWaitNanos());
+		lock.put("waiting", lockManager.getWaiting());
+		stats.put("lock", lock);
+
+		Map<String, Object> search = new LinkedHashMap<>();
+		int documents = invertedIndex.getDocuments();
+		long bytes = invertedIndex.getBytes();
+		search.put("available", invertedIndex.isAvailable());
+		search.put("documents", documents);
+		search.put("terms", invertedIndex.getTerms());
+		search.put("bytes", bytes);
+		search.put("bytesPerDocument", documents == 0 ? 0 : bytes / documents);
+		search.put("buildNanos", invertedIndex.getBuildNanos());
+		search.put("updates", invertedIndex.getUpdates());
+		search.put("searches", invertedIndex.getSearches());
+		search.put("searchNanos", invertedIndex.getSearchNanos());
+		stats.put("search", search);
+
+		return stats;
+	}
+
+	private Map<String, Object> cache(LruCache<?, ?> cache) {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("size", cache.size());
+		stats.put("weight", cache.getWeight());
+		stats.put("hits", cache.getHits());
+		stats.put("misses", cache.getMisses());
+		stats.put("evictions", cache.getEvictions());
+		return stats;
+	}
+
+}
@@ -0,0 +1,65 @@
+package sanko.kiwi.web;
+
+import java.io.IOException;
+
+import org.springframework.stereotype.Component;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.*; //ContentCachingResponseWrapper, UrlPathHelper
+import org.springframework.web.context.request.ServletWebRequest;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.*; //HttpServletRequest, HttpServletResponse
+
+import sanko.kiwi.cache.*; //ViewCache, CachedView
+import sanko.kiwi.dto.PageTag;
+
+//serves /wiki/{title} from rendered bytes in memory, skipping the database and the template engine
+//edits and finished renders evict the title, so a hit needs no check of the page's stamp
+@RequiredArgsConstructor
+@Component
+public class ViewCacheFilter extends OncePerRequestFilter {
+
+	public static final String TAG = ViewCacheFilter.class.getName() + ".TAG";
+	private static final String PREFIX = "/wiki/";
+
+	private final ViewCache viewCache;
+	private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !"GET".equals(request.getMethod())
+			|| !urlPathHelper.getPathWithinApplication(request).startsWith(PREFIX);
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+		String title = urlPathHelper.getPathWithinApplication(request).substring(PREFIX.length());
+
+		CachedView cached = viewCache.get(title);
+		if (cached != null) {
+			ServletWebRequest webRequest = new ServletWebRequest(request, response);
+			if (webRequest.checkNotModified(cached.getEtag(), cached.getLastModified())) {
+				return;
+			}
+			response.setContentType(cached.getContentType());
+			response.setContentLength(cached.getBody().length);
+			response.getOutputStream().write(cached.getBody());
+			return;
+		}
+
+		long epoch = viewCache.epoch();
+		ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+		chain.doFilter(request, wrapper);
+
+		//the controller leaves the tag only for a rendered view of an existing page
+		Object tag = request.getAttribute(TAG);
+		if (tag instanceof PageTag && wrapper.getStatus() == HttpServletResponse.SC_OK) {
+			PageTag pageTag = (PageTag) tag;
+			CachedView view = new CachedView(pageTag.getEtag(), pageTag.getLastModified(), wrapper.getContentType(), wrapper.getContentAsByteArray());
+			viewCache.put(title, view, epoch);
+		}
+		wrapper.copyBodyToResponse();
+	}
+
+}
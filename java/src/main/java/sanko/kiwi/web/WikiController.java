@@ -4,9 +4,10 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*; //GetMapping, PathVariable, RequestParam
 import lombok.RequiredArgsConstructor;
 import org.springframework.ui.Model;
+import org.springframework.web.context.request.*; //WebRequest, RequestAttributes
 
 import sanko.kiwi.service.WikiService;
-import sanko.kiwi.dto.*; //PageView, PageEditRequest, PageEdit, PageHistoryView, PageBack, PageRehash, PageDiff
+import sanko.kiwi.dto.*; //PageView, PageTag, PageEditRequest, PageEdit, PageHistoryView, PageBack, PageRehash, PageDiff
 
 @RequiredArgsConstructor
 @Controller
@@ -32,7 +33,12 @@ public class WikiController {
 	}
 
 	@GetMapping("/wiki/{title}")
-	public String view(@PathVariable("title") String title, Model model) {
+	public String view(@PathVariable("title") String title, WebRequest request, Model model) {
+		PageTag pageTag = wikiService.tag(title);
+		if (pageTag != null && request.checkNotModified(pageTag.getEtag(), pageTag.getLastModified())) {
+			return null;
+		}
+
 		PageView pageView = wikiService.view(title);
 
 		if (pageView == null) {
@@ -40,6 +46,9 @@ public class WikiController {
 			return "not-exist";
 		}
 
+		if (pageTag != null && pageTag.isRendered()) {
+			request.setAttribute(ViewCacheFilter.TAG, pageTag, RequestAttributes.SCOPE_REQUEST);
+		}
 		model.addAttribute("page", pageView);
 		return "view";
 	}
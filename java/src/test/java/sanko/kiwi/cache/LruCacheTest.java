@@ -0,0 +1,62 @@
+package sanko.kiwi.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertNull
+
+class LruCacheTest {
+
+	@Test
+	void testCacheGet() {
+		//given
+		LruCache<String, String> cache = new LruCache<>(10);
+		cache.put("key", "value");
+
+		//when
+		String hit = cache.get("key");
+		String miss = cache.get("nokey");
+
+		//then
+		assertEquals("value", hit);
+		assertNull(miss);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	void testCacheEvictLeastRecentlyUsed() {
+		//given
+		LruCache<String, String> cache = new LruCache<>(2);
+		cache.put("first", "1");
+		cache.put("second", "2");
+		cache.get("first");
+
+		//when
+		cache.put("third", "3");
+
+		//then
+		assertEquals("1", cache.get("first"));
+		assertNull(cache.get("second"));
+		assertEquals("3", cache.get("third"));
+		assertEquals(1, cache.getEvictions());
+	}
+
+	@Test
+	void testCacheWeight() {
+		//given
+		LruCache<String, String> cache = new LruCache<>(10, String::length);
+		cache.put("first", "12345");
+		cache.put("second", "12345");
+
+		//when
+		cache.put("third", "123");
+		cache.put("huge", "12345678901");
+
+		//then
+		assertNull(cache.get("first"));
+		assertNull(cache.get("huge"));
+		assertEquals(8, cache.getWeight());
+		assertEquals(2, cache.size());
+	}
+
+}
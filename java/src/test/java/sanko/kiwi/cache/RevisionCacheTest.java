@@ -0,0 +1,28 @@
+package sanko.kiwi.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertNull
+
+import sanko.kiwi.domain.history.Revision;
+
+class RevisionCacheTest {
+
+	@Test
+	void testRevisionCacheGet() {
+		//given
+		RevisionCache revisionCache = new RevisionCache(1000);
+		Revision revision = new Revision("title", "content", "<p>content</p>");
+
+		//when
+		revisionCache.put(1L, 3, revision);
+
+		//then
+		assertEquals(revision, revisionCache.get(1L, 3));
+		assertNull(revisionCache.get(1L, 4));
+		assertNull(revisionCache.get(13L, 3));
+		assertNull(revisionCache.get(null, 3));
+		assertEquals(26, revisionCache.getRevisions().getWeight());
+	}
+
+}
@@ -0,0 +1,55 @@
+package sanko.kiwi.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertNull, assertSame
+
+class ViewCacheTest {
+
+	private CachedView createView(String body) {
+		return new CachedView("\"1-1-1\"", 0L, "text/html", body.getBytes());
+	}
+
+	@Test
+	void testViewPut() {
+		//given
+		ViewCache viewCache = new ViewCache(1000);
+		CachedView view = createView("body");
+
+		//when
+		viewCache.put("title", view, viewCache.epoch());
+
+		//then
+		assertSame(view, viewCache.get("title"));
+		assertEquals(4, viewCache.getViews().getWeight());
+	}
+
+	@Test
+	void testViewEvict() {
+		//given
+		ViewCache viewCache = new ViewCache(1000);
+		viewCache.put("title", createView("body"), viewCache.epoch());
+
+		//when
+		viewCache.evict("title");
+
+		//then
+		assertNull(viewCache.get("title"));
+		assertEquals(1, viewCache.getInvalidations());
+	}
+
+	@Test
+	void testViewPutAfterEvict() {
+		//given
+		ViewCache viewCache = new ViewCache(1000);
+		long epoch = viewCache.epoch();
+
+		//when
+		viewCache.evict("title");
+		viewCache.put("title", createView("stale"), epoch);
+
+		//then
+		assertNull(viewCache.get("title"));
+	}
+
+}
@@ -0,0 +1,79 @@
+package sanko.kiwi.compress;
+
+import java.util.List;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertArrayEquals, assertTrue, assertThrows
+
+class CompressorTest {
+
+	private String content = "# kiwi\n\nthe kiwi is a flightless bird. see [kiwi](/wiki/kiwi) and [bird](/wiki/bird).\n\n"
+		+ "## habitat\n\nkiwis live in new zealand.\n";
+
+	@Test
+	void testCompressDisabled() {
+		//given
+		Compressor compressor = new Compressor(false, 0);
+
+		//when
+		byte[] bytes = compressor.compress(content);
+
+		//then
+		assertArrayEquals(content.getBytes(StandardCharsets.UTF_8), bytes);
+		assertEquals(content, compressor.decompress(bytes));
+		assertEquals(null, compressor.compress(null));
+	}
+
+	@Test
+	void testCompress() {
+		//given
+		Compressor compressor = new Compressor(true, 16);
+		String repeated = content.repeat(10);
+
+		//when
+		byte[] bytes = compressor.compress(repeated);
+		byte[] small = compressor.compress("short");
+
+		//then
+		assertEquals(0, bytes[0]);
+		assertTrue(bytes.length < repeated.length() / 4);
+		assertEquals(repeated, compressor.decompress(bytes));
+		assertArrayEquals("short".getBytes(StandardCharsets.UTF_8), small);
+		assertEquals(1, compressor.getInflated());
+	}
+
+	@Test
+	void testCompressDictionary() {
+		//given
+		Compressor plain = new Compressor(true, 16);
+		Compressor trained = new Compressor(true, 16);
+		trained.add(1, new DictionaryTrainer(4096).train(List.of(content, content.replace("kiwi", "weka"), content.replace("bird", "parrot"))));
+		String page = content.replace("kiwi", "kakapo");
+
+		//when
+		byte[] withoutDictionary = plain.compress(page);
+		byte[] withDictionary = trained.compress(page);
+
+		//then
+		assertTrue(withDictionary.length < withoutDictionary.length);
+		assertEquals(page, trained.decompress(withDictionary));
+		assertThrows(IllegalStateException.class, () -> plain.decompress(withDictionary));
+	}
+
+	@Test
+	void testCompressZeroByte() {
+		//given
+		Compressor compressor = new Compressor(false, 0);
+		String zero = "\u0000zero";
+
+		//when
+		byte[] bytes = compressor.compress(zero);
+
+		//then
+		assertEquals(zero, compressor.decompress(bytes));
+		assertEquals("", compressor.decompress(compressor.compress("")));
+	}
+
+}
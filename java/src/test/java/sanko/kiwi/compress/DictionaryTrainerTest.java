@@ -0,0 +1,30 @@
+package sanko.kiwi.compress;
+
+import java.util.*; //List, ArrayList
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*; //assertTrue, assertFalse
+
+class DictionaryTrainerTest {
+
+	@Test
+	void testTrain() {
+		//given
+		List<String> samples = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			samples.add("## see also\n\n- [kiwi](/wiki/kiwi)\nunique" + i + "\n");
+		}
+
+		//when
+		byte[] dictionary = new DictionaryTrainer(64).train(samples);
+
+		//then
+		String text = new String(dictionary, StandardCharsets.UTF_8);
+		assertTrue(dictionary.length <= 64);
+		assertTrue(text.endsWith("- [kiwi](/wiki/kiwi)\n"));
+		assertFalse(text.contains("unique"));
+	}
+
+}
@@ -0,0 +1,100 @@
+package sanko.kiwi.diff;
+
+import java.util.LinkedList;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch;
+import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch.Patch;
+
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertTrue
+
+class BinaryPatchTest {
+
+	private String text1 = "# 키위\n\n키위는 작은 새입니다. long enough to split into several hunks\n"
+		+ "lorem ipsum dolor sit amet ".repeat(4) + "\n끝\n";
+	private String text2 = "# 키위키위\n\n키위는 날지 못하는 작은 새입니다. long enough to split into several hunks\n"
+		+ "lorem ipsum dolor sit amet ".repeat(4) + "\n진짜 끝\n";
+
+	@Test
+	void testEncode() {
+		//given
+		DiffMatchPatch dmp = new DiffMatchPatch();
+		LinkedList<Patch> patches = dmp.patchMake(text1, text2);
+
+		//when
+		byte[] bytes = BinaryPatch.encode(patches);
+
+		//then
+		assertTrue(patches.size() > 1);
+		assertEquals(dmp.patchToText(patches), dmp.patchToText(BinaryPatch.decode(bytes)));
+		assertTrue(bytes.length * 2 < dmp.patchToText(patches).length());
+	}
+
+	@Test
+	void testApply() {
+		//given
+		DiffMatchPatch dmp = new DiffMatchPatch();
+		byte[] bytes = BinaryPatch.encode(dmp.patchMake(text1, text2));
+
+		//when
+		String applied = BinaryPatch.apply(text1, bytes);
+
+		//then
+		assertEquals(text2, applied);
+		assertEquals("", BinaryPatch.apply("", BinaryPatch.encode(dmp.patchMake("", ""))));
+		assertEquals("anything", BinaryPatch.apply("anything", BinaryPatch.encode(dmp.patchMake("same", "same"))));
+	}
+
+	@Test
+	void testApplyFuzzy() {
+		//given
+		DiffMatchPatch dmp = new DiffMatchPatch();
+		LinkedList<Patch> patches = dmp.patchMake(text1, text2);
+		byte[] bytes = BinaryPatch.encode(patches);
+		String shifted = "머리말\n" + text1;
+
+		//when
+		String applied = BinaryPatch.apply(shifted, bytes);
+
+		//then
+		assertEquals("머리말\n" + text2, applied);
+		assertEquals(dmp.patchApply(patches, shifted)[0], applied);
+	}
+
+	//the two emoji share their high surrogate, so the diff cuts the pair in two
+	@Test
+	void testApplySurrogate() {
+		//given
+		DiffMatchPatch dmp = new DiffMatchPatch();
+		String before = "kiwi \uD83D\uDE00 wiki";
+		String after = "kiwi \uD83D\uDE01 wiki";
+		LinkedList<Patch> patches = dmp.patchMake(before, after);
+
+		//when
+		byte[] bytes = BinaryPatch.encode(patches);
+
+		//then
+		assertEquals(after, BinaryPatch.apply(before, bytes));
+		assertEquals(dmp.patchToText(patches), dmp.patchToText(BinaryPatch.decode(bytes)));
+	}
+
+	//rows written as plain utf-8 hold an emoji as one four byte sequence
+	@Test
+	void testDecodeUtf8() {
+		//given
+		byte[] emoji = "\uD83D\uDE00".getBytes(StandardCharsets.UTF_8);
+		byte[] bytes = new byte[8 + emoji.length];
+		byte[] head = {1, 0, 0, 0, 2, 1, 1, (byte) emoji.length};
+		System.arraycopy(head, 0, bytes, 0, head.length);
+		System.arraycopy(emoji, 0, bytes, head.length, emoji.length);
+
+		//when
+		LinkedList<Patch> patches = BinaryPatch.decode(bytes);
+
+		//then
+		assertEquals("\uD83D\uDE00", patches.get(0).diffs.get(0).text);
+		assertEquals("\uD83D\uDE00", BinaryPatch.apply("", bytes));
+	}
+
+}
@@ -0,0 +1,191 @@
+package sanko.kiwi.diff;
+
+import java.util.*; //Random, LinkedList
+
+import org.junit.jupiter.api.Test;
+import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch;
+import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch.*; //Diff, Operation
+
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertTrue, assertFalse, assertNull
+
+class DiffServiceTest {
+
+	private String apply(String text, String patch) {
+		DiffMatchPatch dmp = new DiffMatchPatch();
+		Object[] patched = dmp.patchApply(new LinkedList<>(dmp.patchFromText(patch)), text);
+		return (String) patched[0];
+	}
+
+	private String random(Random random, int length) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			text.append((char) ('a' + random.nextInt(26)));
+		}
+		return text.toString();
+	}
+
+	@Test
+	void testDiff() {
+		//given
+		DiffService diffService = new DiffService(0, 1000);
+		String text1 = "one two three\nfour five\n";
+		String text2 = "one three\nfour five six\n";
+
+		//when
+		Delta delta = diffService.diff(text1, text2);
+
+		//then
+		assertFalse(delta.isLines());
+		assertFalse(delta.isTimeout());
+		assertEquals(text2, apply(text1, delta.getPatch()));
+		assertEquals(1, diffService.getCount());
+	}
+
+	@Test
+	void testDiffLines() {
+		//given
+		DiffService diffService = new DiffService(10, 1000);
+		String text1 = "one\ntwo\nthree\nfour\nfive";
+		String text2 = "one\ntwo and a half\nthree\nfive\nsix\n";
+
+		//when
+		Delta delta = diffService.diff(text1, text2);
+
+		//then
+		assertTrue(delta.isLines());
+		assertTrue(delta.getDiffs().contains(new Diff(Operation.DELETE, "two\n")));
+		assertEquals(text2, apply(text1, delta.getPatch()));
+		assertEquals(1, diffService.getLines());
+	}
+
+	@Test
+	void testDiffTimeout() {
+		//given
+		DiffService diffService = new DiffService(0, 1);
+		Random random = new Random(1);
+		String text1 = random(random, 20000);
+		String text2 = random(random, 20000);
+
+		//when
+		Delta delta = diffService.diff(text1, text2);
+
+		//then
+		assertTrue(delta.isTimeout());
+		assertEquals(1, diffService.getTimeouts());
+	}
+
+	@Test
+	void testMerge() {
+		//given
+		DiffService diffService = new DiffService(0, 1000);
+		String base = "# kiwi\n\nkiwi is a small wiki.\n\n## usage\n\nopen a page and press edit.\n";
+		String theirs = "# kiwi\n\nkiwi is a small wiki.\n\n## usage\n\nopen a page, press edit and save.\n";
+		String current = "# kiwi\n\nkiwi is a small wiki written in java.\n\n## usage\n\nopen a page and press edit.\n";
+
+		//when
+		String merged = diffService.merge(base, theirs, current);
+
+		//then
+		assertEquals("# kiwi\n\nkiwi is a small wiki written in java.\n\n## usage\n\nopen a page, press edit and save.\n", merged);
+		assertEquals(1, diffService.getMerges());
+	}
+
+	@Test
+	void testMergeConflict() {
+		//given
+		DiffService diffService = new DiffService(0, 1000);
+		String base = "# kiwi\n\nopen a page and press edit.\n";
+		String theirs = "# kiwi\n\nopen a page, press edit and save.\n";
+		String current = "# kiwi\n\nthe edit link is at the top.\n";
+
+		//when
+		String merged = diffService.merge(base, theirs, current);
+
+		//then
+		assertNull(merged);
+		assertEquals(1, diffService.getConflicts());
+	}
+
+	@Test
+	void testMergeSameRegion() {
+		//given
+		DiffService diffService = new DiffService(0, 1000);
+		String base = "the quick brown fox jumps over the lazy dog.\n";
+		String theirs = "the quick brown fox hops over the lazy dog.\n";
+		String current = "the quick brown fox leaps over the lazy dog.\n";
+
+		//when
+		String merged = diffService.merge(base, theirs, current);
+
+		//then
+		assertNull(merged);
+		assertEquals(1, diffService.getConflicts());
+	}
+
+	@Test
+	void testMergeRewrittenLine() {
+		//given
+		DiffService diffService = new DiffService(0, 1000);
+		String base = "Line one is here.\nLine two is here.\n";
+		String theirs = "Line one is here.\nLine two is here and B appended.\n";
+		String current = "A rewrote the first line.\nLine two is here.\n";
+
+		//when
+		String merged = diffService.merge(base, theirs, current);
+		String same = diffService.merge(base, current, current + "Line three.\n");
+
+		//then
+		assertEquals("A rewrote the first line.\nLine two is here and B appended.\n", merged);
+		assertEquals(current + "Line three.\n", same);
+		assertEquals(0, diffService.getCount());
+	}
+
+	@Test
+	void testMergeWithoutContext() {
+		//given
+		DiffService diffService = new DiffService(0, 1000);
+
+		//when
+		String created = diffService.merge("", "second page text\n", "first page text\n");
+		String replaced = diffService.merge("one", "two", "one, edited");
+		String unchanged = diffService.merge("", "second page text\n", "");
+
+		//then
+		assertNull(created);
+		assertNull(replaced);
+		assertEquals("second page text\n", unchanged);
+		assertEquals(2, diffService.getConflicts());
+		assertEquals(1, diffService.getMerges());
+	}
+
+	@Test
+	void testHtml() {
+		//given
+		DiffService diffService = new DiffService(0, 1000);
+		Delta delta = diffService.diff("one <b>two</b>\nthree", "one <b>four</b>\nthree");
+
+		//when
+		String html = diffService.html(delta.getPatches());
+
+		//then
+		assertEquals("  &lt;b&gt;\n<del>-two</del>\n<ins>+four</ins>\n &lt;/b&gt;\n", html);
+	}
+
+	@Test
+	void testInvert() {
+		//given
+		DiffService diffService = new DiffService(0, 1000);
+		String text1 = "one two three\nfour five\n";
+		String text2 = "one three\nfour five six\n";
+		Delta backward = diffService.diff(text2, text1);
+
+		//when
+		String patch = diffService.text(diffService.invert(diffService.parse(backward.getPatch())));
+
+		//then
+		assertEquals(text2, apply(text1, patch));
+		assertTrue(diffService.html(diffService.parse(patch)).contains("<del>-two </del>\n"));
+		assertTrue(diffService.html(diffService.parse(patch)).contains("<ins>+ six</ins>\n"));
+	}
+
+}
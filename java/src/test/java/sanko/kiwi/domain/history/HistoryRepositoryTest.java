@@ -1,17 +1,26 @@
 package sanko.kiwi.domain.history;
 
-import java.util.Optional;
+import java.util.*; //List, Optional
 
-import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.*; //DataJpaTest, TestEntityManager
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.junit.jupiter.api.Test;
+import org.springframework.orm.jpa.JpaSystemException;
+import org.springframework.context.annotation.Import;
 
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 import sanko.kiwi.domain.page.*; //Page, PageRepository
+import sanko.kiwi.service.HistoryService;
+import sanko.kiwi.cache.RevisionCache;
+import sanko.kiwi.diff.DiffService;
 
 @DataJpaTest
+@Import({HistoryService.class, RevisionCache.class, DiffService.class, HistoryEventIndex.class})
 class HistoryRepositoryTest {
 
 	@Autowired
@@ -20,6 +29,15 @@ class HistoryRepositoryTest {
 	@Autowired
 	private PageRepository pageRepository;
 
+	@Autowired
+	private HistoryService historyService;
+
+	@Autowired
+	private HistoryEventIndex historyEventIndex;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
 	private Page createPage(String title, String content) {
 		Page page = Page.builder()
 			.title(title)
@@ -39,13 +57,7 @@ class HistoryRepositoryTest {
 		String summary = "savesummary";
 		String title = "savetitle";
 		String content = "savecontent";
-		History history = History.builder()
-			.page(page)
-			.event(event)
-			.summary(summary)
-			.title(title)
-			.content(content)
-			.build();
+		History history = historyService.create(page, event, summary, title, content, false, null);
 
 		//when
 		historyRepository.save(history);
@@ -70,13 +82,7 @@ class HistoryRepositoryTest {
 		String summary = "findsummary";
 		String title = "findtitle";
 		String content = "findcontent";
-		History history = History.builder()
-			.page(page)
-			.event(event)
-			.summary(summary)
-			.title(title)
-			.content(content)
-			.build();
+		History history = historyService.create(page, event, summary, title, content, false, null);
 		historyRepository.save(history);
 		Long id = history.getId();
 
@@ -95,4 +101,105 @@ class HistoryRepositoryTest {
 		});
 	}
 
+	@Test
+	void testHistoryFindSnapshot() {
+		//given
+		Page page = createPage("snapshotpagetitle", "snapshotpagecontent");
+		for (int event = 1; event <= 5; event++) {
+			historyRepository.save(historyService.create(page, event, "snapshotsummary", "snapshottitle" + event, "snapshotcontent" + event, event % 2 == 0, null));
+		}
+
+		//when
+		History snapshot = historyRepository.findFirstByPageAndEventLessThanEqualAndSnapshotTitleNotNullOrderByEventDesc(page, 5);
+
+		//then
+		assertEquals(4, snapshot.getEvent());
+		assertEquals("snapshottitle4", snapshot.getSnapshotTitle());
+		assertEquals("snapshotcontent4", snapshot.getSnapshotContent());
+	}
+
+	@Test
+	void testHistoryBinary() {
+		//given
+		String pageContent = "키위 위키의 첫 문단\n두 번째 문단\n";
+		String content = "키위 위키의 첫 문단\n고친 두 번째 문단\n";
+		Page page = createPage("binarypagetitle", pageContent);
+		setField(historyService, "binary", true);
+		History history = historyRepository.save(historyService.create(page, 1, "binarysummary", "binarytitle", content, false, null));
+		setField(historyService, "binary", false);
+		entityManager.flush();
+		entityManager.clear();
+
+		//when
+		History found = historyRepository.findById(history.getId()).get();
+
+		//then
+		assertTrue(found.isBinary());
+		assertEquals(history.getPatchSize(), found.getContentBinary().length + found.getTitleBinary().length);
+		assertEquals(content, found.applyContent(pageContent));
+		assertEquals("binarytitle", found.applyTitle("binarypagetitle"));
+	}
+
+	@Test
+	void testHistoryDuplicateEvent() {
+		//given
+		Page page = createPage("duplicatepagetitle", "duplicatepagecontent");
+		historyRepository.saveAndFlush(historyService.create(page, 1, null, "duplicatetitle", "duplicatecontent", false, null));
+
+		//when
+		History duplicate = historyService.create(page, 1, null, "duplicatetitle", "duplicatecontent", false, null);
+
+		//then
+		JpaSystemException exception = assertThrows(JpaSystemException.class, () -> historyRepository.saveAndFlush(duplicate));
+		assertTrue(exception.getMessage().contains("SQLITE_CONSTRAINT_UNIQUE"));
+	}
+
+	@Test
+	void testHistoryRenumber() {
+		//given
+		entityManager.getEntityManager().createNativeQuery("drop index historys_page_event").executeUpdate();
+		Page page = createPage("renumberpagetitle", "renumberpagecontent");
+		Page other = createPage("renumberotherpagetitle", "renumberotherpagecontent");
+		for (int event : new int[] {1, 2, 2, 4, 2}) {
+			historyRepository.save(historyService.create(page, event, "renumbersummary" + event, "renumbertitle", "renumbercontent", false, null));
+		}
+		for (int event = 1; event <= 2; event++) {
+			historyRepository.save(historyService.create(other, event, "renumbersummary" + event, "renumbertitle", "renumbercontent", false, null));
+		}
+		entityManager.flush();
+
+		//when
+		historyEventIndex.create();
+		entityManager.clear();
+
+		//then
+		List<History> historys = historyRepository.findByPageIdOrderByEventAsc(page.getId());
+		assertEquals(List.of(1, 2, 3, 4, 5), historys.stream().map(History::getEvent).toList());
+		assertEquals(List.of("renumbersummary1", "renumbersummary2", "renumbersummary2", "renumbersummary2", "renumbersummary4"), historys.stream().map(History::getSummary).toList());
+		assertEquals(5, pageRepository.findById(page.getId()).get().getRevision());
+		assertEquals(List.of(1, 2), historyRepository.findByPageIdOrderByEventAsc(other.getId()).stream().map(History::getEvent).toList());
+		assertEquals(0, pageRepository.findById(other.getId()).get().getRevision());
+		assertThrows(JpaSystemException.class, () -> historyRepository.saveAndFlush(historyService.create(other, 2, null, "renumbertitle", "renumbercontent", false, null)));
+	}
+
+	@Test
+	void testHistoryEntry() {
+		//given
+		Page page = createPage("entrypagetitle", "entrypagecontent");
+		for (int event = 1; event <= 25; event++) {
+			historyRepository.save(historyService.create(page, event, "entrysummary" + event, "entrytitle" + event, "entrycontent" + event, false, null));
+		}
+
+		//when
+		HistoryEvent latest = historyRepository.findFirstEventByPageIdOrderByEventDesc(page.getId());
+		List<HistoryEntry> entries = historyRepository.findEntryByPageIdAndEventLessThanEqualOrderByEventDesc(page.getId(), 15, PageRequest.of(0, 10));
+
+		//then
+		assertEquals(25, latest.getEvent());
+		assertEquals(10, entries.size());
+		assertEquals(15, entries.get(0).getEvent());
+		assertEquals("entrysummary15", entries.get(0).getSummary());
+		assertEquals(6, entries.get(9).getEvent());
+	}
+
 }
@@ -2,12 +2,15 @@ package sanko.kiwi.domain.history;
 
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertTrue, assertFalse, assertNull
 
 import sanko.kiwi.domain.page.Page;
+import sanko.kiwi.diff.*; //DiffService, Delta
 
 class HistoryTest {
 
+	private final DiffService diffService = new DiffService(0, 1000);
+
 	@Test
 	void testHistoryBuilder() {
 		//given
@@ -17,24 +20,67 @@ class HistoryTest {
 
 		Integer event = 1;
 		String summary = "summary";
-		String title = "title";
-		String content = "content";
 
 		//when
 		History history = History.builder()
 			.page(page)
 			.event(event)
 			.summary(summary)
-			.title(title)
-			.content(content)
 			.build();
 
 		//then
 		assertEquals(event, history.getEvent());
 		assertEquals(summary, history.getSummary());
+		assertFalse(history.isBinary());
+		assertNull(history.getContent());
 
 		assertEquals(pageTitle, history.getPage().getTitle());
 		assertEquals(pageContent, history.getPage().getContent());
 	}
 
+	@Test
+	void testHistoryStore() {
+		//given
+		Page page = new Page("pagetitle", "pagecontent");
+		History history = History.builder()
+			.page(page)
+			.event(2)
+			.build();
+		String previousContent = "one two three\nfour five\n";
+		String content = "one three\nfour five six\n";
+
+		//when
+		history.store(diffService.diff("title", "previoustitle"), diffService.diff(content, previousContent), true);
+
+		//then
+		assertTrue(history.isReverse());
+		assertFalse(history.isTimeout());
+		assertEquals("previoustitle", history.applyTitle("title"));
+		assertEquals(previousContent, history.applyContent(content));
+		assertEquals(history.getTitle().length() + history.getContent().length(), history.getPatchSize());
+	}
+
+	@Test
+	void testHistoryStoreBinary() {
+		//given
+		String pageContent = "한국어 문서의 첫 줄\n둘째 줄\n";
+		String content = "한국어 문서의 첫 줄\n바뀐 둘째 줄\n셋째 줄\n";
+		Page page = new Page("pagetitle", pageContent);
+		History history = History.builder()
+			.page(page)
+			.event(2)
+			.binary(true)
+			.build();
+
+		//when
+		history.store(diffService.diff("pagetitle", "title"), diffService.diff(pageContent, content), false);
+
+		//then
+		assertTrue(history.isBinary());
+		assertNull(history.getContent());
+		assertEquals(content, history.applyContent(pageContent));
+		assertEquals("title", history.applyTitle("pagetitle"));
+		assertEquals(history.getTitleBinary().length + history.getContentBinary().length, history.getPatchSize());
+	}
+
 }
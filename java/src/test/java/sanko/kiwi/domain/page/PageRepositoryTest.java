@@ -1,26 +1,62 @@
 package sanko.kiwi.domain.page;
 
-import java.util.Optional;
+import java.util.*; //Optional, List, ArrayList, Set, HashSet
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.function.Supplier;
 
-import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.*; //DataJpaTest, TestEntityManager
+import org.springframework.data.domain.*; //PageRequest, Pageable
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.orm.jpa.JpaSystemException;
+import org.springframework.jdbc.core.JdbcTemplate;
 
-import static org.junit.jupiter.api.Assertions.*; //assertTrue, assertEquals, assertThrows
+import static org.junit.jupiter.api.Assertions.*; //assertTrue, assertFalse, assertEquals, assertNull, assertNotNull, assertThrows
 
+import sanko.kiwi.search.*; //FullTextIndex, InvertedIndex, Highlighter, Tokenizer
+import sanko.kiwi.render.*; //RenderService, Rendered
+
+@Slf4j
 @DataJpaTest
+@Import(FullTextIndex.class)
 class PageRepositoryTest {
 
 	@Autowired
 	private PageRepository pageRepository;
 
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private final RenderService renderService = new RenderService(List.of());
+
+	//html and text are rendered by the page service, the way it makes a page
+	private Page create(String title, String content) {
+		Page page = new Page(title, content);
+		Rendered rendered = renderService.render(content);
+		page.render(rendered.getHtml(), rendered.getText());
+		return page;
+	}
+
+	//grams are worked out by the page service, the way it renders the text
+	private Page saveIndexed(String title, String content) {
+		Page page = create(title, content);
+		page.index(Tokenizer.grams(title, page.getText()));
+		return pageRepository.save(page);
+	}
+
 	@Test
 	void testPageSave() {
 		//given
 		String title = "savetitle";
 		String content = "savecontent";
-		Page page = new Page(title, content);
+		Page page = create(title, content);
 
 		//when
 		pageRepository.save(page);
@@ -31,12 +67,25 @@ class PageRepositoryTest {
 		assertEquals(content, page.getContent());
 	}
 
+	@Test
+	void testPageSaveText() {
+		//given
+		Page page = create("texttitle", "textcontent");
+
+		//when
+		pageRepository.saveAndFlush(page);
+
+		//then
+		String type = jdbcTemplate.queryForObject("select typeof(content) from pages where id = ?", String.class, page.getId());
+		assertEquals("text", type);
+	}
+
 	@Test
 	void testPageFind() {
 		//given
 		String title = "findtitle";
 		String content = "findcontent";
-		Page page = new Page(title, content);
+		Page page = create(title, content);
 		pageRepository.save(page);
 		Long id = page.getId();
 
@@ -57,13 +106,13 @@ class PageRepositoryTest {
 		//given
 		String title = "duplicatetitle";
 		String content = "duplicatecontent";
-		Page page = new Page(title, content);
+		Page page = create(title, content);
 		pageRepository.save(page);
 
 		//when
 		String duplicateTitle = title;
 		String duplicateContent = content;
-		Page duplicate = new Page(title, content);
+		Page duplicate = create(title, content);
 
 		//then
 		JpaSystemException exception = assertThrows(JpaSystemException.class, () -> pageRepository.save(duplicate));
@@ -75,7 +124,7 @@ class PageRepositoryTest {
 		//given
 		String title = "findtitle";
 		String content = "findcontent";
-		Page page = new Page(title, content);
+		Page page = create(title, content);
 		pageRepository.save(page);
 
 		//when
@@ -86,4 +135,389 @@ class PageRepositoryTest {
 		assertEquals(content, found.getContent());
 	}
 
+	@Test
+	void testRenderGeneration() {
+		//given
+		String title = "rendertitle";
+		String content = "rendercontent";
+		Page page = create(title, content);
+		page.change(title, "rendernewcontent");
+		pageRepository.saveAndFlush(page);
+		Long generation = page.getGeneration();
+
+		//when
+		int stale = pageRepository.render(page.getId(), generation - 1, "stale", "stale", "");
+		int current = pageRepository.render(page.getId(), generation, "<p>rendered</p>", "rendered", "");
+
+		//then
+		assertEquals(0, stale);
+		assertEquals(1, current);
+	}
+
+	@Test
+	void testFindUnrendered() {
+		//given
+		Page rendered = pageRepository.save(create("unrenderedtitle", "rendered content"));
+		Page pending = create("unrenderedpendingtitle", "content");
+		pending.change("unrenderedpendingtitle", "pending content");
+		pageRepository.saveAndFlush(pending);
+
+		//when
+		List<Long> ids = pageRepository.findUnrendered().stream().map(PageId::getId).toList();
+
+		//then
+		assertTrue(ids.contains(pending.getId()));
+		assertFalse(ids.contains(rendered.getId()));
+	}
+
+	@Test
+	void testRevise() {
+		//given
+		Page page = pageRepository.saveAndFlush(create("revisetitle", "revisecontent"));
+
+		//when
+		int first = pageRepository.revise(page.getId(), 0);
+		int stale = pageRepository.revise(page.getId(), 0);
+		int second = pageRepository.revise(page.getId(), 1);
+		entityManager.clear();
+
+		//then
+		assertEquals(1, first);
+		assertEquals(0, stale);
+		assertEquals(1, second);
+		assertEquals(2, pageRepository.findById(page.getId()).get().getRevision());
+	}
+
+	@Test
+	void testLock() {
+		//given
+		Page page = pageRepository.saveAndFlush(create("locktitle", "lockcontent"));
+		LocalDateTime now = LocalDateTime.now();
+
+		//when
+		int first = pageRepository.lock("locktitle", now.plusSeconds(60), 1, now);
+		int held = pageRepository.lock("locktitle", now.plusSeconds(60), 2, now);
+		int expired = pageRepository.lock("locktitle", now.plusSeconds(120), 3, now.plusSeconds(90));
+		int other = pageRepository.unlock("locktitle", 1);
+		int own = pageRepository.unlock("locktitle", 3);
+		entityManager.clear();
+
+		//then
+		assertEquals(1, first);
+		assertEquals(0, held);
+		assertEquals(1, expired);
+		assertEquals(0, other);
+		assertEquals(1, own);
+		assertNull(pageRepository.findById(page.getId()).get().getLockId());
+	}
+
+	@Test
+	void testVersion() {
+		//given
+		Page page = pageRepository.saveAndFlush(create("versiontitle", "versioncontent"));
+		Long version = page.getVersion();
+
+		//when
+		page.change("versiontitle", "versionnewcontent");
+		pageRepository.saveAndFlush(page);
+
+		//then
+		assertEquals(version + 1, page.getVersion());
+	}
+
+	@Test
+	void testFindIdByTitle() {
+		//given
+		String title = "findidtitle";
+		String content = "findidcontent";
+		Page page = create(title, content);
+		pageRepository.save(page);
+
+		//when
+		PageId found = pageRepository.findIdByTitle(title);
+		PageId notFound = pageRepository.findIdByTitle("findidnotitle");
+
+		//then
+		assertEquals(page.getId(), found.getId());
+		assertNull(notFound);
+	}
+
+	@Test
+	void testFindStampByTitle() {
+		//given
+		String title = "findstamptitle";
+		String content = "findstampcontent";
+		Page page = create(title, content);
+		page.change(title, content);
+		page.render("<p>" + content + "</p>", content);
+		pageRepository.save(page);
+
+		//when
+		PageStamp stamp = pageRepository.findStampByTitle(title);
+
+		//then
+		assertEquals(page.getId(), stamp.getId());
+		assertEquals(1L, stamp.getGeneration());
+		assertEquals(1L, stamp.getRenderGeneration());
+		assertNotNull(stamp.getRefresh());
+	}
+
+	@Test
+	void testSearch() {
+		//given
+		String title = "searchtitle";
+		String content = "searchcontent " + "long text ".repeat(20);
+		pageRepository.save(create(title, content));
+		pageRepository.save(create("search_other", "other"));
+
+		//when
+		List<PageWindow> byText = pageRepository.search("searchcontent", "searchcontent", Highlighter.LEAD, PageRequest.of(0, 10));
+		List<PageWindow> escaped = pageRepository.search("search\\_", "search_", Highlighter.LEAD, PageRequest.of(0, 10));
+
+		//then
+		assertEquals(1, byText.size());
+		assertEquals(title, byText.get(0).getTitle());
+		assertEquals(PageRepository.SNIPPET, byText.get(0).getSnippet().length());
+		assertEquals(1, byText.get(0).getStart());
+		assertEquals(1, escaped.size());
+		assertEquals("search_other", escaped.get(0).getTitle());
+	}
+
+	@Test
+	void testSearchWindow() {
+		//given
+		String content = "lorem ipsum ".repeat(20) + "Needle in the text";
+		pageRepository.save(create("searchwindow", content));
+		pageRepository.save(create("searchwindow needle", "no match in the text"));
+
+		//when
+		List<PageWindow> found = pageRepository.search("needle", "needle", Highlighter.LEAD, PageRequest.of(0, 10));
+
+		//then
+		assertEquals(2, found.size());
+		assertEquals(240 + 1 - Highlighter.LEAD, found.get(0).getStart());
+		assertTrue(found.get(0).getSnippet().startsWith("ipsum lorem "));
+		assertEquals(Highlighter.LEAD, found.get(0).getSnippet().indexOf("Needle"));
+		assertEquals(1, found.get(1).getStart());
+	}
+
+	@Test
+	void testFindTextByIdIn() {
+		//given
+		Page first = pageRepository.save(create("textfirst", "first text"));
+		Page second = pageRepository.save(create("textsecond", "second text"));
+		pageRepository.save(create("textthird", "third text"));
+
+		//when
+		List<PageText> texts = pageRepository.findTextByIdIn(List.of(first.getId(), second.getId()));
+
+		//then
+		assertEquals(2, texts.size());
+		assertTrue(texts.stream().anyMatch(text -> text.getId().equals(first.getId()) && text.getText().equals("first text")));
+		assertTrue(texts.stream().anyMatch(text -> text.getTitle().equals("textsecond")));
+	}
+
+	@Test
+	void testSearchFullText() {
+		//given
+		pageRepository.save(create("fulltext kiwi", "a page about fruit"));
+		pageRepository.save(create("fulltext other", "kiwi kiwi, a kiwi page that only mentions kiwi in its text"));
+		pageRepository.save(create("fulltext unrelated", "nothing to see"));
+		entityManager.flush();
+
+		//when
+		List<PageSnippet> found = pageRepository.searchFullText("\"kiwi\"*", 10.0, Highlighter.ELLIPSIS, PageRequest.of(0, 10));
+
+		//then
+		assertEquals(2, found.size());
+		assertEquals("fulltext kiwi", found.get(0).getTitle());
+		assertEquals("fulltext other", found.get(1).getTitle());
+		assertTrue(found.get(1).getSnippet().startsWith(Highlighter.MARK + "kiwi" + Highlighter.UNMARK));
+	}
+
+	@Test
+	void testSearchFullTextGrams() {
+		//given
+		Page page = saveIndexed("fulltext 한국어", "키위는 작은 위키입니다");
+		saveIndexed("fulltext 위키백과", "another wiki");
+		entityManager.flush();
+
+		//when
+		List<Long> inside = pageRepository.findIdByFullText(FullTextIndex.match("위키"), 10.0, PageRequest.of(0, 10));
+		long phrase = pageRepository.countFullText(FullTextIndex.match("작은 위키"), 1000);
+		long none = pageRepository.countFullText(FullTextIndex.match("위키키"), 1000);
+
+		//then
+		assertEquals(2, inside.size());
+		assertTrue(inside.contains(page.getId()));
+		assertEquals(1, phrase);
+		assertEquals(0, none);
+	}
+
+	@Test
+	void testSearchInvertedPrefix() {
+		//given
+		saveIndexed("prefix 위키", "키위는 작은 위키입니다");
+		saveIndexed("prefix 집", "우리 집 위에 있는 wikis");
+		saveIndexed("prefix other", "nothing to see");
+		entityManager.flush();
+		InvertedIndex invertedIndex = new InvertedIndex(jdbcTemplate, true, 10.0);
+		invertedIndex.create();
+
+		//then
+		for (String query : new String[] {"위", "집", "wik", "prefix 위", "작은 위키"}) {
+			Set<Long> fullText = new HashSet<>(pageRepository.findIdByFullText(FullTextIndex.match(query), 10.0, PageRequest.of(0, 10)));
+			Set<Long> inverted = new HashSet<>(invertedIndex.search(query, 0, 10));
+			assertFalse(fullText.isEmpty(), query);
+			assertEquals(fullText, inverted, query);
+		}
+	}
+
+	//a database from before the index has pages without grams
+	@Test
+	void testFullTextCreate() {
+		//given
+		for (String statement : new String[] {"drop trigger pages_fts_insert", "drop trigger pages_fts_delete", "drop trigger pages_fts_update", "drop table pages_fts"}) {
+			jdbcTemplate.execute(statement);
+		}
+		jdbcTemplate.update("insert into pages (title, text) values ('fulltextcreate', '키위는 작은 위키입니다')");
+
+		//when
+		new FullTextIndex(jdbcTemplate, true).create();
+
+		//then
+		assertEquals("키위 위는 작은 위키 키입 입니 니다", jdbcTemplate.queryForObject("select grams from pages where title = 'fulltextcreate'", String.class));
+		assertEquals(1, pageRepository.countFullText(FullTextIndex.match("위키"), 1000));
+	}
+
+	@Test
+	void testSearchFullTextUpdate() {
+		//given
+		Page page = pageRepository.save(create("fulltextupdate", "before the edit"));
+		entityManager.flush();
+
+		//when
+		page.change("fulltextupdate", "after the edit");
+		page.render("<p>after the edit</p>", "after the edit");
+		entityManager.flush();
+
+		//then
+		assertEquals(0, pageRepository.searchFullText("\"before\"", 10.0, Highlighter.ELLIPSIS, PageRequest.of(0, 10)).size());
+		assertEquals(1, pageRepository.searchFullText("\"after\"", 10.0, Highlighter.ELLIPSIS, PageRequest.of(0, 10)).size());
+	}
+
+	@Test
+	void testSearchPage() {
+		//given
+		for (int i = 0; i < 25; i++) {
+			pageRepository.save(create("searchpage" + i, "paged content " + i));
+		}
+		entityManager.flush();
+
+		//when
+		List<PageWindow> second = pageRepository.search("paged content", "paged content", Highlighter.LEAD, PageRequest.of(1, 10));
+		List<PageSnippet> third = pageRepository.searchFullText("\"paged\"*", 10.0, Highlighter.ELLIPSIS, PageRequest.of(2, 10));
+		long count = pageRepository.countSearch("paged content", 1000);
+		long bounded = pageRepository.countSearch("paged content", 20);
+		long fullText = pageRepository.countFullText("\"paged\"*", 1000);
+
+		//then
+		assertEquals(10, second.size());
+		assertEquals("searchpage10", second.get(0).getTitle());
+		assertEquals("searchpage19", second.get(9).getTitle());
+		assertEquals(5, third.size());
+		assertEquals(25, count);
+		assertEquals(20, bounded);
+		assertEquals(25, fullText);
+	}
+
+	//a benchmark, run with -Dkiwi.bench.pages=100000
+	@EnabledIfSystemProperty(named = "kiwi.bench.pages", matches = "\\d+")
+	@Test
+	void testSearchBench() {
+		//given
+		int number = Integer.getInteger("kiwi.bench.pages", 2000);
+		String[] words = "lorem ipsum dolor sit amet consectetur adipiscing elit sed do eiusmod tempor".split(" ");
+		List<Page> pages = new ArrayList<>();
+		for (int i = 0; i < number; i++) {
+			StringBuilder content = new StringBuilder("# bench ").append(i).append("\n\n");
+			for (int j = 0; j < 60; j++) {
+				content.append(words[(i * 7 + j * 3) % words.length]).append(' ');
+			}
+			content.append(i % 100 == 0 ? "needle" : "hay");
+			pages.add(create("bench" + i, content.toString()));
+		}
+		pageRepository.saveAll(pages);
+		entityManager.flush();
+		entityManager.clear();
+
+		//when
+		long start = System.nanoTime();
+		List<PageWindow> like = pageRepository.search("needle", "needle", Highlighter.LEAD, Pageable.unpaged());
+		long likeNanos = System.nanoTime() - start;
+		start = System.nanoTime();
+		List<PageSnippet> fullText = pageRepository.searchFullText("\"needle\"*", 10.0, Highlighter.ELLIPSIS, Pageable.unpaged());
+		long fullTextNanos = System.nanoTime() - start;
+		InvertedIndex invertedIndex = new InvertedIndex(jdbcTemplate, true, 10.0);
+		invertedIndex.create();
+		start = System.nanoTime();
+		List<Long> inverted = invertedIndex.search("needle", 0, number);
+		long invertedNanos = System.nanoTime() - start;
+		start = System.nanoTime();
+		List<PageWindow> all = pageRepository.search("hay", "hay", Highlighter.LEAD, Pageable.unpaged());
+		long allNanos = System.nanoTime() - start;
+		start = System.nanoTime();
+		List<PageWindow> page = pageRepository.search("hay", "hay", Highlighter.LEAD, PageRequest.of(0, 10));
+		long count = pageRepository.countSearch("hay", 1000);
+		long pageNanos = System.nanoTime() - start;
+
+		//then
+		log.info("{} pages searched with like in {} us, with fts5 in {} us, in memory in {} us", number, likeNanos / 1000, fullTextNanos / 1000, invertedNanos / 1000);
+		log.info("{} pages indexed in memory in {} ms, {} bytes a page", invertedIndex.getDocuments(), invertedIndex.getBuildNanos() / 1000000, invertedIndex.getBytes() / invertedIndex.getDocuments());
+		log.info("{} matches read with like in {} us, one page and a bounded count in {} us", all.size(), allNanos / 1000, pageNanos / 1000);
+		assertEquals(like.size(), fullText.size());
+		assertEquals((number + 99) / 100, fullText.size());
+		assertEquals(fullText.size(), inverted.size());
+		assertEquals(10, page.size());
+		assertEquals(Math.min(all.size(), 1000), count);
+	}
+
+	//a benchmark, run with -Dkiwi.bench.pages=50000
+	@EnabledIfSystemProperty(named = "kiwi.bench.pages", matches = "\\d+")
+	@Test
+	void testProjectionMemory() {
+		//given
+		int number = Integer.getInteger("kiwi.bench.pages", 2000);
+		String content = "# projection\n\n" + "lorem ipsum dolor sit amet ".repeat(80);
+		List<Page> pages = new ArrayList<>();
+		for (int i = 0; i < number; i++) {
+			pages.add(create("projection" + i, content + i));
+		}
+		pageRepository.saveAll(pages);
+		entityManager.flush();
+		entityManager.clear();
+
+		//when
+		long entities = allocated(() -> pageRepository.findAll());
+		entityManager.clear();
+		long titles = allocated(() -> pageRepository.findTitleBy(PageRequest.of(0, number)));
+		entityManager.clear();
+		long snippets = allocated(() -> pageRepository.search("projection", "projection", Highlighter.LEAD, Pageable.unpaged()));
+
+		//then
+		log.info("{} pages allocated entities {}, titles {}, snippets {} bytes", number, entities, titles, snippets);
+		assertTrue(titles < entities);
+		assertTrue(snippets < entities);
+	}
+
+	private long allocated(Supplier<List<?>> query) {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long id = Thread.currentThread().getId();
+		long before = bean.getThreadAllocatedBytes(id);
+		List<?> result = query.get();
+		long after = bean.getThreadAllocatedBytes(id);
+		assertFalse(result.isEmpty());
+		return after - before;
+	}
+
 }
@@ -2,7 +2,7 @@ package sanko.kiwi.domain.page;
 
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertTrue
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertTrue, assertFalse, assertNull
 
 class PageTest {
 
@@ -10,9 +10,7 @@ class PageTest {
 	void testPageBuilder() {
 		//given
 		String title = "title";
-		String heading = "heading";
-		String paragraph = "paragraph";
-		String content = String.format("# %s\n\n%s", heading, paragraph);
+		String content = "# heading\n\nparagraph";
 
 		//when
 		Page page = Page.builder()
@@ -23,58 +21,55 @@ class PageTest {
 		//then
 		assertEquals(title, page.getTitle());
 		assertEquals(content, page.getContent());
-		assertTrue(page.getHtml().contains("<h1>"));
-		assertTrue(page.getHtml().contains("<p>"));
-		assertTrue(page.getHtml().contains(heading));
-		assertTrue(page.getHtml().contains(paragraph));
+		assertEquals(0L, page.getGeneration());
+		assertNull(page.getHtml());
+		assertFalse(page.isRendered());
 	}
 
 	@Test
-	void testPageLink() {
+	void testPageRender() {
 		//given
-		String prefix = "pagelink";
-		String title = prefix + "title";
-		String content = "[[test]]";
-
-		//when
+		String title = "rendertitle";
+		String content = "rendercontent";
 		Page page = Page.builder()
 			.title(title)
 			.content(content)
 			.build();
 
+		//when
+		page.render("<p>rendercontent</p>", "rendercontent");
+
 		//then
-		assertEquals(title, page.getTitle());
-		assertEquals(content, page.getContent());
-		assertTrue(page.getHtml().contains("<a"));
-		assertTrue(page.getHtml().contains("/wiki/test"));
+		assertEquals("<p>rendercontent</p>", page.getHtml());
+		assertEquals("rendercontent", page.getText());
+		assertEquals(0L, page.getRenderGeneration());
+		assertTrue(page.isRendered());
 	}
 
 	@Test
-	void testPageUpdate() {
+	void testPageChange() {
 		//given
-		String title = "updatetitle";
-		String heading = "updateheading";
-		String paragraph = "updateparagraph";
-		String content = String.format("# %s\n\n%s", heading, paragraph);
+		String title = "changetitle";
+		String content = "changecontent";
 		Page page = Page.builder()
 			.title(title)
 			.content(content)
 			.build();
+		page.change(title, content);
+		page.render("<p>" + content + "</p>", content);
 
 		//when
-		String newTitle = "updatenewtitle";
-		String newHeading = "updatenewheading";
-		String newParagraph = "updatenewparagraph";
-		String newContent = String.format("# %s\n\n%s", newHeading, newParagraph);
-		page.update(newTitle, newContent);
+		String newTitle = "changenewtitle";
+		String newContent = "changenewcontent";
+		page.change(newTitle, newContent);
 
 		//then
 		assertEquals(newTitle, page.getTitle());
 		assertEquals(newContent, page.getContent());
-		assertTrue(page.getHtml().contains("<h1>"));
-		assertTrue(page.getHtml().contains("<p>"));
-		assertTrue(page.getHtml().contains(newHeading));
-		assertTrue(page.getHtml().contains(newParagraph));
+		assertEquals(2L, page.getGeneration());
+		assertEquals(1L, page.getRenderGeneration());
+		assertFalse(page.isRendered());
+		assertTrue(page.getHtml().contains(content));
 	}
 
 }
@@ -0,0 +1,157 @@
+package sanko.kiwi.job;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.HexFormat;
+
+import org.springframework.boot.test.autoconfigure.orm.jpa.*; //DataJpaTest, TestEntityManager
+import org.springframework.context.annotation.Import;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import lombok.extern.slf4j.Slf4j;
+
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertTrue, assertFalse
+
+import sanko.kiwi.domain.page.*; //Page, PageRepository
+import sanko.kiwi.domain.history.*; //History, HistoryRepository, Revision
+import sanko.kiwi.domain.dictionary.Dictionary;
+import sanko.kiwi.compress.Compressor;
+import sanko.kiwi.service.HistoryService;
+import sanko.kiwi.cache.RevisionCache;
+import sanko.kiwi.lock.LockManager;
+import sanko.kiwi.diff.DiffService;
+
+@Slf4j
+@DataJpaTest(properties = {"kiwi.job.dictionary=true", "kiwi.compress.enabled=true", "kiwi.compress.dictionary-size=8192"})
+@Import({DictionaryJob.class, PageBatch.class, LockManager.class, Compressor.class, HistoryService.class, RevisionCache.class, DiffService.class})
+class DictionaryJobTest {
+
+	@Autowired
+	private DictionaryJob dictionaryJob;
+
+	@Autowired
+	private Compressor compressor;
+
+	@Autowired
+	private HistoryService historyService;
+
+	@Autowired
+	private PageRepository pageRepository;
+
+	@Autowired
+	private HistoryRepository historyRepository;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	private String markdown(int page, int event) {
+		return "# page " + page + "\n\n"
+			+ "the kiwi is a flightless bird endemic to new zealand. see [kiwi](/wiki/kiwi) and [[bird]].\n\n"
+			+ "## habitat\n\n- forest\n- scrub\n- grassland " + event + "\n\n"
+			+ "## see also\n\n- [weka](/wiki/weka)\n- [kakapo](/wiki/kakapo)\n";
+	}
+
+	private Page createPage(int number, int events) {
+		String title = "dictionarypage" + number;
+		Page page = pageRepository.save(new Page(title, ""));
+		for (int event = 1; event <= events; event++) {
+			String content = markdown(number, event);
+			historyService.save(page, title, "summary", content);
+			page.change(title, content);
+		}
+		return page;
+	}
+
+	//the sqlite driver hands blobs to native queries only as hex
+	private byte[] column(String sql, Long id) {
+		String hex = (String) entityManager.getEntityManager()
+			.createNativeQuery(sql)
+			.setParameter(1, id)
+			.getSingleResult();
+		return HexFormat.of().parseHex(hex);
+	}
+
+	@Test
+	void testLegacyText() {
+		//given
+		entityManager.getEntityManager()
+			.createNativeQuery("insert into pages (title, content) values ('dictionarylegacy', 'plain legacy content')")
+			.executeUpdate();
+
+		//when
+		Page page = pageRepository.findOneByTitle("dictionarylegacy");
+
+		//then
+		assertEquals("plain legacy content", page.getContent());
+	}
+
+	@Test
+	void testTrainAndRecompress() {
+		//given
+		List<Page> pages = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			pages.add(createPage(i, 3));
+		}
+		entityManager.flush();
+		byte[] before = column("select hex(content) from pages where id = ?1", pages.get(0).getId());
+
+		//when
+		Dictionary dictionary = dictionaryJob.train();
+		int count = dictionaryJob.recompress(pages.get(0).getId());
+		entityManager.flush();
+		entityManager.clear();
+
+		//then
+		byte[] after = column("select hex(content) from pages where id = ?1", pages.get(0).getId());
+		assertEquals(dictionary.getVersion(), compressor.getVersion());
+		assertTrue(dictionary.getBytes().length <= 8192);
+		assertEquals(4, count);
+		assertEquals("blob", entityManager.getEntityManager().createNativeQuery("select typeof(content) from pages where id = ?1").setParameter(1, pages.get(0).getId()).getSingleResult());
+		assertEquals(0, after[0]);
+		assertEquals(dictionary.getVersion(), (int) after[1]);
+		assertTrue(after.length < before.length);
+		assertEquals(markdown(0, 3), pageRepository.findById(pages.get(0).getId()).get().getContent());
+		Revision revision = historyService.rebuild(pageRepository.findById(pages.get(0).getId()).get(), 2);
+		assertEquals(markdown(0, 2), revision.getContent());
+	}
+
+	//a benchmark, run with -Dkiwi.bench.pages=500
+	@EnabledIfSystemProperty(named = "kiwi.bench.pages", matches = "\\d+")
+	@Test
+	void testCompressBench() {
+		//given
+		int number = Integer.getInteger("kiwi.bench.pages", 40);
+		int events = 10;
+		List<Page> pages = new ArrayList<>();
+		for (int i = 0; i < number; i++) {
+			pages.add(createPage(i, events));
+		}
+		entityManager.flush();
+		dictionaryJob.train();
+		long raw = compressor.getRaw();
+		long stored = compressor.getStored();
+		for (Page page : pages) {
+			dictionaryJob.recompress(page.getId());
+		}
+		raw = compressor.getRaw() - raw;
+		stored = compressor.getStored() - stored;
+		entityManager.flush();
+		entityManager.clear();
+
+		//when
+		long inflateNanos = compressor.getInflateNanos();
+		long start = System.nanoTime();
+		for (Page page : pages) {
+			Page found = pageRepository.findById(page.getId()).get();
+			assertEquals(markdown(pages.indexOf(page), events - 1), historyService.rebuild(found, events - 1).getContent());
+		}
+		long replayNanos = System.nanoTime() - start;
+		inflateNanos = compressor.getInflateNanos() - inflateNanos;
+
+		//then
+		log.info("{} pages compressed {} bytes into {} bytes, replay {} us of which inflate {} us", number, raw, stored, replayNanos / 1000, inflateNanos / 1000);
+		assertTrue(stored < raw);
+	}
+
+}
@@ -0,0 +1,64 @@
+package sanko.kiwi.job;
+
+import java.util.List;
+
+import org.springframework.boot.test.autoconfigure.orm.jpa.*; //DataJpaTest, TestEntityManager
+import org.springframework.context.annotation.Import;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.junit.jupiter.api.Test;
+
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertTrue, assertFalse
+
+import sanko.kiwi.domain.page.*; //Page, PageRepository
+import sanko.kiwi.domain.history.*; //History, HistoryRepository
+import sanko.kiwi.service.HistoryService;
+import sanko.kiwi.cache.RevisionCache;
+import sanko.kiwi.lock.LockManager;
+import sanko.kiwi.diff.DiffService;
+
+@DataJpaTest(properties = {"kiwi.job.diff=true"})
+@Import({DiffJob.class, PageBatch.class, LockManager.class, HistoryService.class, RevisionCache.class, DiffService.class})
+class DiffJobTest {
+
+	@Autowired
+	private DiffJob diffJob;
+
+	@Autowired
+	private PageRepository pageRepository;
+
+	@Autowired
+	private HistoryRepository historyRepository;
+
+	@Autowired
+	private HistoryService historyService;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Test
+	void testBackfill() {
+		//given
+		Page page = pageRepository.save(new Page("difftitle", "diff content"));
+		History history = historyRepository.save(historyService.create(page, 1, "diffsummary", "newdifftitle", "new diff content", false, null));
+		String titleDiff = history.getTitleDiff();
+		String contentDiff = history.getContentDiff();
+		setField(history, "titleDiff", null);
+		setField(history, "contentDiff", null);
+		entityManager.flush();
+		entityManager.clear();
+
+		//when
+		int count = diffJob.backfill(page.getId());
+		int again = diffJob.backfill(page.getId());
+
+		//then
+		List<History> historys = historyRepository.findByPageIdOrderByEventAsc(page.getId());
+		assertEquals(1, count);
+		assertEquals(0, again);
+		assertTrue(historys.get(0).isDiffRendered());
+		assertEquals(titleDiff, historys.get(0).getTitleDiff());
+		assertEquals(contentDiff, historys.get(0).getContentDiff());
+	}
+
+}
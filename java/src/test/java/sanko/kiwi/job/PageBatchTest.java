@@ -0,0 +1,124 @@
+package sanko.kiwi.job;
+
+import java.util.*; //List, ArrayList, Collections
+import java.util.concurrent.*; //CountDownLatch, ExecutorService, Executors, Future
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertTrue, assertFalse
+
+import sanko.kiwi.domain.page.*; //Page, PageRepository
+import sanko.kiwi.lock.LockManager;
+
+@DataJpaTest
+@Import({PageBatch.class, LockManager.class})
+@TestPropertySource(properties = "kiwi.lock.wait=200")
+class PageBatchTest {
+
+	@Autowired
+	private PageBatch pageBatch;
+
+	@Autowired
+	private PageRepository pageRepository;
+
+	@Autowired
+	private LockManager lockManager;
+
+	@Test
+	void testRun() {
+		//given
+		List<Long> created = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			created.add(pageRepository.save(new Page("batchtitle" + i, "batch content")).getId());
+		}
+		List<Long> visited = new ArrayList<>();
+
+		//when
+		int count = pageBatch.run("test", pageId -> {
+			visited.add(pageId);
+			return created.contains(pageId) ? 2 : 0;
+		});
+
+		//then
+		List<Long> sorted = new ArrayList<>(visited);
+		Collections.sort(sorted);
+		assertEquals(6, count);
+		assertTrue(visited.containsAll(created));
+		assertEquals(sorted, visited);
+	}
+
+	@Test
+	void testRunLocked() throws Exception {
+		//given
+		String title = "batchlockedtitle";
+		Long id = pageRepository.save(new Page(title, "batch content")).getId();
+		int[] stripes = lockManager.stripes(title);
+		CountDownLatch held = new CountDownLatch(1);
+		AtomicLong released = new AtomicLong();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Future<?> edit = executor.submit(() -> {
+			lockManager.acquire(stripes);
+			held.countDown();
+			Thread.sleep(300);
+			released.set(System.nanoTime());
+			lockManager.release(stripes);
+			return null;
+		});
+		held.await();
+
+		//when
+		AtomicLong visited = new AtomicLong();
+		pageBatch.run("test", pageId -> {
+			if (pageId.equals(id)) {
+				visited.set(System.nanoTime());
+			}
+			return 0;
+		});
+		edit.get();
+		executor.shutdown();
+
+		//then
+		assertTrue(released.get() > 0);
+		assertTrue(visited.get() > released.get());
+	}
+
+	@Test
+	void testRunLockedSkipped() throws Exception {
+		//given
+		String title = "batchskippedtitle";
+		Long id = pageRepository.save(new Page(title, "batch content")).getId();
+		Long other = pageRepository.save(new Page("batchothertitle", "batch content")).getId();
+		int[] stripes = lockManager.stripes(title);
+		CountDownLatch held = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Future<?> edit = executor.submit(() -> {
+			lockManager.acquire(stripes);
+			held.countDown();
+			done.await();
+			lockManager.release(stripes);
+			return null;
+		});
+		held.await();
+
+		//when
+		List<Long> visited = new ArrayList<>();
+		pageBatch.run("test", pageId -> {
+			visited.add(pageId);
+			return 0;
+		});
+		done.countDown();
+		edit.get();
+		executor.shutdown();
+
+		//then
+		assertFalse(visited.contains(id));
+		assertTrue(visited.contains(other));
+	}
+
+}
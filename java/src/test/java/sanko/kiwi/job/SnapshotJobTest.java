@@ -0,0 +1,62 @@
+package sanko.kiwi.job;
+
+import java.util.List;
+
+import org.springframework.boot.test.autoconfigure.orm.jpa.*; //DataJpaTest, TestEntityManager
+import org.springframework.context.annotation.Import;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertTrue, assertFalse
+
+import sanko.kiwi.domain.page.*; //Page, PageRepository
+import sanko.kiwi.domain.history.*; //History, HistoryRepository
+import sanko.kiwi.service.HistoryService;
+import sanko.kiwi.cache.RevisionCache;
+import sanko.kiwi.lock.LockManager;
+import sanko.kiwi.diff.DiffService;
+
+@DataJpaTest(properties = {"kiwi.job.snapshot=true", "kiwi.history.snapshot-interval=2"})
+@Import({SnapshotJob.class, PageBatch.class, LockManager.class, HistoryService.class, RevisionCache.class, DiffService.class})
+class SnapshotJobTest {
+
+	@Autowired
+	private SnapshotJob snapshotJob;
+
+	@Autowired
+	private PageRepository pageRepository;
+
+	@Autowired
+	private HistoryRepository historyRepository;
+
+	@Autowired
+	private HistoryService historyService;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Test
+	void testBackfill() {
+		//given
+		Page page = pageRepository.save(new Page("", ""));
+		for (int event = 1; event <= 5; event++) {
+			String title = "backfilltitle" + event;
+			String content = "backfillcontent" + event;
+			historyRepository.save(historyService.create(page, event, "backfillsummary", title, content, false, null));
+			page.change(title, content);
+		}
+		entityManager.flush();
+
+		//when
+		int count = snapshotJob.backfill(page.getId());
+
+		//then
+		List<History> historys = historyRepository.findByPageIdOrderByEventAsc(page.getId());
+		assertEquals(2, count);
+		assertFalse(historys.get(0).isSnapshot());
+		assertTrue(historys.get(1).isSnapshot());
+		assertEquals("backfilltitle2", historys.get(1).getSnapshotTitle());
+		assertEquals("backfillcontent4", historys.get(3).getSnapshotContent());
+	}
+
+}
@@ -0,0 +1,174 @@
+package sanko.kiwi.job;
+
+import java.util.*; //List, ArrayList
+
+import org.springframework.boot.test.autoconfigure.orm.jpa.*; //DataJpaTest, TestEntityManager
+import org.springframework.context.annotation.Import;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.junit.jupiter.api.*; //Test, AfterEach
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import lombok.extern.slf4j.Slf4j;
+
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertTrue, assertFalse
+
+import sanko.kiwi.domain.page.*; //Page, PageRepository
+import sanko.kiwi.domain.history.*; //History, HistoryRepository, Revision
+import sanko.kiwi.service.HistoryService;
+import sanko.kiwi.cache.RevisionCache;
+import sanko.kiwi.lock.LockManager;
+import sanko.kiwi.diff.DiffService;
+
+@Slf4j
+@DataJpaTest(properties = {"kiwi.job.storage=true", "kiwi.history.snapshot-interval=4"})
+@Import({StorageJob.class, PageBatch.class, LockManager.class, HistoryService.class, RevisionCache.class, DiffService.class})
+class StorageJobTest {
+
+	@Autowired
+	private StorageJob storageJob;
+
+	@Autowired
+	private HistoryService historyService;
+
+	@Autowired
+	private PageRepository pageRepository;
+
+	@Autowired
+	private HistoryRepository historyRepository;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@AfterEach
+	void resetStorage() {
+		setField(historyService, "reverse", false);
+	}
+
+	private Page createHistory(String prefix, int number) {
+		Page page = pageRepository.save(new Page("", ""));
+		StringBuilder content = new StringBuilder();
+		for (int event = 1; event <= number; event++) {
+			String title = prefix + "title" + (event / 3);
+			content.append("line ").append(event).append(" of ").append(prefix).append('\n');
+			if (event % 5 == 0) {
+				content.delete(0, content.indexOf("\n") + 1);
+			}
+			historyService.save(page, title, "summary", content.toString());
+			page.change(title, content.toString());
+		}
+		//old heads lose their snapshots through a bulk update the persistence context does not see
+		entityManager.flush();
+		entityManager.clear();
+		return page;
+	}
+
+	private List<Revision> rebuildAll(Page page, int number) {
+		List<Revision> revisions = new ArrayList<>();
+		for (int event = 1; event <= number; event++) {
+			revisions.add(historyService.rebuild(page, event));
+		}
+		return revisions;
+	}
+
+	private void assertRevisions(List<Revision> expected, List<Revision> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getTitle(), actual.get(i).getTitle());
+			assertEquals(expected.get(i).getContent(), actual.get(i).getContent());
+		}
+	}
+
+	@Test
+	void testSaveReverse() {
+		//given
+		setField(historyService, "reverse", true);
+		int number = 9;
+
+		//when
+		Page page = createHistory("savereverse", number);
+
+		//then
+		List<History> historys = historyRepository.findByPageIdOrderByEventAsc(page.getId());
+		assertTrue(historys.stream().allMatch(History::isReverse));
+		assertTrue(historys.get(8).isSnapshot());
+		assertTrue(historys.get(3).isSnapshot());
+		assertFalse(historys.get(6).isSnapshot());
+		Revision latest = historyService.rebuild(page, number);
+		assertEquals(page.getTitle(), latest.getTitle());
+		assertEquals(page.getContent(), latest.getContent());
+	}
+
+	@Test
+	void testConvert() {
+		//given
+		int number = 11;
+		Page page = createHistory("convert", number);
+		List<Revision> forward = rebuildAll(page, number);
+
+		//when
+		setField(historyService, "reverse", true);
+		boolean converted = storageJob.convert(page.getId());
+		boolean again = storageJob.convert(page.getId());
+		entityManager.flush();
+		entityManager.clear();
+
+		//then
+		assertTrue(converted);
+		assertFalse(again);
+		List<History> historys = historyRepository.findByPageIdOrderByEventAsc(page.getId());
+		assertTrue(historys.stream().allMatch(History::isReverse));
+		assertTrue(historys.get(number - 1).isSnapshot());
+		Page found = pageRepository.findById(page.getId()).get();
+		assertRevisions(forward, rebuildAll(found, number));
+
+		//when
+		setField(historyService, "reverse", false);
+		storageJob.convert(page.getId());
+		entityManager.flush();
+		entityManager.clear();
+
+		//then
+		historys = historyRepository.findByPageIdOrderByEventAsc(page.getId());
+		assertFalse(historys.stream().anyMatch(History::isReverse));
+		assertFalse(historys.get(number - 1).isSnapshot());
+		found = pageRepository.findById(page.getId()).get();
+		assertRevisions(forward, rebuildAll(found, number));
+	}
+
+	//a benchmark, run with -Dkiwi.bench.events=2000
+	@EnabledIfSystemProperty(named = "kiwi.bench.events", matches = "\\d+")
+	@Test
+	void testStorageBench() {
+		//given
+		int number = Integer.getInteger("kiwi.bench.events", 200);
+		int recent = 10;
+		setField(historyService, "snapshotInterval", 50);
+		Page forwardPage = createHistory("benchforward", number);
+		setField(historyService, "reverse", true);
+		Page reversePage = createHistory("benchreverse", number);
+		entityManager.clear();
+
+		//when
+		long start = System.nanoTime();
+		List<Revision> forward = new ArrayList<>();
+		for (int event = number - recent + 1; event <= number; event++) {
+			forward.add(historyService.rebuild(forwardPage, event));
+		}
+		long forwardNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		List<Revision> reverse = new ArrayList<>();
+		for (int event = number - recent + 1; event <= number; event++) {
+			reverse.add(historyService.rebuild(reversePage, event));
+		}
+		long reverseNanos = System.nanoTime() - start;
+		setField(historyService, "snapshotInterval", 4);
+
+		//then
+		log.info("{} events, last {} revisions forward {} us, reverse {} us", number, recent, forwardNanos / 1000, reverseNanos / 1000);
+		for (int i = 0; i < recent; i++) {
+			assertEquals(forward.get(i).getContent().replace("benchforward", ""), reverse.get(i).getContent().replace("benchreverse", ""));
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package sanko.kiwi.lock;
+
+import java.util.concurrent.*; //CountDownLatch, ExecutorService, Executors, Future
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertTrue, assertFalse, assertArrayEquals
+
+class LockManagerTest {
+
+	//holds the stripes on another thread until released, stripes are reentrant for the thread holding them
+	private Future<?> hold(ExecutorService executor, LockManager lockManager, int[] stripes, CountDownLatch held, CountDownLatch release) {
+		return executor.submit(() -> {
+			lockManager.acquire(stripes);
+			held.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			lockManager.release(stripes);
+			return null;
+		});
+	}
+
+	@Test
+	void testStripes() {
+		//given
+		LockManager lockManager = new LockManager(64, 100);
+
+		//when
+		int[] same = lockManager.stripes("kiwi", " kiwi ", "kiwi");
+		int[] both = lockManager.stripes("kiwi", "wiki");
+
+		//then
+		assertEquals(1, same.length);
+		assertTrue(both.length == 1 || both[0] < both[1]);
+		assertArrayEquals(lockManager.stripes("wiki", "kiwi"), both);
+	}
+
+	@Test
+	void testAcquire() {
+		//given
+		LockManager lockManager = new LockManager(64, 100);
+		int[] stripes = lockManager.stripes("acquiretitle");
+
+		//when
+		boolean acquired = lockManager.acquire(stripes);
+		lockManager.release(stripes);
+
+		//then
+		assertTrue(acquired);
+		assertEquals(1, lockManager.getAcquisitions());
+		assertEquals(0, lockManager.getContentions());
+	}
+
+	@Test
+	void testAcquireTimeout() throws Exception {
+		//given
+		LockManager lockManager = new LockManager(64, 100);
+		int[] stripes = lockManager.stripes("timeouttitle");
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		CountDownLatch held = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<?> holder = hold(executor, lockManager, stripes, held, release);
+		held.await();
+
+		//when
+		boolean acquired = lockManager.acquire(stripes);
+		release.countDown();
+		holder.get();
+		boolean after = lockManager.acquire(stripes);
+		lockManager.release(stripes);
+		executor.shutdown();
+
+		//then
+		assertFalse(acquired);
+		assertTrue(after);
+		assertEquals(1, lockManager.getTimeouts());
+		assertTrue(lockManager.getWaitNanos() >= 100000000L);
+	}
+
+	@Test
+	void testAcquireContended() throws Exception {
+		//given
+		LockManager lockManager = new LockManager(64, 5000);
+		int[] stripes = lockManager.stripes("contendedtitle");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		CountDownLatch held = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<?> holder = hold(executor, lockManager, stripes, held, release);
+		held.await();
+
+		//when
+		executor.submit(() -> {
+			Thread.sleep(50);
+			release.countDown();
+			return null;
+		});
+		boolean acquired = lockManager.acquire(stripes);
+		lockManager.release(stripes);
+		holder.get();
+		executor.shutdown();
+
+		//then
+		assertTrue(acquired);
+		assertEquals(1, lockManager.getContentions());
+		assertEquals(0, lockManager.getTimeouts());
+	}
+
+}
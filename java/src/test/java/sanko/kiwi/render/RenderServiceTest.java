@@ -0,0 +1,147 @@
+package sanko.kiwi.render;
+
+import java.util.*; //List, Collections
+
+import org.junit.jupiter.api.Test;
+import org.commonmark.Extension;
+import org.commonmark.renderer.html.HtmlRenderer;
+
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertTrue
+
+class RenderServiceTest {
+
+	@Test
+	void testRender() {
+		//given
+		RenderService renderService = new RenderService(Collections.emptyList());
+		String heading = "heading";
+		String paragraph = "paragraph";
+		String content = String.format("# %s\n\n%s", heading, paragraph);
+
+		//when
+		Rendered rendered = renderService.render(content);
+
+		//then
+		assertTrue(rendered.getHtml().contains("<h1>" + heading + "</h1>"));
+		assertTrue(rendered.getHtml().contains("<p>" + paragraph + "</p>"));
+		assertEquals(heading + " " + paragraph, rendered.getText());
+	}
+
+	@Test
+	void testRenderLink() {
+		//given
+		RenderService renderService = new RenderService(Collections.emptyList());
+		String content = "[[link]] and [[not/link]]";
+
+		//when
+		Rendered rendered = renderService.render(content);
+
+		//then
+		assertTrue(rendered.getHtml().contains("<a href=\"/wiki/link\">link</a>"));
+		assertTrue(rendered.getHtml().contains("[[not/link]]"));
+	}
+
+	@Test
+	void testRenderExtension() {
+		//given
+		HtmlRenderer.HtmlRendererExtension extension = builder -> builder.softbreak("<br>");
+		List<Extension> extensions = List.of(extension);
+		RenderService renderService = new RenderService(extensions);
+
+		//when
+		Rendered rendered = renderService.render("first\nsecond");
+
+		//then
+		assertTrue(rendered.getHtml().contains("first<br>second"));
+	}
+
+	@Test
+	void testRenderCount() {
+		//given
+		RenderService renderService = new RenderService(Collections.emptyList());
+
+		//when
+		renderService.render("one");
+		renderService.render("two");
+
+		//then
+		assertEquals(2, renderService.getCount());
+		assertTrue(renderService.getNanos() > 0);
+	}
+
+	@Test
+	void testRenderIncremental() {
+		//given
+		RenderService full = new RenderService(Collections.emptyList());
+		RenderService incremental = new RenderService(Collections.emptyList(), true, 100000);
+		String content = String.join("\n",
+			"# heading",
+			"",
+			"paragraph with [[link]] and [reference]",
+			"",
+			"- one",
+			"- two",
+			"",
+			"```",
+			"code",
+			"",
+			"more code",
+			"```",
+			"",
+			"> quote",
+			"",
+			"***",
+			"",
+			"<div>",
+			"html block",
+			"</div>",
+			"",
+			"    indented code",
+			"",
+			"hard  ",
+			"break",
+			"",
+			"[reference]: /wiki/reference"
+		);
+
+		//when
+		Rendered expected = full.render(content);
+		Rendered rendered = incremental.render(content);
+
+		//then
+		assertEquals(expected.getHtml(), rendered.getHtml());
+		assertEquals(expected.getText(), rendered.getText());
+	}
+
+	@Test
+	void testRenderIncrementalChangedBlock() {
+		//given
+		RenderService renderService = new RenderService(Collections.emptyList(), true, 100000);
+		String content = "# heading\n\nfirst\n\nsecond";
+		renderService.render(content);
+		long misses = renderService.getBlocks().getMisses();
+
+		//when
+		Rendered rendered = renderService.render("# heading\n\nchanged\n\nsecond");
+
+		//then
+		assertEquals(misses + 1, renderService.getBlocks().getMisses());
+		assertEquals(2, renderService.getBlocks().getHits());
+		assertEquals("<h1>heading</h1>\n<p>changed</p>\n<p>second</p>\n", rendered.getHtml());
+		assertEquals("heading changed second", rendered.getText());
+	}
+
+	@Test
+	void testRenderIncrementalReferenceChanged() {
+		//given
+		RenderService renderService = new RenderService(Collections.emptyList(), true, 100000);
+		renderService.render("[link]\n\n[link]: /old");
+
+		//when
+		Rendered rendered = renderService.render("[link]\n\n[link]: /new");
+
+		//then
+		assertTrue(rendered.getHtml().contains("href=\"/new\""));
+	}
+
+}
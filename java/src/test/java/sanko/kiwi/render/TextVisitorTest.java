@@ -0,0 +1,52 @@
+package sanko.kiwi.render;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.commonmark.node.Node;
+import org.commonmark.parser.Parser;
+import org.commonmark.renderer.html.HtmlRenderer;
+import org.jsoup.Jsoup;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TextVisitorTest {
+
+	private final Parser parser = Parser.builder().build();
+	private final HtmlRenderer renderer = HtmlRenderer.builder().build();
+
+	@Test
+	void testTextSameAsJsoup() {
+		List<String> contents = List.of(
+			"# heading\n\nparagraph",
+			"paragraph with *emphasis*, **strong** and `code  span`",
+			"soft\nbreak and hard  \nbreak",
+			"[link](/wiki/link) and ![alt text](/image.png)",
+			"- one\n- two\n  - nested\n\n1. first\n2. second",
+			"- loose\n\n- list",
+			"> quote\n>\n> > nested quote",
+			"```\ncode\n\n  indented code\n```\n\nafter code",
+			"    indented block\n\nparagraph",
+			"before\n\n---\n\nafter",
+			"entities &amp; &lt;tag&gt; &copy; &nbsp;spaced",
+			"inline <b>html</b> and<br>break",
+			"<div>\nhtml <i>block</i>\n</div>\n\nparagraph",
+			"한국어 문단\n\n## 제목\n\n- 목록",
+			"   lots   of    spaces   ",
+			""
+		);
+
+		for (String content : contents) {
+			//given
+			Node node = parser.parse(content);
+			String html = renderer.render(node);
+
+			//when
+			String text = TextVisitor.text(node);
+
+			//then
+			assertEquals(Jsoup.parse(html).text(), text, content);
+		}
+	}
+
+}
@@ -0,0 +1,28 @@
+package sanko.kiwi.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertNull
+
+class FullTextIndexTest {
+
+	@Test
+	void testMatch() {
+		//when
+		String words = FullTextIndex.match("kiwi  wiki");
+		String operators = FullTextIndex.match("\"kiwi\" OR wiki* -(java)");
+		String none = FullTextIndex.match(" %_* ");
+		String korean = FullTextIndex.match("kiwi 위키는");
+		String mixed = FullTextIndex.match("kiwi위키");
+		String single = FullTextIndex.match("위");
+
+		//then
+		assertEquals("\"kiwi\"* \"wiki\"*", words);
+		assertEquals("\"kiwi\"* \"OR\"* \"wiki\"* \"java\"*", operators);
+		assertNull(none);
+		assertEquals("\"kiwi\"* grams : \"위키 키는\"", korean);
+		assertEquals("\"kiwi\"* grams : \"위키\"", mixed);
+		assertEquals("grams : \"위\"*", single);
+	}
+
+}
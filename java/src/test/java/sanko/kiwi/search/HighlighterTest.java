@@ -0,0 +1,48 @@
+package sanko.kiwi.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertNull
+
+class HighlighterTest {
+
+	private String show(String snippet) {
+		return snippet.replace(Highlighter.MARK, '[').replace(Highlighter.UNMARK, ']');
+	}
+
+	@Test
+	void testAround() {
+		//given
+		String text = "a wiki is a website edited by its readers. " + "filler text ".repeat(20) + "kiwi is a small wiki, kiwi runs on java.";
+
+		//when
+		String snippet = Highlighter.around(text, "kiwi OR wiki", 60);
+		String none = Highlighter.around(text, "coffee", 20);
+
+		//then
+		assertEquals("…text filler text filler text [kiwi] is a small [wiki], [kiwi] run…", show(snippet));
+		assertEquals("a wiki is a website…", none);
+		assertNull(Highlighter.around(null, "kiwi", 20));
+	}
+
+	@Test
+	void testAroundHangul() {
+		//when
+		String snippet = Highlighter.around("키위는 자바로 만든 작은 위키입니다", "자바로 위키", 100);
+
+		//then
+		assertEquals("키위는 [자바로] 만든 작은 [위키]입니다", show(snippet));
+	}
+
+	@Test
+	void testMark() {
+		//when
+		String start = Highlighter.mark("Kiwi and kiwi", 1, "kiwi", 100);
+		String cut = Highlighter.mark("the kiwi wiki goes on", 31, "kiwi", 13);
+
+		//then
+		assertEquals("[Kiwi] and [kiwi]", show(start));
+		assertEquals("…the [kiwi] wiki…", show(cut));
+	}
+
+}
@@ -0,0 +1,206 @@
+package sanko.kiwi.search;
+
+import java.util.*; //List, Map, HashMap
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertNull, assertTrue
+
+class InvertedIndexTest {
+
+	//titles by id, the index answers with ids only
+	private final Map<Long, String> titles = new HashMap<>();
+
+	private InvertedIndex createIndex() {
+		InvertedIndex index = new InvertedIndex(null, true, 10.0);
+		update(index, 1L, "kiwi", "kiwi is a small wiki written in java");
+		update(index, 2L, "java", "java runs the kiwi wiki");
+		update(index, 3L, "tea", "green tea and black tea");
+		return index;
+	}
+
+	private void update(InvertedIndex index, Long id, String title, String text) {
+		index.update(id, title, text);
+		if (title != null) {
+			titles.put(id, title);
+		}
+	}
+
+	private List<String> titles(List<Long> ids) {
+		return ids.stream()
+			.map(titles::get)
+			.collect(Collectors.toList());
+	}
+
+	@Test
+	void testParse() {
+		//when
+		List<List<String[]>> query = InvertedIndex.parse("Kiwi \"small wiki\" OR java-wiki OR");
+
+		//then
+		assertEquals(2, query.size());
+		assertEquals(2, query.get(0).size());
+		assertEquals("kiwi", query.get(0).get(0)[0]);
+		assertEquals(List.of("small", "wiki"), List.of(query.get(0).get(1)));
+		assertEquals(List.of("java", "wiki"), List.of(query.get(1).get(0)));
+		assertTrue(InvertedIndex.parse(" %_ OR ").isEmpty());
+	}
+
+	@Test
+	void testSearch() {
+		//given
+		InvertedIndex index = createIndex();
+
+		//when
+		List<Long> and = index.search("kiwi wiki", 0, 10);
+		List<Long> or = index.search("tea OR java", 0, 10);
+		List<Long> none = index.search("kiwi tea", 0, 10);
+
+		//then
+		assertEquals(List.of("kiwi", "java"), titles(and));
+		assertEquals(List.of("tea", "java", "kiwi"), titles(or));
+		assertTrue(none.isEmpty());
+		assertNull(index.search("%_", 0, 10));
+		assertEquals(List.of(3L), index.search("black", 0, 10));
+	}
+
+	@Test
+	void testSearchPage() {
+		//given
+		InvertedIndex index = createIndex();
+		for (long id = 10; id < 35; id++) {
+			update(index, id, "page" + id, "paged text");
+		}
+
+		//when
+		List<Long> second = index.search("paged", 10, 10);
+		List<Long> third = index.search("paged", 20, 10);
+
+		//then
+		assertEquals(10, second.size());
+		assertEquals("page20", titles(second).get(0));
+		assertEquals(5, third.size());
+		assertEquals("page34", titles(third).get(4));
+		assertEquals(25, index.count("paged", 1000));
+		assertEquals(20, index.count("paged", 20));
+		assertNull(index.count("%_", 1000));
+	}
+
+	@Test
+	void testCount() {
+		//given
+		InvertedIndex index = createIndex();
+		for (long id = 10; id < 40; id++) {
+			update(index, id, "count" + id, id % 2 == 0 ? "even kiwi wiki" : "odd wiki kiwi");
+		}
+		String[] queries = {"kiwi wiki", "tea OR java", "\"kiwi wiki\"", "\"wiki kiwi\" OR tea", "kiwi \"small wiki\"", "kiwi tea", "missing"};
+
+		//when
+		int bounded = index.count("\"kiwi wiki\"", 5);
+
+		//then
+		for (String query : queries) {
+			assertEquals(index.search(query, 0, 1000).size(), index.count(query, 1000), query);
+		}
+		assertEquals(5, bounded);
+	}
+
+	@Test
+	void testSearchPhrase() {
+		//given
+		InvertedIndex index = createIndex();
+
+		//when
+		List<Long> phrase = index.search("\"kiwi wiki\"", 0, 10);
+		List<Long> joined = index.search("small-wiki", 0, 10);
+		List<Long> across = index.search("\"kiwi kiwi\"", 0, 10);
+
+		//then
+		assertEquals(List.of("java"), titles(phrase));
+		assertEquals(List.of("kiwi"), titles(joined));
+		assertTrue(across.isEmpty());
+	}
+
+	@Test
+	void testSearchHangul() {
+		//given
+		InvertedIndex index = createIndex();
+		update(index, 4L, "키위", "키위는 자바로 만든 작은 위키입니다");
+		update(index, 5L, "위키백과", "누구나 고칠 수 있는 백과사전");
+
+		//when
+		List<Long> word = index.search("위키", 0, 10);
+		List<Long> particle = index.search("자바로", 0, 10);
+		List<Long> middle = index.search("백과", 0, 10);
+		List<Long> none = index.search("자위", 0, 10);
+
+		//then
+		assertEquals(List.of("위키백과", "키위"), titles(word));
+		assertEquals(List.of("키위"), titles(particle));
+		assertEquals(List.of("위키백과"), titles(middle));
+		assertTrue(none.isEmpty());
+	}
+
+	@Test
+	void testSearchPrefix() {
+		//given
+		InvertedIndex index = createIndex();
+		update(index, 4L, "키위", "키위는 자바로 만든 작은 위키입니다");
+		update(index, 5L, "위키백과", "누구나 고칠 수 있는 백과사전");
+
+		//when
+		List<Long> latin = index.search("wik", 0, 10);
+		List<Long> syllable = index.search("위", 0, 10);
+		List<Long> alone = index.search("수", 0, 10);
+		List<Long> phrase = index.search("\"kiwi wik\"", 0, 10);
+
+		//then
+		assertEquals(List.of("kiwi", "java"), titles(latin));
+		assertEquals(List.of("위키백과", "키위"), titles(syllable));
+		assertEquals(List.of("위키백과"), titles(alone));
+		assertTrue(phrase.isEmpty());
+		assertEquals(2, index.count("wik", 1000));
+		assertEquals(2, index.count("위", 1000));
+	}
+
+	@Test
+	void testUpdate() {
+		//given
+		InvertedIndex index = createIndex();
+
+		//when
+		update(index, 3L, "coffee", "black coffee");
+		update(index, 1L, null, "kiwi moved to kotlin");
+
+		//then
+		assertTrue(index.search("tea", 0, 10).isEmpty());
+		assertEquals(List.of("coffee"), titles(index.search("coffee", 0, 10)));
+		assertEquals(List.of("kiwi"), titles(index.search("kotlin", 0, 10)));
+		assertEquals(List.of("java"), titles(index.search("wiki", 0, 10)));
+		assertEquals(3, index.getDocuments());
+		assertEquals(5, index.getUpdates());
+	}
+
+	@Test
+	void testUpdateRenderedLater() {
+		//given
+		InvertedIndex index = createIndex();
+		InvertedIndex rendered = createIndex();
+
+		//when
+		update(index, 1L, "kiwiwiki", null);
+		update(index, 1L, null, "kiwi moved to kotlin");
+		update(rendered, 1L, null, "kiwi moved to kotlin");
+		update(rendered, 1L, "kiwiwiki", null);
+
+		//then
+		for (InvertedIndex either : List.of(index, rendered)) {
+			assertEquals(List.of("kiwiwiki"), titles(either.search("kotlin", 0, 10)));
+			assertEquals(List.of("kiwiwiki"), titles(either.search("kiwiwiki", 0, 10)));
+			assertEquals(List.of("kiwiwiki"), titles(either.search("\"moved to\"", 0, 10)));
+			assertEquals(List.of("java"), titles(either.search("wiki", 0, 10)));
+		}
+	}
+
+}
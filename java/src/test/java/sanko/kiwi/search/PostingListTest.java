@@ -0,0 +1,80 @@
+package sanko.kiwi.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*; //assertArrayEquals, assertEquals, assertFalse, assertNull, assertTrue
+
+class PostingListTest {
+
+	@Test
+	void testPut() {
+		//given
+		int[] list = new int[0];
+
+		//when
+		list = PostingList.put(list, 5, new int[] {1, 4});
+		list = PostingList.put(list, 9, new int[] {2});
+		list = PostingList.put(list, 7, new int[] {3, 8, 9});
+
+		//then
+		assertArrayEquals(new int[] {5, 2, 1, 3, 2, 3, 3, 5, 1, 2, 1, 2}, list);
+		assertEquals(3, PostingList.documents(list));
+	}
+
+	@Test
+	void testPutReplace() {
+		//given
+		int[] list = PostingList.put(PostingList.put(new int[0], 3, new int[] {1}), 6, new int[] {2});
+
+		//when
+		list = PostingList.put(list, 3, new int[] {4, 5});
+
+		//then
+		assertArrayEquals(new int[] {3, 2, 4, 1, 3, 1, 2}, list);
+	}
+
+	@Test
+	void testRemove() {
+		//given
+		int[] list = new int[0];
+		list = PostingList.put(list, 2, new int[] {1});
+		list = PostingList.put(list, 4, new int[] {1});
+		list = PostingList.put(list, 9, new int[] {1});
+
+		//when
+		int[] middle = PostingList.remove(list, 4);
+		int[] missing = PostingList.remove(list, 5);
+		int[] last = PostingList.remove(PostingList.put(new int[0], 2, new int[] {1}), 2);
+
+		//then
+		assertArrayEquals(new int[] {2, 1, 1, 7, 1, 1}, middle);
+		assertArrayEquals(list, missing);
+		assertNull(last);
+	}
+
+	@Test
+	void testCursor() {
+		//given
+		int[] list = new int[0];
+		list = PostingList.put(list, 5, new int[] {1, 70, 80});
+		list = PostingList.put(list, 12, new int[] {64});
+		list = PostingList.put(list, 20, new int[] {65});
+
+		//when
+		PostingList.Cursor cursor = PostingList.cursor(list);
+
+		//then
+		assertTrue(cursor.advance(6));
+		assertEquals(12, cursor.doc());
+		assertTrue(cursor.advance(12));
+		assertEquals(12, cursor.doc());
+		assertFalse(cursor.advance(21));
+
+		cursor = PostingList.cursor(list);
+		assertTrue(cursor.next());
+		assertEquals(3, cursor.count());
+		assertEquals(1, cursor.countBelow(64));
+		assertArrayEquals(new int[] {1, 70, 80}, cursor.positions());
+	}
+
+}
@@ -0,0 +1,55 @@
+package sanko.kiwi.search;
+
+import java.util.List;
+import java.text.Normalizer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertTrue
+
+class TokenizerTest {
+
+	@Test
+	void testTokensLatin() {
+		//when
+		List<String> tokens = Tokenizer.tokens("Kiwi-wiki, ＪＡＶＡ 17!");
+
+		//then
+		assertEquals(List.of("kiwi", "wiki", "java", "17"), tokens);
+		assertTrue(Tokenizer.tokens(" %_ ").isEmpty());
+	}
+
+	@Test
+	void testTokensHangul() {
+		//when
+		List<String> tokens = Tokenizer.tokens("키위 위키는 자바로");
+		List<String> single = Tokenizer.tokens("꽃 한 송이");
+
+		//then
+		assertEquals(List.of("키위", "위키", "키는", "자바", "바로"), tokens);
+		assertEquals(List.of("꽃", "한", "송이"), single);
+	}
+
+	@Test
+	void testTokensMixed() {
+		//when
+		List<String> tokens = Tokenizer.tokens("kiwi위키 日本語テキスト");
+
+		//then
+		assertEquals(List.of("kiwi", "위키", "日本", "本語", "語テ", "テキ", "キス", "スト"), tokens);
+	}
+
+	@Test
+	void testTokensNormalize() {
+		//given
+		String jamo = "바람";
+
+		//when
+		List<String> tokens = Tokenizer.tokens(jamo);
+
+		//then
+		assertEquals(5, jamo.length());
+		assertEquals(List.of("바람"), tokens);
+	}
+
+}
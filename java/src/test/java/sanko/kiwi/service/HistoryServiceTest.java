@@ -7,26 +7,39 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.mockito.ArgumentCaptor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch;
 
+import java.util.*; //List, LinkedList
+
+import static org.springframework.test.util.ReflectionTestUtils.setField;
 import static org.mockito.Mockito.*; //when, verify, times
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertTrue, assertFalse, assertNull, assertNotNull, assertThrows
 
 import sanko.kiwi.domain.page.*; //Page, PageRepository
-import sanko.kiwi.domain.history.*; //History, HistoryRepository
+import sanko.kiwi.domain.history.*; //History, HistoryRepository, Revision
+import sanko.kiwi.cache.RevisionCache;
+import sanko.kiwi.diff.DiffService;
 
 @ExtendWith(SpringExtension.class)
-@Import(HistoryService.class)
+@Import({HistoryService.class, DiffService.class})
 class HistoryServiceTest {
 
 	@Autowired
 	private HistoryService historyService;
 
+	@Autowired
+	private DiffService diffService;
+
 	@MockBean
 	private PageRepository pageRepository;
 
 	@MockBean
 	private HistoryRepository historyRepository;
 
+	@MockBean
+	private RevisionCache revisionCache;
+
 	@Test
 	void testHistorySave() {
 		//given
@@ -36,15 +49,10 @@ class HistoryServiceTest {
 		String content = prefix + "content";
 		Integer event = 5;
 		Page page = new Page(title, content);
-		History history = History.builder()
-			.page(page)
-			.event(event)
-			.summary(summary)
-			.title(title)
-			.content(content)
-			.build();
-		when(historyRepository.findFirstByPageOrderByEventDesc(any(Page.class)))
-			.thenReturn(history);
+		page.countRevision(event);
+		page.store(false);
+		when(pageRepository.revise(any(), eq(event)))
+			.thenReturn(1);
 
 		//when
 		String newTitle = prefix + "newtitle";
@@ -57,6 +65,9 @@ class HistoryServiceTest {
 		verify(historyRepository, times(1)).save(argument.capture());
 		assertEquals(event + 1, argument.getValue().getEvent());
 		assertEquals(newSummary, argument.getValue().getSummary());
+		assertEquals(event + 1, page.getRevision());
+		verify(historyRepository, never()).findFirstByPageOrderByEventDesc(any(Page.class));
+		verify(historyRepository, never()).findOneByPageAndEvent(any(Page.class), any());
 	}
 
 	@Test
@@ -66,8 +77,8 @@ class HistoryServiceTest {
 		String title = prefix + "title";
 		String content = prefix + "content";
 		Page page = new Page(title, content);
-		when(historyRepository.findFirstByPageOrderByEventDesc(any(Page.class)))
-			.thenReturn(null);
+		when(pageRepository.revise(any(), eq(0)))
+			.thenReturn(1);
 
 		//when
 		String newTitle = prefix + "newtitle";
@@ -80,6 +91,351 @@ class HistoryServiceTest {
 		verify(historyRepository, times(1)).save(argument.capture());
 		assertEquals(1, argument.getValue().getEvent());
 		assertEquals(newSummary, argument.getValue().getSummary());
+		assertTrue(page.isStorageKnown());
+		verify(historyRepository, never()).findFirstByPageOrderByEventDesc(any(Page.class));
+	}
+
+	@Test
+	void testHistorySaveSnapshot() {
+		//given
+		String prefix = "savesnapshot";
+		String title = prefix + "title";
+		String content = prefix + "content";
+		Page page = new Page(title, content);
+		page.countRevision(49);
+		page.store(false);
+		when(pageRepository.revise(any(), eq(49)))
+			.thenReturn(1);
+
+		//when
+		String newTitle = prefix + "newtitle";
+		String newContent = prefix + "newcontent";
+		historyService.save(page, newTitle, prefix + "newsummary", newContent);
+
+		//then
+		ArgumentCaptor<History> argument = ArgumentCaptor.forClass(History.class);
+		verify(historyRepository, times(1)).save(argument.capture());
+		assertEquals(50, argument.getValue().getEvent());
+		assertTrue(argument.getValue().isSnapshot());
+		assertEquals(newTitle, argument.getValue().getSnapshotTitle());
+		assertEquals(newContent, argument.getValue().getSnapshotContent());
+		verify(historyRepository, never()).clearSnapshot(any(Page.class), any());
+	}
+
+	@Test
+	void testHistorySaveUncounted() {
+		//given
+		String prefix = "saveuncounted";
+		Page page = new Page(prefix + "title", prefix + "content");
+		page.countRevision(null);
+		History last = historyService.create(page, 7, null, prefix + "title", prefix + "content", false, null);
+		when(historyRepository.findFirstByPageOrderByEventDesc(any(Page.class)))
+			.thenReturn(last);
+		when(pageRepository.revise(any(), eq(7)))
+			.thenReturn(1);
+
+		//when
+		historyService.save(page, prefix + "newtitle", prefix + "newsummary", prefix + "newcontent");
+
+		//then
+		ArgumentCaptor<History> argument = ArgumentCaptor.forClass(History.class);
+		verify(historyRepository, times(1)).save(argument.capture());
+		assertEquals(8, argument.getValue().getEvent());
+		verify(pageRepository, times(1)).countRevision(any(), eq(7));
+		assertTrue(page.isStorageKnown());
+		assertFalse(page.isHistoryReverse());
+	}
+
+	@Test
+	void testHistorySaveStorageUnknown() {
+		//given
+		String prefix = "savestorageunknown";
+		Page page = new Page(prefix + "title", prefix + "content");
+		page.countRevision(2);
+		History last = historyService.create(page, 2, null, prefix + "title", prefix + "content", true, new Revision("", ""));
+		when(historyRepository.findFirstByPageOrderByEventDesc(any(Page.class)))
+			.thenReturn(last);
+		when(pageRepository.revise(any(), anyInt()))
+			.thenReturn(1);
+
+		//when
+		historyService.save(page, prefix + "newtitle", prefix + "newsummary", prefix + "newcontent");
+		historyService.save(page, prefix + "newtitle", prefix + "newsummary", prefix + "newcontent");
+
+		//then
+		assertTrue(page.isHistoryReverse());
+		verify(historyRepository, times(1)).findFirstByPageOrderByEventDesc(any(Page.class));
+		verify(pageRepository, never()).countRevision(any(), any());
+	}
+
+	@Test
+	void testHistorySaveConcurrent() {
+		//given
+		String prefix = "saveconcurrent";
+		Page page = new Page(prefix + "title", prefix + "content");
+		page.countRevision(4);
+		when(pageRepository.revise(any(), eq(4)))
+			.thenReturn(0);
+
+		//whenthen
+		assertThrows(
+			OptimisticLockingFailureException.class,
+			() -> historyService.save(page, prefix + "newtitle", prefix + "newsummary", prefix + "newcontent")
+		);
+		verify(historyRepository, never()).save(any(History.class));
+		assertEquals(4, page.getRevision());
+	}
+
+	@Test
+	void testHistoryRebuild() {
+		//given
+		Page page = new Page("", "");
+		History first = historyService.create(page, 1, null, "title1", "content1", false, null);
+		page.change("title1", "content1");
+		History second = historyService.create(page, 2, null, "title2", "content2", false, null);
+		when(historyRepository.findOneByPageAndEvent(page, 2))
+			.thenReturn(second);
+		when(historyRepository.findByPageAndEventBetweenOrderByEventAsc(page, 1, 2))
+			.thenReturn(List.of(first, second));
+
+		//when
+		Revision revision = historyService.rebuild(page, 2);
+
+		//then
+		assertEquals("title2", revision.getTitle());
+		assertEquals("content2", revision.getContent());
+	}
+
+	@Test
+	void testHistoryRebuildFromSnapshot() {
+		//given
+		Page page = new Page("title1", "content1");
+		History snapshot = historyService.create(page, 50, null, "title50", "content50", true, null);
+		page.change("title50", "content50");
+		History next = historyService.create(page, 51, null, "title51", "content51", false, null);
+		when(historyRepository.findOneByPageAndEvent(page, 51))
+			.thenReturn(next);
+		when(historyRepository.findFirstByPageAndEventLessThanEqualAndSnapshotTitleNotNullOrderByEventDesc(page, 51))
+			.thenReturn(snapshot);
+		when(historyRepository.findByPageAndEventBetweenOrderByEventAsc(page, 51, 51))
+			.thenReturn(List.of(next));
+
+		//when
+		Revision revision = historyService.rebuild(page, 51);
+
+		//then
+		assertEquals("title51", revision.getTitle());
+		assertEquals("content51", revision.getContent());
+		verify(historyRepository, never()).findByPageAndEventBetweenOrderByEventAsc(page, 1, 51);
+	}
+
+	@Test
+	void testHistoryRebuildNoEvent() {
+		//given
+		Page page = new Page("title", "content");
+
+		//when
+		Revision revision = historyService.rebuild(page, 3);
+
+		//then
+		assertNull(revision);
+	}
+
+	@Test
+	void testHistorySaveReverse() {
+		//given
+		setField(historyService, "reverse", true);
+		String prefix = "savereverse";
+		Page page = new Page(prefix + "title", prefix + "content");
+		page.countRevision(3);
+		page.store(true);
+		when(pageRepository.revise(any(), eq(3)))
+			.thenReturn(1);
+
+		//when
+		String newTitle = prefix + "newtitle";
+		String newContent = prefix + "newcontent";
+		historyService.save(page, newTitle, prefix + "newsummary", newContent);
+
+		//then
+		ArgumentCaptor<History> argument = ArgumentCaptor.forClass(History.class);
+		verify(historyRepository, times(1)).save(argument.capture());
+		History head = argument.getValue();
+		assertTrue(head.isReverse());
+		assertEquals(newTitle, head.getSnapshotTitle());
+		assertEquals(newContent, head.getSnapshotContent());
+		assertEquals(prefix + "title", head.applyTitle(newTitle));
+		assertEquals(prefix + "content", head.applyContent(newContent));
+		verify(historyRepository, times(1)).clearSnapshot(page, 3);
+		verify(historyRepository, never()).findOneByPageAndEvent(any(Page.class), any());
+		setField(historyService, "reverse", false);
+	}
+
+	@Test
+	void testHistoryRebuildReverse() {
+		//given
+		Page page = new Page("", "");
+		History second = historyService.create(page, 2, null, "title2", "content2", false, new Revision("title1", "content1"));
+		History third = historyService.create(page, 3, null, "title3", "content3", true, new Revision("title2", "content2"));
+		when(historyRepository.findOneByPageAndEvent(page, 1))
+			.thenReturn(historyService.create(page, 1, null, "title1", "content1", false, new Revision("", "")));
+		when(historyRepository.findFirstByPageAndEventGreaterThanEqualAndSnapshotTitleNotNullOrderByEventAsc(page, 1))
+			.thenReturn(third);
+		when(historyRepository.findByPageAndEventBetweenOrderByEventDesc(page, 2, 3))
+			.thenReturn(List.of(third, second));
+
+		//when
+		Revision revision = historyService.rebuild(page, 1);
+
+		//then
+		assertEquals("title1", revision.getTitle());
+		assertEquals("content1", revision.getContent());
+	}
+
+	@Test
+	void testHistoryRebuildFromCached() {
+		//given
+		Page page = new Page("", "");
+		setField(page, "id", 7L);
+		page.change("title4", "content4");
+		History next = historyService.create(page, 5, null, "title5", "content5", false, null);
+		when(historyRepository.findOneByPageAndEvent(page, 5))
+			.thenReturn(next);
+		when(revisionCache.get(7L, 4))
+			.thenReturn(new Revision("title4", "content4", "<p>content4</p>"));
+
+		//when
+		Revision revision = historyService.rebuild(page, 5);
+
+		//then
+		assertEquals("title5", revision.getTitle());
+		assertEquals("content5", revision.getContent());
+		verify(historyRepository, never()).findByPageAndEventBetweenOrderByEventAsc(any(Page.class), any(Integer.class), any(Integer.class));
+	}
+
+	@Test
+	void testHistoryRebuildReverseFromCached() {
+		//given
+		Page page = new Page("", "");
+		setField(page, "id", 8L);
+		History second = historyService.create(page, 2, null, "title2", "content2", false, new Revision("title1", "content1"));
+		History third = historyService.create(page, 3, null, "title3", "content3", false, new Revision("title2", "content2"));
+		when(historyRepository.findOneByPageAndEvent(page, 2))
+			.thenReturn(second);
+		when(historyRepository.findOneByPageAndEvent(page, 3))
+			.thenReturn(third);
+		when(revisionCache.get(8L, 3))
+			.thenReturn(new Revision("title3", "content3"));
+
+		//when
+		Revision revision = historyService.rebuild(page, 2);
+
+		//then
+		assertEquals("title2", revision.getTitle());
+		assertEquals("content2", revision.getContent());
+		verify(historyRepository, never()).findFirstByPageAndEventGreaterThanEqualAndSnapshotTitleNotNullOrderByEventAsc(any(Page.class), any(Integer.class));
+	}
+
+	@Test
+	void testHistoryCreateReverse() {
+		//given
+		Page page = new Page("pagetitle", "pagecontent");
+		String previousContent = "one two three\nfour five\n";
+		String content = "one three\nfour five six\n";
+
+		//when
+		History history = historyService.create(page, 2, null, "title", content, true, new Revision("previoustitle", previousContent));
+
+		//then
+		assertTrue(history.isReverse());
+		assertTrue(history.isSnapshot());
+		assertEquals("previoustitle", history.applyTitle("title"));
+		assertEquals(previousContent, history.applyContent(content));
+
+		DiffMatchPatch dmp = new DiffMatchPatch();
+		Object[] patched = dmp.patchApply(new LinkedList<>(dmp.patchFromText(historyService.forwardContent(history))), previousContent);
+		assertEquals(content, patched[0]);
+		assertTrue(historyService.forwardContent(history).contains("+ six"));
+	}
+
+	@Test
+	void testHistoryCreateTimeout() {
+		//given
+		Page page = new Page("pagetitle", "one two three");
+
+		//when
+		History history = historyService.create(page, 2, null, "title", "one three", false, null);
+
+		//then
+		assertFalse(history.isTimeout());
+		assertFalse(history.isSnapshot());
+		assertNotNull(history.getDiffMicros());
+
+		//when
+		setField(historyService, "diffService", new DiffService(0, 1));
+		history = historyService.create(page, 2, null, "title", "one three".repeat(3000) + "four", false, null);
+		setField(historyService, "diffService", diffService);
+
+		//then
+		assertTrue(history.isTimeout());
+		assertTrue(history.isSnapshot());
+	}
+
+	@Test
+	void testHistoryCreateDiff() {
+		//given
+		Page page = new Page("pagetitle", "one two three");
+
+		//when
+		History forward = historyService.create(page, 2, null, "title", "one three four", false, null);
+		History reverse = historyService.create(page, 2, null, "title", "one three four", false, new Revision("pagetitle", "one two three"));
+
+		//then
+		assertTrue(forward.isDiffRendered());
+		assertEquals("<del>-page</del>\n titl\n", forward.getTitleDiff());
+		assertEquals(" ne t\n<del>-wo t</del>\n hree\n<ins>+ four</ins>\n", forward.getContentDiff());
+		assertTrue(reverse.getTitleDiff().startsWith("<del>-page</del>\n"));
+		assertEquals(forward.getContentDiff(), reverse.getContentDiff());
+	}
+
+	@Test
+	void testHistoryDiffUnrendered() {
+		//given
+		Page page = new Page("pagetitle", "one two three");
+		History history = historyService.create(page, 2, null, "title", "one three four", false, new Revision("pagetitle", "one two three"));
+		String titleDiff = history.getTitleDiff();
+		String contentDiff = history.getContentDiff();
+		history.renderDiff(null, null);
+
+		//when
+		historyService.renderDiff(history);
+
+		//then
+		assertEquals(titleDiff, history.getTitleDiff());
+		assertEquals(contentDiff, history.getContentDiff());
+		assertEquals(contentDiff, historyService.contentDiff(history));
+	}
+
+	@Test
+	void testHistoryCreateBinary() {
+		//given
+		String pageContent = "한국어 문서의 첫 줄\n둘째 줄\n";
+		String content = "한국어 문서의 첫 줄\n바뀐 둘째 줄\n셋째 줄\n";
+		Page page = new Page("pagetitle", pageContent);
+
+		//when
+		History text = historyService.create(page, 2, null, "title", content, false, null);
+		setField(historyService, "binary", true);
+		History binary = historyService.create(page, 2, null, "title", content, false, null);
+		History reverse = historyService.create(page, 2, null, "title", content, false, new Revision("pagetitle", pageContent));
+		setField(historyService, "binary", false);
+
+		//then
+		assertTrue(binary.isBinary());
+		assertEquals(content, binary.applyContent(pageContent));
+		assertEquals(pageContent, reverse.applyContent(content));
+		assertEquals(text.getContent(), historyService.forwardContent(binary));
+		assertTrue(binary.getPatchSize() * 2 < text.getPatchSize());
 	}
 
 }
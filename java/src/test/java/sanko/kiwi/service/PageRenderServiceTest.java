@@ -0,0 +1,106 @@
+package sanko.kiwi.service;
+
+import java.util.*; //List, Optional
+
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+import static org.mockito.Mockito.*; //when, verify, timeout, after, times, atMost
+import static org.mockito.ArgumentMatchers.*; //eq, contains, anyString
+
+import sanko.kiwi.domain.page.*; //Page, PageRepository, PageId
+import sanko.kiwi.render.RenderService;
+import sanko.kiwi.search.InvertedIndex;
+import sanko.kiwi.cache.ViewCache;
+
+@ExtendWith(SpringExtension.class)
+@Import({PageRenderService.class, RenderService.class})
+@TestPropertySource(properties = "kiwi.render.retry-delay=300")
+class PageRenderServiceTest {
+
+	@Autowired
+	private PageRenderService pageRenderService;
+
+	@MockBean
+	private PageRepository pageRepository;
+
+	@MockBean
+	private InvertedIndex invertedIndex;
+
+	@MockBean
+	private ViewCache viewCache;
+
+	@MockBean
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	void testSchedule() {
+		//given
+		String prefix = "schedule";
+		String title = prefix + "title";
+		String content = prefix + "content";
+		Page page = new Page(title, content);
+		setField(page, "id", 1L);
+		page.change(title, content);
+
+		//when
+		String newContent = prefix + "newcontent";
+		page.change(title, newContent);
+		when(pageRepository.render(eq(1L), eq(2L), anyString(), anyString(), anyString()))
+			.thenReturn(1);
+		pageRenderService.schedule(page);
+
+		//then
+		verify(pageRepository, timeout(1000)).render(eq(1L), eq(2L), contains(newContent), eq(newContent), eq(""));
+		verify(invertedIndex, timeout(1000)).updateAfterCommit(1L, null, newContent);
+		verify(viewCache, timeout(1000)).evict(title);
+	}
+
+	@Test
+	void testScheduleRetry() {
+		//given
+		String prefix = "scheduleretry";
+		Page page = new Page(prefix + "title", prefix + "content");
+		setField(page, "id", 2L);
+		page.change(prefix + "title", prefix + "newcontent");
+		when(pageRepository.render(eq(2L), eq(1L), anyString(), anyString(), anyString()))
+			.thenThrow(new IllegalStateException("database is busy"))
+			.thenReturn(1);
+
+		//when
+		pageRenderService.schedule(page);
+
+		//then
+		verify(pageRepository, after(150).atMost(1)).render(eq(2L), eq(1L), anyString(), anyString(), anyString());
+		verify(pageRepository, timeout(2000).times(2)).render(eq(2L), eq(1L), anyString(), anyString(), anyString());
+		verify(invertedIndex, timeout(1000)).updateAfterCommit(2L, null, prefix + "newcontent");
+	}
+
+	@Test
+	void testSweep() {
+		//given
+		String prefix = "sweep";
+		Page page = new Page(prefix + "title", prefix + "content");
+		setField(page, "id", 3L);
+		page.change(prefix + "title", prefix + "newcontent");
+		PageId id = () -> 3L;
+		when(pageRepository.findUnrendered())
+			.thenReturn(List.of(id));
+		when(pageRepository.findById(3L))
+			.thenReturn(Optional.of(page));
+
+		//when
+		pageRenderService.sweep();
+
+		//then
+		verify(pageRepository, timeout(1000)).render(eq(3L), eq(1L), contains(prefix + "newcontent"), eq(prefix + "newcontent"), eq(""));
+	}
+
+}
@@ -1,6 +1,6 @@
 package sanko.kiwi.service;
 
-import java.util.Random;
+import java.util.*; //Random, List
 import java.time.LocalDateTime;
 
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,15 +9,24 @@ import org.springframework.context.annotation.Import;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.PageRequest;
 
 import static org.springframework.test.util.ReflectionTestUtils.setField;
 import static org.mockito.Mockito.*; //when, verify, times, spy
-import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertTrue, assertFalse, assertNull, assertNotNull
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertTrue, assertFalse, assertNull, assertNotNull, assertSame
 
-import sanko.kiwi.domain.page.*; //Page, PageRepository
+import sanko.kiwi.domain.page.*; //Page, PageRepository, PageId, PageTitle, PageSnippet, PageText
+import sanko.kiwi.cache.ViewCache;
+import sanko.kiwi.search.*; //FullTextIndex, InvertedIndex, Highlighter, Tokenizer
+import sanko.kiwi.render.RenderService;
 
 @ExtendWith(SpringExtension.class)
-@Import(PageService.class)
+@Import({PageService.class, RenderService.class})
 class PageServiceTest {
 
 	@Autowired
@@ -26,6 +35,18 @@ class PageServiceTest {
 	@MockBean
 	private PageRepository pageRepository;
 
+	@MockBean
+	private PageRenderService pageRenderService;
+
+	@MockBean
+	private ViewCache viewCache;
+
+	@MockBean
+	private FullTextIndex fullTextIndex;
+
+	@MockBean
+	private InvertedIndex invertedIndex;
+
 	private static Long pageId = 0L;
 
 	private Page createPage(String title, String content) {
@@ -63,6 +84,22 @@ class PageServiceTest {
 		assertEquals(content, page.getContent());
 	}
 
+	@Test
+	void testCreatePageRender() {
+		//given
+		String title = "createrendertitle";
+		String content = "# heading\n\nparagraph [[test]]";
+
+		//when
+		Page page = pageService.create(title, content);
+
+		//then
+		assertTrue(page.getHtml().contains("<h1>heading</h1>"));
+		assertTrue(page.getHtml().contains("<a href=\"/wiki/test\">test</a>"));
+		assertEquals("heading paragraph test", page.getText());
+		assertTrue(page.isRendered());
+	}
+
 	@Test
 	void testFindPageNoPage() {
 		//given
@@ -95,6 +132,139 @@ class PageServiceTest {
 		assertEquals(content, page.getContent());
 	}
 
+	@Test
+	void testExistsPage() {
+		//given
+		String prefix = "existspage";
+		String title = prefix + "title";
+		PageId id = () -> 1L;
+		when(pageRepository.findIdByTitle(title))
+			.thenReturn(id);
+
+		//when
+		boolean exists = pageService.exists(title);
+		boolean notExists = pageService.exists(prefix + "notitle");
+
+		//then
+		assertTrue(exists);
+		assertFalse(notExists);
+	}
+
+	@Test
+	void testRandomPage() {
+		//given
+		String title = "randompagetitle";
+		PageTitle pageTitle = () -> title;
+		when(pageRepository.count())
+			.thenReturn(3L);
+		when(pageRepository.findTitleBy(any(Pageable.class)))
+			.thenReturn(List.of(pageTitle));
+
+		//when
+		PageTitle random = pageService.getRandomPage();
+
+		//then
+		assertEquals(title, random.getTitle());
+		verify(pageRepository, never()).findAll();
+	}
+
+	@Test
+	void testRandomPageNoPage() {
+		//given
+		when(pageRepository.count())
+			.thenReturn(0L);
+
+		//when
+		PageTitle random = pageService.getRandomPage();
+
+		//then
+		assertNull(random);
+	}
+
+	@Test
+	void testSearchEscape() {
+		//when
+		pageService.search("100%_\\", 1);
+		pageService.count("100%_\\");
+
+		//then
+		verify(pageRepository, times(1)).search("100\\%\\_\\\\", "100%_\\", Highlighter.LEAD, PageRequest.of(0, 10));
+		verify(pageRepository, times(1)).countSearch("100\\%\\_\\\\", 1000);
+	}
+
+	@Test
+	void testSearchPage() {
+		//when
+		pageService.search("kiwi", 3);
+		pageService.search("kiwi", 0);
+
+		//then
+		verify(pageRepository, times(1)).search("kiwi", "kiwi", Highlighter.LEAD, PageRequest.of(2, 10));
+		verify(pageRepository, times(1)).search("kiwi", "kiwi", Highlighter.LEAD, PageRequest.of(0, 10));
+	}
+
+	@Test
+	void testSearchFullText() {
+		//given
+		when(fullTextIndex.isAvailable())
+			.thenReturn(true);
+
+		//when
+		pageService.search("kiwi \"wiki\" -java", 2);
+		pageService.count("kiwi \"wiki\" -java");
+		pageService.search("%_", 1);
+		pageService.search("키는", 1);
+		pageService.count("키는");
+
+		//then
+		verify(pageRepository, times(1)).searchFullText(eq("\"kiwi\"* \"wiki\"* \"java\"*"), anyDouble(), eq(Highlighter.ELLIPSIS), eq(PageRequest.of(1, 10)));
+		verify(pageRepository, times(1)).countFullText("\"kiwi\"* \"wiki\"* \"java\"*", 1000);
+		verify(pageRepository, times(1)).search("\\%\\_", "%_", Highlighter.LEAD, PageRequest.of(0, 10));
+		verify(pageRepository, times(1)).findIdByFullText(eq("grams : \"키는\""), anyDouble(), eq(PageRequest.of(0, 10)));
+		verify(pageRepository, times(1)).countFullText("grams : \"키는\"", 1000);
+	}
+
+	@Test
+	void testSearchInvertedIndex() {
+		//given
+		PageText text = new PageText() {
+			public Long getId() {
+				return 7L;
+			}
+
+			public String getTitle() {
+				return "kiwi";
+			}
+
+			public String getText() {
+				return "a small kiwi wiki";
+			}
+		};
+		when(invertedIndex.isAvailable())
+			.thenReturn(true);
+		when(invertedIndex.search("kiwi", 10, 10))
+			.thenReturn(List.of(7L, 8L));
+		when(pageRepository.findTextByIdIn(List.of(7L, 8L)))
+			.thenReturn(List.of(text));
+		when(invertedIndex.count("kiwi", 1000))
+			.thenReturn(12);
+		when(invertedIndex.search("%_", 0, 10))
+			.thenReturn(null);
+
+		//when
+		List<PageSnippet> pages = pageService.search("kiwi", 2);
+		long count = pageService.count("kiwi");
+		pageService.search("%_", 1);
+
+		//then
+		assertEquals(1, pages.size());
+		assertEquals("kiwi", pages.get(0).getTitle());
+		assertEquals("a small \u0002kiwi\u0003 wiki", pages.get(0).getSnippet());
+		assertEquals(12, count);
+		verify(pageRepository, times(0)).search(eq("kiwi"), any(), anyInt(), any());
+		verify(pageRepository, times(1)).search("\\%\\_", "%_", Highlighter.LEAD, PageRequest.of(0, 10));
+	}
+
 	@Test
 	void testSavePage() {
 		//given
@@ -128,138 +298,143 @@ class PageServiceTest {
 		//then
 		assertEquals(newTitle, page.getTitle());
 		assertEquals(newContent, page.getContent());
+		assertEquals(Tokenizer.grams(newTitle, page.getText()), page.getGrams());
 		verify(page, times(1)).unlock();
+		verify(viewCache, times(1)).evictAfterCommit(title);
+		verify(viewCache, times(1)).evictAfterCommit(newTitle);
+		verify(invertedIndex, times(1)).updateAfterCommit(page.getId(), newTitle, page.getText());
 	}
 
 	@Test
-	void testCheckLockNotLocked() {
+	void testViewHtml() {
 		//given
-		String prefix = "checklock";
-		String title = prefix + "title";
-		String content = prefix + "content";
-		Page page = createPage(title, content);
+		String prefix = "viewhtml";
+		Page rendered = pageService.create(prefix + "title", prefix + "content");
+		Page unrendered = new Page(prefix + "title", prefix + "content");
 
 		//when
-		boolean locked = pageService.checkLock(title);
+		String html = pageService.viewHtml(rendered);
+		String made = pageService.viewHtml(unrendered);
 
 		//then
-		assertFalse(locked);
+		assertSame(rendered.getHtml(), html);
+		assertEquals("<p>" + prefix + "content</p>\n", made);
+		assertNull(unrendered.getHtml());
 	}
 
 	@Test
-	void testCheckLockPageNotExist() {
+	void testUpdatePageAsyncRender() {
 		//given
-		String title = "checklockpagenotexist" + "title";
-		when(pageRepository.findOneByTitle(title))
-			.thenReturn(null);
+		String prefix = "updatepageasyncrender";
+		String title = prefix + "title";
+		String content = prefix + "content";
+		Page page = createPage(title, content);
+		page.change(title, content);
+		page.render("<p>" + content + "</p>", content);
+		String html = page.getHtml();
+		setField(pageService, "asyncRender", true);
 
 		//when
-		boolean locked = pageService.checkLock(title);
+		String newTitle = prefix + "newtitle";
+		String newContent = prefix + "newcontent";
+		pageService.update(page, newTitle, newContent);
+		setField(pageService, "asyncRender", false);
 
 		//then
-		assertFalse(locked);
+		assertEquals(newTitle, page.getTitle());
+		assertEquals(newContent, page.getContent());
+		assertEquals(html, page.getHtml());
+		assertFalse(page.isRendered());
+		verify(pageRenderService, times(1)).schedule(page);
+		verify(invertedIndex, times(1)).updateAfterCommit(page.getId(), newTitle, null);
 	}
 
 	@Test
-	void testCheckLockLocked() {
+	void testUpdateNewPageAsyncRender() {
 		//given
-		String prefix = "checklocklocked";
+		String prefix = "updatenewpageasyncrender";
 		String title = prefix + "title";
 		String content = prefix + "content";
-		Page page = createPage(title, content);
-
-		LocalDateTime lock = LocalDateTime.now().plusSeconds(60);
-		Random random = new Random();
-		Integer lockId = random.nextInt(2147483647);
-		page.lock(lock, lockId);
+		Page page = createPage("", "");
+		setField(pageService, "asyncRender", true);
 
 		//when
-		boolean locked = pageService.checkLock(title);
+		pageService.update(page, title, content);
+		setField(pageService, "asyncRender", false);
 
 		//then
-		assertTrue(locked);
+		assertTrue(page.getHtml().contains(content));
+		assertTrue(page.isRendered());
+		verify(pageRenderService, never()).schedule(page);
 	}
 
 	@Test
-	void testCheckLockLocker() {
+	void testLockPage() {
 		//given
-		String prefix = "checklocklocker";
+		String prefix = "lockpage";
 		String title = prefix + "title";
-		String content = prefix + "content";
-		Page page = createPage(title, content);
-
 		LocalDateTime lock = LocalDateTime.now().plusSeconds(60);
-		Random random = new Random();
-		Integer lockId = random.nextInt(2147483647);
-		page.lock(lock, lockId);
-		when(pageRepository.findOneByTitleAndLockAndLockId(title, lock, lockId))
-			.thenReturn(page);
+		Integer lockId = new Random().nextInt(2147483647);
+		when(pageRepository.lock(eq(title), eq(lock), eq(lockId), any()))
+			.thenReturn(1);
 
 		//when
-		boolean locked = pageService.checkLock(title, lock, lockId);
+		boolean locked = pageService.lock(title, lock, lockId);
 
 		//then
-		assertFalse(locked);
+		assertTrue(locked);
 	}
 
 	@Test
-	void testCheckLockNotLocker() {
+	void testLockPageLocked() {
 		//given
-		String prefix = "checklocknotlocker";
+		String prefix = "lockpagelocked";
 		String title = prefix + "title";
 		String content = prefix + "content";
 		Page page = createPage(title, content);
-
 		LocalDateTime lock = LocalDateTime.now().plusSeconds(60);
-		Random random = new Random();
-		Integer lockId = random.nextInt(2147483647);
-		page.lock(lock, lockId);
-		when(pageRepository.findOneByTitleAndLockAndLockId(title, lock, lockId))
-			.thenReturn(null);
+		Integer lockId = new Random().nextInt(2147483647);
+		when(pageRepository.lock(eq(title), eq(lock), eq(lockId), any()))
+			.thenReturn(0);
+		when(pageRepository.findIdByTitle(title))
+			.thenReturn(() -> page.getId());
 
 		//when
-		boolean locked = pageService.checkLock(title, lock, lockId);
+		boolean locked = pageService.lock(title, lock, lockId);
 
 		//then
-		assertTrue(locked);
+		assertFalse(locked);
 	}
 
 	@Test
-	void testLockPage() {
+	void testLockPageNotExist() {
 		//given
-		String prefix = "lockpage";
-		String title = prefix + "title";
-		String content = prefix + "content";
-		Page page = spy(createPage(title, content));
-
-		//when
+		String title = "lockpagenotexist" + "title";
 		LocalDateTime lock = LocalDateTime.now().plusSeconds(60);
-		Random random = new Random();
-		Integer lockId = random.nextInt(2147483647);
+		Integer lockId = new Random().nextInt(2147483647);
+		when(pageRepository.lock(eq(title), eq(lock), eq(lockId), any()))
+			.thenReturn(0);
+		when(pageRepository.findIdByTitle(title))
+			.thenReturn(null);
 
-		pageService.lock(page, lock, lockId);
+		//when
+		boolean locked = pageService.lock(title, lock, lockId);
 
 		//then
-		assertEquals(lock, page.getLock());
-		assertEquals(lockId, page.getLockId());
-		verify(page, times(1)).lock(lock, lockId);
+		assertTrue(locked);
 	}
 
 	@Test
 	void testUnlockPage() {
 		//given
-		String prefix = "unlockpage";
-		String title = prefix + "title";
-		String content = prefix + "content";
-		Page page = spy(createPage(title, content));
+		String title = "unlockpage" + "title";
+		Integer lockId = new Random().nextInt(2147483647);
 
 		//when
-		pageService.unlock(page);
+		pageService.unlock(title, lockId);
 
 		//then
-		assertEquals(null, page.getLock());
-		assertEquals(null, page.getLockId());
-		verify(page, times(1)).unlock();
+		verify(pageRepository, times(1)).unlock(title, lockId);
 	}
 
 }
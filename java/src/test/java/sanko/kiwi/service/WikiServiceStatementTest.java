@@ -0,0 +1,275 @@
+package sanko.kiwi.service;
+
+import java.util.*; //List, ArrayList
+import java.time.LocalDateTime;
+
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.*; //Transactional, Propagation
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.junit.jupiter.api.*; //Test, AfterEach
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertNull, assertTrue
+
+import sanko.kiwi.domain.page.*; //Page, PageRepository
+import sanko.kiwi.domain.history.HistoryRepository;
+import sanko.kiwi.dto.*; //PageEditRequest, PageEdit
+import sanko.kiwi.render.RenderService;
+import sanko.kiwi.diff.DiffService;
+import sanko.kiwi.lock.LockManager;
+import sanko.kiwi.search.*; //FullTextIndex, InvertedIndex
+import sanko.kiwi.cache.*; //ViewCache, RevisionCache
+
+//counts the statements one edit sends to the database, outside a test transaction so its own commit is counted too
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({WikiService.class, DiffService.class, LockManager.class, FullTextIndex.class, InvertedIndex.class, PageService.class, HistoryService.class, PageRenderService.class, RenderService.class, ViewCache.class, RevisionCache.class})
+class WikiServiceStatementTest {
+
+	@Autowired
+	private WikiService wikiService;
+
+	@Autowired
+	private PageService pageService;
+
+	@Autowired
+	private PageRepository pageRepository;
+
+	@Autowired
+	private HistoryRepository historyRepository;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	//edits commit, so the pages they made are deleted after each test
+	private final List<String> titles = new ArrayList<>();
+
+	@AfterEach
+	void deletePages() {
+		for (String title : titles) {
+			jdbcTemplate.update("delete from historys where page_id in (select id from pages where title = ?)", title);
+			jdbcTemplate.update("delete from pages where title = ?", title);
+		}
+		titles.clear();
+	}
+
+	private Statistics statistics() {
+		return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+	}
+
+	private PageEdit edit(String title, String newTitle, String content) {
+		return edit(title, newTitle, content, null);
+	}
+
+	private PageEdit edit(String title, String newTitle, String content, Integer revision) {
+		titles.add(title);
+		titles.add(newTitle);
+		statistics().clear();
+
+		PageEdit pageEdit = wikiService.edit(title, PageEditRequest.builder()
+			.title(newTitle)
+			.content(content)
+			.summary("")
+			.revision(revision)
+			.build());
+
+		return pageEdit;
+	}
+
+	@Test
+	void testEditStatements() {
+		//given
+		String title = "statementtitle";
+		edit(title, title, "statement content");
+
+		//when
+		PageEdit pageEdit = edit(title, title, "statement content, edited");
+
+		//then
+		assertEquals("/wiki/" + title, pageEdit.getRedirect());
+		//page select, event update, history insert, page update, in the one transaction committed
+		assertEquals(4, statistics().getPrepareStatementCount());
+		assertEquals(1, statistics().getSuccessfulTransactionCount());
+		assertEquals(2, pageRepository.findOneByTitle(title).getRevision());
+	}
+
+	@Test
+	void testCreateStatements() {
+		//given
+		String title = "statementcreatetitle";
+
+		//when
+		PageEdit pageEdit = edit(title, title, "statement content");
+
+		//then
+		assertEquals("/wiki/" + title, pageEdit.getRedirect());
+		//page select, page insert, event update, history insert, page update
+		assertEquals(5, statistics().getPrepareStatementCount());
+	}
+
+	@Test
+	void testRenameStatements() {
+		//given
+		String title = "statementrenametitle";
+		String newTitle = "statementrenamenewtitle";
+		edit(title, title, "statement content");
+
+		//when
+		PageEdit pageEdit = edit(title, newTitle, "statement content");
+
+		//then
+		assertEquals("/wiki/" + newTitle, pageEdit.getRedirect());
+		//the title check adds one select
+		assertEquals(5, statistics().getPrepareStatementCount());
+	}
+
+	@Test
+	void testEditOptimisticConflict() {
+		//given
+		setField(wikiService, "optimistic", true);
+		String title = "statementoptimistictitle";
+		edit(title, title, "statement content");
+		edit(title, title, "statement content, edited");
+
+		//when
+		PageEdit pageEdit = edit(title, title, "statement content, edited again", 1);
+
+		//then
+		assertTrue(pageEdit.isConflict());
+		assertEquals(2, pageEdit.getRevision());
+		//page select, then the current revision for the form
+		assertEquals(2, statistics().getPrepareStatementCount());
+		setField(wikiService, "optimistic", false);
+	}
+
+	@Test
+	void testEditMerge() {
+		//given
+		setField(wikiService, "optimistic", true);
+		setField(wikiService, "merge", true);
+		String title = "statementmergetitle";
+		edit(title, title, "first paragraph\n\nsecond paragraph\n\nthird paragraph\n");
+		edit(title, title, "first paragraph, edited\n\nsecond paragraph\n\nthird paragraph\n", 1);
+
+		//when
+		PageEdit pageEdit = edit(title, title, "first paragraph\n\nsecond paragraph\n\nthird paragraph, also edited\n", 1);
+
+		//then
+		assertEquals("/wiki/" + title, pageEdit.getRedirect());
+		Page page = pageRepository.findOneByTitle(title);
+		assertEquals("first paragraph, edited\n\nsecond paragraph\n\nthird paragraph, also edited\n", page.getContent());
+		assertEquals(3, page.getRevision());
+		setField(wikiService, "optimistic", false);
+		setField(wikiService, "merge", false);
+	}
+
+	@Test
+	void testEditMergeSameRegion() {
+		//given
+		setField(wikiService, "optimistic", true);
+		setField(wikiService, "merge", true);
+		String title = "statementmergeregiontitle";
+		edit(title, title, "the quick brown fox jumps over the lazy dog.\n");
+		edit(title, title, "the quick brown fox leaps over the lazy dog.\n", 1);
+
+		//when
+		PageEdit pageEdit = edit(title, title, "the quick brown fox hops over the lazy dog.\n", 1);
+
+		//then
+		assertTrue(pageEdit.isConflict());
+		Page page = pageRepository.findOneByTitle(title);
+		assertEquals("the quick brown fox leaps over the lazy dog.\n", page.getContent());
+		assertEquals(2, page.getRevision());
+		setField(wikiService, "optimistic", false);
+		setField(wikiService, "merge", false);
+	}
+
+	@Test
+	void testEditMergeNotOptimistic() {
+		//given
+		setField(wikiService, "optimistic", false);
+		setField(wikiService, "merge", true);
+		String title = "statementmergenotoptimistictitle";
+		edit(title, title, "open a page and press edit.\n");
+		edit(title, title, "the edit link is at the top.\n", 1);
+
+		//when
+		PageEdit pageEdit = edit(title, title, "open a page, press edit and save.\n", 1);
+
+		//then
+		assertTrue(pageEdit.isConflict());
+		Page page = pageRepository.findOneByTitle(title);
+		assertEquals("the edit link is at the top.\n", page.getContent());
+		assertEquals(2, page.getRevision());
+		setField(wikiService, "merge", false);
+	}
+
+	@Test
+	void testEditMergeConcurrentCreate() {
+		//given
+		setField(wikiService, "optimistic", true);
+		setField(wikiService, "merge", true);
+		String title = "statementmergecreatetitle";
+		edit(title, title, "first page text\n", 0);
+
+		//when
+		PageEdit pageEdit = edit(title, title, "second page text\n", 0);
+
+		//then
+		assertTrue(pageEdit.isConflict());
+		Page page = pageRepository.findOneByTitle(title);
+		assertEquals("first page text\n", page.getContent());
+		assertEquals(1, page.getRevision());
+		setField(wikiService, "optimistic", false);
+		setField(wikiService, "merge", false);
+	}
+
+	@Test
+	void testEditLeased() {
+		//given
+		setField(wikiService, "lease", true);
+		String title = "statementleasedtitle";
+		edit(title, title, "statement content");
+
+		//when
+		PageEdit pageEdit = edit(title, title, "statement content, edited");
+
+		//then
+		//lease update, page select, event update, history insert, page update
+		assertEquals("/wiki/" + title, pageEdit.getRedirect());
+		assertEquals(5, statistics().getPrepareStatementCount());
+		assertNull(pageRepository.findOneByTitle(title).getLockId());
+		setField(wikiService, "lease", false);
+	}
+
+	//another process holds the lease, so the edit goes back to the form without writing
+	@Test
+	void testEditLocked() {
+		//given
+		setField(wikiService, "lease", true);
+		String title = "statementlockedtitle";
+		edit(title, title, "statement content");
+		Page page = pageRepository.findOneByTitle(title);
+		pageService.lock(title, LocalDateTime.now().plusSeconds(60), 1);
+
+		//when
+		PageEdit pageEdit = edit(title, title, "statement content, edited");
+
+		//then
+		//lease update, then the title lookup that tells a held lease from a missing page
+		assertNull(pageEdit.getRedirect());
+		assertEquals(2, statistics().getPrepareStatementCount());
+		assertEquals(1, historyRepository.findByPageIdOrderByEventAsc(page.getId()).size());
+		assertEquals(1, pageRepository.findOneByTitle(title).getLockId());
+		setField(wikiService, "lease", false);
+	}
+
+}
@@ -1,52 +1,84 @@
 package sanko.kiwi.service;
 
 import java.util.*; //List, Arrays, ArrayList
+import java.util.concurrent.*; //CountDownLatch, ExecutorService, Executors, Future
 import java.time.LocalDateTime;
 
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import static org.springframework.test.util.ReflectionTestUtils.setField;
 import static org.mockito.Mockito.*; //when, doAnswer, verify, times
 import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertTrue, assertThrows
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.anyInt;
 
-import sanko.kiwi.domain.page.Page;
-import sanko.kiwi.domain.history.History;
-import sanko.kiwi.dto.*; //PageView, PageEditRequest, PageEdit, PageHistoryView, PageBack, PageRehash, PageDiff
+import sanko.kiwi.domain.page.*; //Page, PageStamp, PageSnippet
+import sanko.kiwi.domain.history.*; //History, HistoryEntry, Revision
+import sanko.kiwi.dto.*; //PageView, PageTag, PageEditRequest, PageEdit, PageHistoryView, PageBack, PageRehash, PageDiff, PageSearch
+import sanko.kiwi.cache.RevisionCache;
+import sanko.kiwi.diff.DiffService;
+import sanko.kiwi.render.*; //RenderService, Rendered
+import sanko.kiwi.lock.LockManager;
 
 @ExtendWith(SpringExtension.class)
-@Import(WikiService.class)
+@Import({WikiService.class, DiffService.class, LockManager.class})
+@TestPropertySource(properties = "kiwi.lock.wait=100")
 class WikiServiceTest {
 
 	@Autowired
 	private WikiService wikiService;
 
+	@Autowired
+	private LockManager lockManager;
+
 	@MockBean
 	private PageService pageService;
 
 	@MockBean
 	private HistoryService historyService;
 
+	@MockBean
+	private RevisionCache revisionCache;
+
+	@MockBean
+	private PlatformTransactionManager transactionManager;
+
 	private static Long pageId = 0L;
 
+	private final RenderService renderService = new RenderService(List.of());
+
+	//pages are rendered by the page service, which is mocked here
+	private Page render(Page page) {
+		Rendered rendered = renderService.render(page.getContent());
+		page.render(rendered.getHtml(), rendered.getText());
+		return page;
+	}
+
 	private Page createPage(String title, String content) {
-		Page page = new Page(title, content);
+		Page page = render(new Page(title, content));
+		when(pageService.viewHtml(page))
+			.thenAnswer(invocation -> page.getHtml());
 		setField(page, "id", ++pageId);
 		when(pageService.find(title))
 			.thenReturn(page);
+		when(pageService.exists(title))
+			.thenReturn(true);
 		return page;
 	}
 
 	private void updatePage(Page page, String title, String content, Integer event) {
-		History history = createHistory(page, title, content, event);
-		page.update(title, content);
+		History history = createHistory(page, event);
+		page.change(title, content);
+		render(page);
 		List<History> historys = page.getHistorys();
 		if (historys == null) {
 			historys = new ArrayList<>();
@@ -57,13 +89,11 @@ class WikiServiceTest {
 			.thenReturn(page);
 	}
 
-	private History createHistory(Page page, String title, String content, Integer event) {
+	private History createHistory(Page page, Integer event) {
 		History history = History.builder()
 			.page(page)
 			.event(event)
 			.summary("summary" + String.valueOf(event))
-			.title(title)
-			.content(content)
 			.build();
 		when(historyService.find(any(Page.class), eq(event)))
 			.thenReturn(history);
@@ -77,8 +107,6 @@ class WikiServiceTest {
 				.page(page)
 				.event(i)
 				.summary("summary" + String.valueOf(i))
-				.title("title" + String.valueOf(i))
-				.content("content" + String.valueOf(i))
 				.build();
 			historys.add(history);
 			when(historyService.find(any(Page.class), eq(i)))
@@ -88,6 +116,60 @@ class WikiServiceTest {
 		return historys;
 	}
 
+	//stubs the keyset queries the way the repository answers them, newest first from before
+	private void createEntries(Page page, int number) {
+		when(pageService.findId(page.getTitle()))
+			.thenReturn(() -> page.getId());
+		when(historyService.latest(page.getId()))
+			.thenReturn(number);
+		when(historyService.list(eq(page.getId()), anyInt(), anyInt()))
+			.thenAnswer(invocation -> {
+				int before = invocation.getArgument(1);
+				int size = invocation.getArgument(2);
+				List<HistoryEntry> entries = new ArrayList<>();
+				for (int i = before; i > 0 && entries.size() < size; i--) {
+					int event = i;
+					entries.add(new HistoryEntry() {
+						public Integer getEvent() { return event; }
+						public String getSummary() { return "summary" + String.valueOf(event); }
+						public LocalDateTime getWrite() { return LocalDateTime.now(); }
+					});
+				}
+				return entries;
+			});
+	}
+
+	@Test
+	void testWikiSearch() {
+		//given
+		String search = "searchword";
+		PageSnippet snippet = new PageSnippet() {
+			public String getTitle() {
+				return "searchtitle";
+			}
+
+			public String getSnippet() {
+				return "searchsnippet";
+			}
+		};
+		when(pageService.count(search))
+			.thenReturn(25L);
+		when(pageService.search(search, 3))
+			.thenReturn(List.of(snippet));
+
+		//when
+		PageSearch pageSearch = wikiService.search(search, 3);
+		PageSearch none = wikiService.search("searchnone", 1);
+
+		//then
+		assertEquals(3, pageSearch.getLast());
+		assertEquals(1, pageSearch.getPages().size());
+		assertEquals("searchtitle", pageSearch.getPages().get(0).getTitle());
+		assertEquals(0, none.getLast());
+		assertTrue(none.getPages().isEmpty());
+		verify(pageService, times(0)).search("searchnone", 1);
+	}
+
 	@Test
 	void testWikiPageView() {
 		//given
@@ -122,16 +204,57 @@ class WikiServiceTest {
 		assertEquals(null, pageView);
 	}
 
+	@Test
+	void testWikiPageTag() {
+		//given
+		String title = "tagtitle";
+		LocalDateTime refresh = LocalDateTime.now();
+		PageStamp stamp = mock(PageStamp.class);
+		when(stamp.getId()).thenReturn(3L);
+		when(stamp.getGeneration()).thenReturn(5L);
+		when(stamp.getRenderGeneration()).thenReturn(5L);
+		when(stamp.getRefresh()).thenReturn(refresh);
+		when(pageService.stamp(title))
+			.thenReturn(stamp);
+
+		//when
+		PageTag pageTag = wikiService.tag(title);
+
+		//then
+		assertEquals("\"3-5-5\"", pageTag.getEtag());
+		assertTrue(pageTag.getLastModified() > 0);
+	}
+
+	@Test
+	void testWikiPageTagRenderPending() {
+		//given
+		String title = "tagrenderpendingtitle";
+		PageStamp stamp = mock(PageStamp.class);
+		when(stamp.getId()).thenReturn(3L);
+		when(stamp.getGeneration()).thenReturn(6L);
+		when(stamp.getRenderGeneration()).thenReturn(5L);
+		when(stamp.getRefresh()).thenReturn(LocalDateTime.now());
+		when(pageService.stamp(title))
+			.thenReturn(stamp);
+
+		//when
+		PageTag pageTag = wikiService.tag(title);
+
+		//then
+		assertEquals("\"3-6-5\"", pageTag.getEtag());
+		assertEquals(-1, pageTag.getLastModified());
+	}
+
 	@Test
 	void testWikiRandomPage() {
 		//given
 		String prefix = "randompage";
 		String title = prefix + "title";
 		String content = prefix + "content";
-		Page page = createPage(title, content);
+		createPage(title, content);
 
 		when(pageService.getRandomPage())
-			.thenReturn(page);
+			.thenReturn(() -> title);
 
 		//when
 		String random = wikiService.getRandomPage();
@@ -217,14 +340,15 @@ class WikiServiceTest {
 		when(pageService.find(title))
 			.thenReturn(null);
 		when(pageService.create())
-			.thenReturn(Page.builder()
+			.thenReturn(render(Page.builder()
 				.title("")
 				.content("")
-				.build()
+				.build())
 			);
 		doAnswer(invocation -> {
 			Page page = (Page) invocation.getArguments()[0];
-			page.update(title, content);
+			page.change(title, content);
+			render(page);
 			return null;
 		})
 			.when(pageService)
@@ -255,14 +379,15 @@ class WikiServiceTest {
 		when(pageService.find(title))
 			.thenReturn(null);
 		when(pageService.create())
-			.thenReturn(Page.builder()
+			.thenReturn(render(Page.builder()
 				.title("")
 				.content("")
-				.build()
+				.build())
 			);
 		doAnswer(invocation -> {
 			Page page = (Page) invocation.getArguments()[0];
-			page.update(title, content);
+			page.change(title, content);
+			render(page);
 			return null;
 		})
 			.when(pageService)
@@ -296,10 +421,10 @@ class WikiServiceTest {
 			.thenReturn(null);
 		createPage(newTitle, content);
 		when(pageService.create(title, content))
-			.thenReturn(Page.builder()
+			.thenReturn(render(Page.builder()
 				.title(title)
 				.content(content)
-				.build()
+				.build())
 			);
 
 		//when
@@ -324,16 +449,13 @@ class WikiServiceTest {
 		String content = String.format("# %s\n\n%s", heading, paragraph);
 
 		Page page = createPage(title, content);
-		when(pageService.checkLock(title))
-			.thenReturn(false);
-		when(pageService.checkLock(eq(title), any(LocalDateTime.class), any(Integer.class)))
-			.thenReturn(false);
 		doAnswer(invocation -> {
 			Object[] args = invocation.getArguments();
 			Page mockPage = (Page) args[0];
 			String mockTitle = (String) args[1];
 			String mockContent = (String) args[2];
-			mockPage.update(mockTitle, mockContent);
+			mockPage.change(mockTitle, mockContent);
+			render(mockPage);
 			return null;
 		})
 			.when(pageService)
@@ -370,16 +492,13 @@ class WikiServiceTest {
 		String content = String.format("# %s\n\n%s", heading, paragraph);
 
 		Page page = createPage(title, content);
-		when(pageService.checkLock(title))
-			.thenReturn(false);
-		when(pageService.checkLock(eq(title), any(LocalDateTime.class), any(Integer.class)))
-			.thenReturn(false);
 		doAnswer(invocation -> {
 			Object[] args = invocation.getArguments();
 			Page mockPage = (Page) args[0];
 			String mockTitle = (String) args[1];
 			String mockContent = (String) args[2];
-			mockPage.update(mockTitle, mockContent);
+			mockPage.change(mockTitle, mockContent);
+			render(mockPage);
 			return null;
 		})
 			.when(pageService)
@@ -416,16 +535,13 @@ class WikiServiceTest {
 		String content = String.format("# %s\n\n%s", heading, paragraph);
 
 		Page page = createPage(title, content);
-		when(pageService.checkLock(title))
-			.thenReturn(false);
-		when(pageService.checkLock(eq(title), any(LocalDateTime.class), any(Integer.class)))
-			.thenReturn(false);
 		doAnswer(invocation -> {
 			Object[] args = invocation.getArguments();
 			Page mockPage = (Page) args[0];
 			String mockTitle = (String) args[1];
 			String mockContent = (String) args[2];
-			mockPage.update(mockTitle, mockContent);
+			mockPage.change(mockTitle, mockContent);
+			render(mockPage);
 			return null;
 		})
 			.when(pageService)
@@ -471,15 +587,11 @@ class WikiServiceTest {
 			.build();
 
 		createPage(newTitle, content);
-		when(pageService.checkLock(title))
-			.thenReturn(false);
-		when(pageService.checkLock(eq(title), any(LocalDateTime.class), any(Integer.class)))
-			.thenReturn(false);
 		when(pageService.create(title, content))
-			.thenReturn(Page.builder()
+			.thenReturn(render(Page.builder()
 				.title(title)
 				.content(content)
-				.build()
+				.build())
 			);
 
 		//when
@@ -494,13 +606,248 @@ class WikiServiceTest {
 		assertEquals(null, pageEdit.getRedirect());
 	}
 
+	@Test
+	void testWikiPageEditStripeBusy() throws Exception {
+		//given
+		String prefix = "editstripebusy";
+		String title = prefix + "title";
+		String content = prefix + "content";
+		createPage(title, content);
+		when(pageService.create(title, content))
+			.thenReturn(render(Page.builder()
+				.title(title)
+				.content(content)
+				.build())
+			);
+		int[] stripes = lockManager.stripes(title);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		CountDownLatch held = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<?> holder = executor.submit(() -> {
+			lockManager.acquire(stripes);
+			held.countDown();
+			release.await();
+			lockManager.release(stripes);
+			return null;
+		});
+		held.await();
+
+		//when
+		PageEditRequest request = PageEditRequest.builder()
+			.title(title)
+			.content(content)
+			.summary(prefix + "summary")
+			.build();
+		PageEdit pageEdit = wikiService.edit(title, request);
+		release.countDown();
+		holder.get();
+		executor.shutdown();
+
+		//then
+		assertEquals(null, pageEdit.getRedirect());
+		verify(pageService, never()).find(title);
+		verify(transactionManager, never()).getTransaction(any());
+	}
+
+	@Test
+	void testWikiPageEditPageLocked() {
+		//given
+		String prefix = "editpagelocked";
+		String title = prefix + "title";
+		String content = prefix + "content";
+		createPage(title, content);
+		when(pageService.lock(eq(title), any(LocalDateTime.class), anyInt()))
+			.thenReturn(false);
+		when(pageService.create(title, content))
+			.thenReturn(render(Page.builder()
+				.title(title)
+				.content(content)
+				.build())
+			);
+		setField(wikiService, "lease", true);
+
+		//when
+		PageEditRequest request = PageEditRequest.builder()
+			.title(title)
+			.content(content)
+			.summary(prefix + "summary")
+			.build();
+		PageEdit pageEdit = wikiService.edit(title, request);
+		setField(wikiService, "lease", false);
+
+		//then
+		assertEquals(title, pageEdit.getTitle());
+		assertEquals(null, pageEdit.getRedirect());
+		verify(historyService, never()).save(any(Page.class), any(String.class), any(String.class), any(String.class));
+		verify(transactionManager, never()).getTransaction(any());
+	}
+
+	//an edit that did not commit gives the lease back instead of leaving it to run out
+	@Test
+	void testWikiPageEditLeaseReleased() {
+		//given
+		String prefix = "editleasereleased";
+		String title = prefix + "title";
+		String content = prefix + "content";
+		createPage(title, content);
+		when(pageService.lock(eq(title), any(LocalDateTime.class), anyInt()))
+			.thenReturn(true);
+		when(pageService.exists(prefix + "newtitle"))
+			.thenReturn(true);
+		when(pageService.create(title, content))
+			.thenReturn(render(Page.builder()
+				.title(title)
+				.content(content)
+				.build())
+			);
+		setField(wikiService, "lease", true);
+
+		//when
+		PageEditRequest request = PageEditRequest.builder()
+			.title(prefix + "newtitle")
+			.content(content)
+			.summary(prefix + "summary")
+			.build();
+		PageEdit pageEdit = wikiService.edit(title, request);
+		setField(wikiService, "lease", false);
+
+		//then
+		assertEquals(null, pageEdit.getRedirect());
+		verify(pageService, times(1)).unlock(eq(title), anyInt());
+	}
+
+	@Test
+	void testWikiPageEditMerge() {
+		//given
+		setField(wikiService, "merge", true);
+		String prefix = "editmerge";
+		String title = prefix + "title";
+		String base = "first paragraph\n\nsecond paragraph\n\nthird paragraph\n";
+		String current = "first paragraph, edited\n\nsecond paragraph\n\nthird paragraph\n";
+		String theirs = "first paragraph\n\nsecond paragraph\n\nthird paragraph, also edited\n";
+		Page page = createPage(title, current);
+		page.countRevision(2);
+		when(historyService.rebuild(page, 1))
+			.thenReturn(new Revision(title, base));
+
+		//when
+		PageEditRequest request = PageEditRequest.builder()
+			.title(title)
+			.content(theirs)
+			.summary(prefix + "summary")
+			.revision(1)
+			.build();
+		PageEdit pageEdit = wikiService.edit(title, request);
+
+		//then
+		assertEquals("/wiki/" + title, pageEdit.getRedirect());
+		String merged = "first paragraph, edited\n\nsecond paragraph\n\nthird paragraph, also edited\n";
+		verify(historyService).save(any(Page.class), eq(title), eq(prefix + "summary"), eq(merged));
+		setField(wikiService, "merge", false);
+	}
+
+	@Test
+	void testWikiPageEditMergeConcurrentCreate() {
+		//given
+		setField(wikiService, "optimistic", true);
+		setField(wikiService, "merge", true);
+		String prefix = "editmergecreate";
+		String title = prefix + "title";
+		String first = prefix + "first content\n";
+		String second = prefix + "second content\n";
+		Page page = createPage(title, first);
+		page.countRevision(1);
+		when(pageService.create(title, second))
+			.thenReturn(render(Page.builder()
+				.title(title)
+				.content(second)
+				.build())
+			);
+
+		//when
+		PageEditRequest request = PageEditRequest.builder()
+			.title(title)
+			.content(second)
+			.summary(prefix + "summary")
+			.revision(0)
+			.build();
+		PageEdit pageEdit = wikiService.edit(title, request);
+
+		//then
+		assertTrue(pageEdit.isConflict());
+		assertEquals(1, pageEdit.getRevision());
+		assertEquals(second, pageEdit.getContent());
+		verify(historyService, never()).save(any(Page.class), any(String.class), any(String.class), any(String.class));
+		setField(wikiService, "optimistic", false);
+		setField(wikiService, "merge", false);
+	}
+
+	@Test
+	void testWikiPageEditOptimisticConflict() {
+		//given
+		setField(wikiService, "optimistic", true);
+		String prefix = "editoptimisticconflict";
+		String title = prefix + "title";
+		String content = prefix + "content";
+		Page page = createPage(title, content);
+		page.countRevision(3);
+		when(pageService.create(title, prefix + "newcontent"))
+			.thenReturn(render(Page.builder()
+				.title(title)
+				.content(prefix + "newcontent")
+				.build())
+			);
+
+		//when
+		PageEditRequest request = PageEditRequest.builder()
+			.title(title)
+			.content(prefix + "newcontent")
+			.summary(prefix + "summary")
+			.revision(2)
+			.build();
+		PageEdit pageEdit = wikiService.edit(title, request);
+
+		//then
+		assertTrue(pageEdit.isConflict());
+		assertEquals(3, pageEdit.getRevision());
+		assertEquals(prefix + "newcontent", pageEdit.getContent());
+		assertEquals(null, pageEdit.getRedirect());
+		verify(historyService, never()).save(any(Page.class), any(String.class), any(String.class), any(String.class));
+		setField(wikiService, "optimistic", false);
+	}
+
+	@Test
+	void testWikiPageEditOptimistic() {
+		//given
+		setField(wikiService, "optimistic", true);
+		String prefix = "editoptimistic";
+		String title = prefix + "title";
+		String content = prefix + "content";
+		Page page = createPage(title, content);
+		page.countRevision(3);
+
+		//when
+		PageEditRequest request = PageEditRequest.builder()
+			.title(title)
+			.content(prefix + "newcontent")
+			.summary(prefix + "summary")
+			.revision(3)
+			.build();
+		PageEdit pageEdit = wikiService.edit(title, request);
+
+		//then
+		assertEquals("/wiki/" + title, pageEdit.getRedirect());
+		verify(historyService).save(any(Page.class), eq(title), eq(prefix + "summary"), eq(prefix + "newcontent"));
+		setField(wikiService, "optimistic", false);
+	}
+
 	@Test
 	void testWikiPageHistoryNoPage() {
 		//given
 		String prefix = "historynopage";
 		String title = prefix + "title";
 		Integer current = 5;
-		when(pageService.find(title))
+		when(pageService.findId(title))
 			.thenReturn(null);
 
 		//when
@@ -520,7 +867,7 @@ class WikiServiceTest {
 		int last = 3;
 		int number = 25;
 		Page page = createPage(title, content);
-		createHistorys(page, number);
+		createEntries(page, number);
 
 		//when
 		PageHistoryView history = wikiService.history(title, current);
@@ -542,7 +889,7 @@ class WikiServiceTest {
 		int last = 4;
 		int number = 33;
 		Page page = createPage(title, content);
-		createHistorys(page, number);
+		createEntries(page, number);
 
 		//when
 		PageHistoryView history = wikiService.history(title, current);
@@ -564,21 +911,45 @@ class WikiServiceTest {
 		int event = 3;
 		Page page = createPage(title, content);
 		createHistorys(page, number);
+		when(historyService.rebuild(page, event))
+			.thenReturn(new Revision("title" + event, "content" + event));
 
 		//when
 		when(pageService.create(any(String.class), any(String.class)))
 			.thenAnswer(invocation -> {
 				String backTitle = (String) invocation.getArguments()[0];
 				String backContent = (String) invocation.getArguments()[1];
-				return Page.builder()
+				return render(Page.builder()
 					.title(backTitle)
 					.content(backContent)
-					.build();
+					.build());
 			});
 		PageBack back = wikiService.back(title, event);
 
 		//then
 		assertEquals(event, back.getEvent());
+		assertEquals("title" + event, back.getTitle());
+		assertTrue(back.getHtml().contains("content" + event));
+		verify(revisionCache, times(1)).put(eq(page.getId()), eq(event), any(Revision.class));
+	}
+
+	@Test
+	void testWikiPageBackCached() {
+		//given
+		String prefix = "backcached";
+		String title = prefix + "title";
+		Page page = createPage(title, prefix + "content");
+		int event = 2;
+		when(revisionCache.get(page.getId(), event))
+			.thenReturn(new Revision(prefix + "oldtitle", prefix + "oldcontent", "<p>" + prefix + "oldcontent</p>"));
+
+		//when
+		PageBack back = wikiService.back(title, event);
+
+		//then
+		assertEquals(prefix + "oldtitle", back.getTitle());
+		assertEquals("<p>" + prefix + "oldcontent</p>", back.getHtml());
+		verify(historyService, never()).rebuild(any(Page.class), any(Integer.class));
 	}
 
 	@Test
@@ -627,16 +998,16 @@ class WikiServiceTest {
 		String content = "diffcontent";
 		Page page = createPage(title, content);
 
-		String newTitle = "12345";
-		String newContent = "67890";
 		Integer event = 2;
 		History history = History.builder()
-		   .page(page)
-		   .event(event)
-		   .summary("create")
-		   .title(newTitle)
-		   .content(newContent)
-		   .build();
+			.page(page)
+			.event(event)
+			.summary("create")
+			.build();
+		when(historyService.titleDiff(history))
+			.thenReturn("<del>-" + title + "</del>\n<ins>+12345</ins>\n");
+		when(historyService.contentDiff(history))
+			.thenReturn("<del>-" + content + "</del>\n<ins>+67890</ins>\n");
 		when(historyService.find(any(Page.class), eq(event)))
 			.thenAnswer(invocation -> {
 				Page p = (Page) invocation.getArguments()[0];
@@ -651,10 +1022,8 @@ class WikiServiceTest {
 
 		//then
 		assertEquals(event, diff.getEvent());
-		assertTrue(diff.getTitleDiff().contains("+" + newTitle));
-		assertTrue(diff.getTitleDiff().contains("-" + title));
-		assertTrue(diff.getContentDiff().contains("+" + newContent));
-		assertTrue(diff.getContentDiff().contains("-" + content));
+		assertEquals("<del>-" + title + "</del>\n<ins>+12345</ins>\n", diff.getTitleDiff());
+		assertEquals("<del>-" + content + "</del>\n<ins>+67890</ins>\n", diff.getContentDiff());
 	}
 
 }
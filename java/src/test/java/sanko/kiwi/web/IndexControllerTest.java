@@ -3,17 +3,27 @@ package sanko.kiwi.web;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.boot.test.mock.mockito.MockBean;
 import org.junit.jupiter.api.Test;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*; //status. view
 
+import sanko.kiwi.cache.ViewCache;
+import sanko.kiwi.service.WikiService;
+
 @WebMvcTest(IndexController.class)
 class IndexControllerTest {
 
 	@Autowired
 	private MockMvc mockMvc;
 
+	@MockBean
+	private ViewCache viewCache;
+
+	@MockBean
+	private WikiService wikiService;
+
 	@Test
 	void testIndex() throws Exception {
 		mockMvc.perform(get("/"))
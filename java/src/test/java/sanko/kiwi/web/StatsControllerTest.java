@@ -0,0 +1,92 @@
+package sanko.kiwi.web;
+
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.junit.jupiter.api.Test;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*; //status, jsonPath
+
+import sanko.kiwi.cache.*; //LruCache, ViewCache, RevisionCache
+import sanko.kiwi.render.RenderService;
+import sanko.kiwi.diff.DiffService;
+import sanko.kiwi.compress.Compressor;
+import sanko.kiwi.lock.LockManager;
+import sanko.kiwi.search.InvertedIndex;
+import sanko.kiwi.service.WikiService;
+
+@WebMvcTest(StatsController.class)
+class StatsControllerTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@MockBean
+	private RenderService renderService;
+
+	@MockBean
+	private DiffService diffService;
+
+	@MockBean
+	private Compressor compressor;
+
+	@MockBean
+	private ViewCache viewCache;
+
+	@MockBean
+	private RevisionCache revisionCache;
+
+	@MockBean
+	private LockManager lockManager;
+
+	@MockBean
+	private InvertedIndex invertedIndex;
+
+	@MockBean
+	private WikiService wikiService;
+
+	@Test
+	void testStats() throws Exception {
+		//given
+		LruCache<String, CachedView> views = new LruCache<>(10);
+		views.get("miss");
+		when(viewCache.getViews())
+			.thenReturn(views);
+		when(viewCache.getInvalidations())
+			.thenReturn(2L);
+		when(revisionCache.getRevisions())
+			.thenReturn(new LruCache<>(10));
+		when(renderService.getCount())
+			.thenReturn(5L);
+		when(diffService.getTimeouts())
+			.thenReturn(3L);
+		when(diffService.getMerges())
+			.thenReturn(6L);
+		when(lockManager.getContentions())
+			.thenReturn(7L);
+		when(compressor.getStored())
+			.thenReturn(40L);
+		when(invertedIndex.getDocuments())
+			.thenReturn(4);
+		when(invertedIndex.getBytes())
+			.thenReturn(2000L);
+
+		//whenthen
+		mockMvc.perform(get("/stats"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.render.count").value(5))
+			.andExpect(jsonPath("$.diff.timeouts").value(3))
+			.andExpect(jsonPath("$.diff.merges").value(6))
+			.andExpect(jsonPath("$.lock.contentions").value(7))
+			.andExpect(jsonPath("$.compress.stored").value(40))
+			.andExpect(jsonPath("$.view.misses").value(1))
+			.andExpect(jsonPath("$.view.invalidations").value(2))
+			.andExpect(jsonPath("$.revision.size").value(0))
+			.andExpect(jsonPath("$.search.documents").value(4))
+			.andExpect(jsonPath("$.search.bytesPerDocument").value(500));
+	}
+
+}
@@ -0,0 +1,128 @@
+package sanko.kiwi.web;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.*; //MockHttpServletRequest, MockHttpServletResponse, MockFilterChain
+import jakarta.servlet.http.*; //HttpServlet, HttpServletRequest, HttpServletResponse
+
+import static org.junit.jupiter.api.Assertions.*; //assertEquals, assertNotNull, assertNull
+
+import sanko.kiwi.cache.*; //ViewCache, CachedView
+import sanko.kiwi.dto.PageTag;
+import sanko.kiwi.domain.page.PageStamp;
+
+class ViewCacheFilterTest {
+
+	private final ViewCache viewCache = new ViewCache(100000);
+	private final ViewCacheFilter filter = new ViewCacheFilter(viewCache);
+
+	private MockFilterChain createChain(String body, PageTag pageTag) {
+		HttpServlet servlet = new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+				if (pageTag != null) {
+					request.setAttribute(ViewCacheFilter.TAG, pageTag);
+				}
+				response.setContentType("text/html;charset=UTF-8");
+				response.getWriter().write(body);
+			}
+		};
+		return new MockFilterChain(servlet);
+	}
+
+	private PageTag createTag(long generation) {
+		return new PageTag(new PageStamp() {
+			public Long getId() { return 1L; }
+			public Long getGeneration() { return generation; }
+			public Long getRenderGeneration() { return generation; }
+			public LocalDateTime getRefresh() { return null; }
+		});
+	}
+
+	@Test
+	void testFilterMiss() throws Exception {
+		//given
+		String title = "misstitle";
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/wiki/" + title);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		//when
+		filter.doFilter(request, response, createChain("rendered", createTag(0)));
+
+		//then
+		assertEquals("rendered", response.getContentAsString());
+		assertNotNull(viewCache.get(title));
+	}
+
+	@Test
+	void testFilterHit() throws Exception {
+		//given
+		String title = "hittitle";
+		filter.doFilter(new MockHttpServletRequest("GET", "/wiki/" + title), new MockHttpServletResponse(), createChain("cached", createTag(0)));
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/wiki/" + title);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		MockFilterChain chain = createChain("rendered", createTag(0));
+
+		//when
+		filter.doFilter(request, response, chain);
+
+		//then
+		assertEquals("cached", response.getContentAsString());
+		assertEquals("text/html;charset=UTF-8", response.getContentType());
+		assertNull(chain.getRequest());
+	}
+
+	//an edit or a finished render evicts the title, the next view renders again
+	@Test
+	void testFilterHitEvicted() throws Exception {
+		//given
+		String title = "hitevictedtitle";
+		filter.doFilter(new MockHttpServletRequest("GET", "/wiki/" + title), new MockHttpServletResponse(), createChain("cached", createTag(0)));
+		viewCache.evict(title);
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/wiki/" + title);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		//when
+		filter.doFilter(request, response, createChain("rendered", createTag(1)));
+
+		//then
+		assertEquals("rendered", response.getContentAsString());
+		assertEquals(createTag(1).getEtag(), viewCache.get(title).getEtag());
+	}
+
+	@Test
+	void testFilterHitNotModified() throws Exception {
+		//given
+		String title = "hitnotmodifiedtitle";
+		PageTag pageTag = createTag(0);
+		filter.doFilter(new MockHttpServletRequest("GET", "/wiki/" + title), new MockHttpServletResponse(), createChain("cached", pageTag));
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/wiki/" + title);
+		request.addHeader("If-None-Match", pageTag.getEtag());
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		//when
+		filter.doFilter(request, response, createChain("rendered", pageTag));
+
+		//then
+		assertEquals(304, response.getStatus());
+		assertEquals("", response.getContentAsString());
+	}
+
+	@Test
+	void testFilterNoTag() throws Exception {
+		//given
+		String title = "notagtitle";
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/wiki/" + title);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		//when
+		filter.doFilter(request, response, createChain("not exist", null));
+
+		//then
+		assertEquals("not exist", response.getContentAsString());
+		assertNull(viewCache.get(title));
+	}
+
+}
@@ -1,6 +1,7 @@
 package sanko.kiwi.web;
 
 import java.util.*; //List, ArrayList
+import java.time.LocalDateTime;
 
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,7 +11,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.http.MediaType;
 
 import static org.springframework.test.util.ReflectionTestUtils.setField;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*; //when, verify, never
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*; //get, post
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*; //status. view, model
 import static org.hamcrest.Matchers.hasProperty;
@@ -19,11 +20,13 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.containsString;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.argThat;
 
-import sanko.kiwi.domain.page.Page;
-import sanko.kiwi.domain.history.History;
-import sanko.kiwi.dto.*; //PageView, PageEdit, PageBack, PageRehash, PageDiff
+import sanko.kiwi.domain.page.*; //Page, PageStamp
+import sanko.kiwi.domain.history.*; //History, HistoryEntry, Revision
+import sanko.kiwi.dto.*; //PageView, PageTag, PageEdit, PageBack, PageRehash, PageDiff
 import sanko.kiwi.service.WikiService;
+import sanko.kiwi.cache.ViewCache;
 
 @WebMvcTest(WikiController.class)
 class WikiControllerTest {
@@ -34,42 +37,54 @@ class WikiControllerTest {
 	@MockBean
 	private WikiService wikiService;
 
+	@MockBean
+	private ViewCache viewCache;
+
 	private static Long pageId = 0L;
 
 	private Page createPage(String title, String content) {
 		Page page = new Page(title, content);
+		page.render("<p>" + content + "</p>\n", content);
 		setField(page, "id", ++pageId);
 		when(wikiService.view(title))
-			.thenReturn(new PageView(page));
+			.thenReturn(new PageView(page, page.getHtml()));
 		when(wikiService.viewEdit(title))
-			.thenReturn(new PageEdit(page));
+			.thenReturn(new PageEdit(page, page.getHtml()));
 		return page;
 	}
 
-	private History createHistory(Page page, String title, String content, String summary, Integer event) {
+	private PageTag createTag(Page page, LocalDateTime refresh) {
+		PageStamp stamp = new PageStamp() {
+			public Long getId() { return page.getId(); }
+			public Long getGeneration() { return page.getGeneration(); }
+			public Long getRenderGeneration() { return page.getRenderGeneration(); }
+			public LocalDateTime getRefresh() { return refresh; }
+		};
+		PageTag pageTag = new PageTag(stamp);
+		when(wikiService.tag(page.getTitle()))
+			.thenReturn(pageTag);
+		return pageTag;
+	}
+
+	private History createHistory(Page page, String summary, Integer event) {
 		return History.builder()
 			.page(page)
 			.event(event)
 			.summary(summary)
-			.title(title)
-			.content(content)
 			.build();
 	}
 
-	private List<History> createHistorys(Page page, int number) {
-		List<History> historys = new ArrayList();
-		for (int i = 0; i < number; i++) {
-			History history = History.builder()
-				.page(page)
-				.event(i)
-				.summary("summary" + String.valueOf(i))
-				.title("title" + String.valueOf(i))
-				.content("content" + String.valueOf(i))
-				.build();
-			historys.add(history);
+	private List<HistoryEntry> createEntries(int number) {
+		List<HistoryEntry> entries = new ArrayList();
+		for (int i = number; i > 0; i--) {
+			int event = i;
+			entries.add(new HistoryEntry() {
+				public Integer getEvent() { return event; }
+				public String getSummary() { return "summary" + String.valueOf(event); }
+				public LocalDateTime getWrite() { return LocalDateTime.now(); }
+			});
 		}
-		setField(page, "historys", historys);
-		return historys;
+		return entries;
 	}
 
 	@Test
@@ -87,6 +102,54 @@ class WikiControllerTest {
 			.andExpect(model().attribute("page", hasProperty("html", containsString(content))));
 	}
 
+	@Test
+	void testWikiPageViewTag() throws Exception {
+		//given
+		String prefix = "viewtag";
+		String title = prefix + "title";
+		String content = prefix + "content";
+		Page page = createPage(title, content);
+		PageTag pageTag = createTag(page, LocalDateTime.now());
+
+		//whenthen
+		mockMvc.perform(get("/wiki/" + title))
+			.andExpect(status().isOk())
+			.andExpect(view().name("view"))
+			.andExpect(header().string("ETag", pageTag.getEtag()))
+			.andExpect(header().exists("Last-Modified"))
+			.andExpect(request().attribute(ViewCacheFilter.TAG, pageTag));
+	}
+
+	@Test
+	void testWikiPageViewNotModified() throws Exception {
+		//given
+		String prefix = "viewnotmodified";
+		String title = prefix + "title";
+		String content = prefix + "content";
+		Page page = createPage(title, content);
+		PageTag pageTag = createTag(page, LocalDateTime.now());
+
+		//whenthen
+		mockMvc.perform(get("/wiki/" + title).header("If-None-Match", pageTag.getEtag()))
+			.andExpect(status().isNotModified());
+		verify(wikiService, never()).view(title);
+	}
+
+	@Test
+	void testWikiPageViewModified() throws Exception {
+		//given
+		String prefix = "viewmodified";
+		String title = prefix + "title";
+		String content = prefix + "content";
+		Page page = createPage(title, content);
+		createTag(page, LocalDateTime.now());
+
+		//whenthen
+		mockMvc.perform(get("/wiki/" + title).header("If-None-Match", "\"0-0-0\""))
+			.andExpect(status().isOk())
+			.andExpect(view().name("view"));
+	}
+
 	@Test
 	void testWikiEditView() throws Exception {
 		//given
@@ -128,6 +191,33 @@ class WikiControllerTest {
 			.andExpect(view().name("redirect:/wiki/" + title));
 	}
 
+	@Test
+	void testWikiEditConflict() throws Exception {
+		//given
+		String prefix = "editconflict";
+		String title = prefix + "title";
+		String content = prefix + "content";
+		String summary = prefix + "summary";
+		Page page = createPage(title, content);
+
+		when(wikiService.edit(eq(title), argThat(request -> request.getRevision() == 3)))
+			.thenReturn(new PageEdit(page, title, summary, 4, true));
+
+		//whenthen
+		mockMvc.perform(
+			post("/edit/" + title)
+				.param("title", title)
+				.param("content", content)
+				.param("summary", summary)
+				.param("revision", "3")
+		)
+			.andExpect(status().isOk())
+			.andExpect(view().name("edit"))
+			.andExpect(model().attribute("page", hasProperty("conflict", equalTo(true))))
+			.andExpect(model().attribute("page", hasProperty("revision", equalTo(4))))
+			.andExpect(content().string(containsString("name=\"revision\" value=\"4\"")));
+	}
+
 	@Test
 	void testWikiEditFail() throws Exception {
 		//given
@@ -139,7 +229,7 @@ class WikiControllerTest {
 		Page page = createPage(title, content);
 
 		when(wikiService.edit(eq(title), any(PageEditRequest.class)))
-			.thenReturn(new PageEdit(page, title, summary));
+			.thenReturn(new PageEdit(page, title, summary, page.getRevision()));
 
 		//whenthen
 		mockMvc.perform(
@@ -164,10 +254,10 @@ class WikiControllerTest {
 		Page page = createPage(title, content);
 		int number = 13;
 		int last = 2;
-		List<History> historys = createHistorys(page, number);
+		List<HistoryEntry> historys = createEntries(number);
 
 		when(wikiService.history(title, 1))
-			.thenReturn(new PageHistoryView(page, 1, last, historys.subList(0, 10)));
+			.thenReturn(new PageHistoryView(title, 1, last, historys.subList(0, 10)));
 
 		//whenthen
 		mockMvc.perform(get("/history/" + title))
@@ -189,10 +279,10 @@ class WikiControllerTest {
 		int number = 13;
 		int current = 2;
 		int last = 2;
-		List<History> historys = createHistorys(page, number);
+		List<HistoryEntry> historys = createEntries(number);
 
 		when(wikiService.history(title, current))
-			.thenReturn(new PageHistoryView(page, current, last, historys.subList(10, 13)));
+			.thenReturn(new PageHistoryView(title, current, last, historys.subList(10, 13)));
 
 		//whenthen
 		mockMvc.perform(get("/history/" + title + "/" + String.valueOf(current)))
@@ -229,7 +319,7 @@ class WikiControllerTest {
 		Page page = createPage(title, content);
 
 		when(wikiService.back(title, event))
-			.thenReturn(new PageBack(page, event));
+			.thenReturn(new PageBack(new Revision(page.getTitle(), page.getContent(), page.getHtml()), event));
 
 		//whenthen
 		mockMvc.perform(get("/back/" + title + "/" + String.valueOf(event)))
@@ -301,7 +391,7 @@ class WikiControllerTest {
 		String summary = prefix + "summary";
 		Integer event = 3;
 		Page page = createPage(title, content);
-		History history = createHistory(page, title, content, summary, event);
+		History history = createHistory(page, summary, event);
 
 		when(wikiService.diff(title, event))
 			.thenReturn(new PageDiff(title, history, titleDiff, contentDiff));